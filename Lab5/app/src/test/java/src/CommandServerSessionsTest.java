@@ -0,0 +1,147 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Сервер команд держит много одновременных сеансов: открываются server.sessions соединений (по умолчанию 10 000),
+ * в каждом дожидается приглашение, во всех выполняется info, затем все закрываются командой exit.
+ * Сервер запускается отдельной JVM (Main с SERVER_PORT), чтобы клиентские и серверные сокеты не делили
+ * один лимит открытых файлов процесса. На Java 21+ после сборки с профилем java21 сервер получает классы
+ * из META-INF/versions/21 и должен выполнять сеансы в виртуальных потоках
+ */
+class CommandServerSessionsTest {
+    private static final int SESSIONS = Integer.getInteger("server.sessions", 10_000);
+    private static final String PROMPT = "Введите команду:";
+    private static final Pattern PORT = Pattern.compile("(\\d+) \\(");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @Timeout(value = 10, unit = TimeUnit.MINUTES)
+    void servesManyConcurrentSessions() throws Exception {
+        Path dataFile = directory.resolve("data.csv");
+        SnapshotFormat.CSV.write(dataFile, LocalDateTime.of(2023, 4, 9, 11, 24, 24), 0, List.of());
+        Path classes = Path.of(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path versioned = classes.resolve("META-INF/versions/21");
+        boolean virtual = Runtime.version().feature() >= 21 && Files.isDirectory(versioned);
+        // Каталог классов не многоверсионный, как jar: классы для Java 21 ставятся впереди
+        String classpath = virtual ? versioned + File.pathSeparator + classes : classes.toString();
+        ProcessBuilder builder = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-Xmx512m", "-Dstdout.encoding=UTF-8", "-Dsun.stdout.encoding=UTF-8", "-cp", classpath, "src.Main")
+                .redirectErrorStream(true);
+        builder.environment().put("FILENAME", dataFile.toString());
+        builder.environment().put("SERVER_PORT", "0");
+        Process server = builder.start();
+        Socket[] sockets = new Socket[SESSIONS];
+        try {
+            int port = awaitPort(server, virtual);
+            BufferedReader[] readers = new BufferedReader[SESSIONS];
+            for (int i = 0; i < SESSIONS; i++) {
+                sockets[i] = new Socket(InetAddress.getLoopbackAddress(), port);
+                sockets[i].setSoTimeout(60_000);
+                readers[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream(), StandardCharsets.UTF_8), 256);
+            }
+            for (BufferedReader reader : readers) {
+                awaitPrompt(reader);
+            }
+
+            byte[] info = "info\n".getBytes(StandardCharsets.UTF_8);
+            for (Socket socket : sockets) {
+                socket.getOutputStream().write(info);
+            }
+            for (int i = 0; i < SESSIONS; i++) {
+                assertTrue(awaitPrompt(readers[i]).contains("Number of elements: 0"), "сеанс " + i);
+            }
+
+            byte[] exit = "exit\n".getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < SESSIONS; i++) {
+                sockets[i].getOutputStream().write(exit);
+                // После exit сервер закрывает соединение
+                assertEquals(-1, readers[i].read(), "сеанс " + i);
+                sockets[i].close();
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+            try (OutputStream console = server.getOutputStream()) {
+                console.write("exit\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // сервер уже завершился
+            }
+            if (!server.waitFor(30, TimeUnit.SECONDS)) {
+                server.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Читает вывод сервера до строки с портом; остальной вывод консоли отбрасывается в отдельном потоке
+     */
+    /**
+     * @param virtual true - сервер должен сообщить о сеансах в виртуальных потоках
+     */
+    private static int awaitPort(Process server, boolean virtual) throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        Integer port = null;
+        while (port == null && (line = output.readLine()) != null) {
+            Matcher matcher = PORT.matcher(line);
+            if (matcher.find()) {
+                port = Integer.parseInt(matcher.group(1));
+                assertEquals(virtual, line.contains("виртуальных"), line);
+            }
+        }
+        assertNotNull(port, "сервер не запустился");
+        Thread drain = new Thread(() -> {
+            try {
+                output.transferTo(Writer.nullWriter());
+            } catch (IOException e) {
+                // сервер завершился
+            }
+        });
+        drain.setDaemon(true);
+        drain.start();
+        return port;
+    }
+
+    /**
+     * @return Вывод сеанса до строки приглашения
+     */
+    private static String awaitPrompt(BufferedReader reader) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.endsWith(PROMPT)) {
+                return text.toString();
+            }
+            text.append(line).append('\n');
+        }
+        throw new IOException("Сервер закрыл соединение");
+    }
+}
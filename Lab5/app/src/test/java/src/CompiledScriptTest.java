@@ -0,0 +1,50 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Поиск вложенных execute_script при загрузке скрипта: поля элемента пропускаются так же, как их читает
+ * Vehicle.fromUser, в том числе когда некорректное значение вводится заново и элемент занимает больше строк
+ */
+class CompiledScriptTest {
+    @TempDir
+    Path directory;
+
+    private Path script(String name, String... lines) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, String.join("\n", lines) + "\n");
+        return file;
+    }
+
+    @Test
+    void findsIncludeAfterRetriedFields() throws IOException {
+        Path file = directory.resolve("self.txt");
+        // X вводится трижды, вид транспорта - дважды (строка "add" - некорректное значение, а не команда)
+        script("self.txt", "add", "name", "q", "q", "5", "6", "100", "4", "add", "BOAT", "PLASMA",
+                "execute_script " + file);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> CompiledScript.load(file.toString(), Main.commands()));
+        assertEquals("рекурсивный вызов скрипта: self.txt -> self.txt", e.getMessage());
+    }
+
+    @Test
+    void ignoresIncludeInsideElementFields() throws IOException {
+        Path file = directory.resolve("data.txt");
+        // Строка с execute_script - некорректный тип топлива, после неё топливо вводится заново
+        script("data.txt", "add", "name", "q", "5", "6", "100", "4", "BOAT", "execute_script " + file, "PLASMA", "info");
+        assertEquals(11, CompiledScript.load(file.toString(), Main.commands()).size());
+    }
+
+    @Test
+    void loadsElementCutShortByEndOfFile() throws IOException {
+        Path file = script("short.txt", "info", "add", "name", "5");
+        assertEquals(4, CompiledScript.load(file.toString(), Main.commands()).size());
+    }
+}
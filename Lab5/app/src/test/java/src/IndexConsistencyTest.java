@@ -0,0 +1,242 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Проверка VehicleCollection при случайных изменениях (в том числе добавлении пачками): после каждого шага
+ * проверяется порядок элементов, а счётчики по мощности, группы по количеству колёс, количества по типам
+ * и поиск по расстоянию для случайной точки сравниваются с подсчётом полным проходом.
+ * Коллекция memory начинается пустой, коллекция columns - с элементов MappedVehicle, загруженных
+ * из поколоночного дампа (значения полей читаются из колонок, а не из полей Vehicle).
+ * Количество шагов и seed задаются свойствами consistency.steps и consistency.seed, например
+ * mvn -pl app test -Dtest=IndexConsistencyTest -Dconsistency.steps=20000 -Dconsistency.seed=7
+ */
+class IndexConsistencyTest {
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+
+    private static final int MAPPED_ELEMENTS = 2_000;
+    private static final int STEPS = Integer.getInteger("consistency.steps", 3_000);
+    private static final long SEED = Long.getLong("consistency.seed", 1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void memory() {
+        run(new VehicleCollection(), 1, STEPS, SEED);
+    }
+
+    /**
+     * Записывает случайные элементы поколоночным дампом и проверяет коллекцию, загруженную из него.
+     * Часть элементов совпадает с другими по мощности и дате создания и различается только id
+     */
+    @Test
+    void columns() throws IOException {
+        int steps = STEPS;
+        long seed = SEED;
+        Random random = new Random(seed);
+        Vehicle[] initial = new Vehicle[MAPPED_ELEMENTS];
+        for (int i = 0; i < initial.length; i++) {
+            Vehicle vehicle = randomVehicle(random, i + 1);
+            if (i > 0 && random.nextInt(4) == 0) {
+                Vehicle twin = initial[random.nextInt(i)];
+                vehicle = new Vehicle(i + 1, "twin", vehicle.getX(), vehicle.getY(), twin.getCreationEpochSecond(),
+                        twin.getCreationNano(), twin.getEnginePowerValue(), vehicle.getNumberOfWheels(), null, null);
+            }
+            initial[i] = vehicle;
+        }
+        Arrays.sort(initial);
+        Path file = directory.resolve("consistency.columns");
+        SnapshotFormat.COLUMNS.write(file, LocalDateTime.now(), 0, Arrays.asList(initial));
+        VehicleCollection vehicles = SnapshotFormat.COLUMNS.reader(1).load(file.toString());
+        Assertions.assertInstanceOf(MappedVehicle.class, vehicles.first(), "поколоночный дамп загружен не представлениями строк");
+        run(vehicles, initial.length + 1, steps, seed);
+    }
+
+    /**
+     * @param vehicles Коллекция с элементами, id которых от 1 до firstId - 1
+     */
+    private static void run(VehicleCollection vehicles, long firstId, int steps, long seed) {
+        Random random = new Random(seed);
+        List<Long> ids = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            ids.add(vehicle.getIdValue());
+        }
+        long nextId = firstId;
+
+        for (int step = 1; step <= steps; step++) {
+            int operation = random.nextInt(1000);
+            if (operation < 500 || ids.isEmpty()) {
+                Vehicle vehicle = randomVehicle(random, nextId++);
+                if (vehicles.add(vehicle)) {
+                    ids.add(vehicle.getIdValue());
+                }
+            } else if (operation < 550) {
+                // Пачка с повторами: элементы коллекции, занятые id и элементы с теми же мощностью и датой создания, что у другого элемента пачки
+                List<Vehicle> batch = new ArrayList<>();
+                for (int i = random.nextInt(60); i >= 0; i--) {
+                    int kind = random.nextInt(10);
+                    if (kind == 0) {
+                        batch.add(vehicles.getById(ids.get(random.nextInt(ids.size()))));
+                    } else if (kind == 1) {
+                        batch.add(randomVehicle(random, ids.get(random.nextInt(ids.size()))));
+                    } else if (kind == 2 && !batch.isEmpty()) {
+                        Vehicle twin = batch.get(random.nextInt(batch.size()));
+                        batch.add(new Vehicle(nextId++, "twin", 0, 0, twin.getCreationEpochSecond(), twin.getCreationNano(),
+                                twin.getEnginePowerValue(), 1, null, null));
+                    } else {
+                        batch.add(randomVehicle(random, nextId++));
+                    }
+                }
+                for (Vehicle added : vehicles.addBatch(batch)) {
+                    ids.add(added.getIdValue());
+                }
+            } else if (operation < 750) {
+                long id = ids.get(random.nextInt(ids.size()));
+                vehicles.update(randomVehicle(random, id));
+            } else if (operation < 995) {
+                int index = random.nextInt(ids.size());
+                vehicles.removeById(ids.get(index));
+                ids.set(index, ids.get(ids.size() - 1));
+                ids.remove(ids.size() - 1);
+            } else if (operation < 999) {
+                for (Vehicle removed : vehicles.removeLower(randomVehicle(random, 0))) {
+                    ids.remove(removed.getId());
+                }
+            } else {
+                vehicles.clear();
+                ids.clear();
+            }
+            verify(vehicles, ids, step, seed);
+            verifyTypes(vehicles, step, seed);
+            verifyDistances(vehicles, random, step, seed);
+        }
+    }
+
+    private static Vehicle randomVehicle(Random random, long id) {
+        long enginePower = random.nextInt(10) == 0 ? Vehicle.NO_ENGINE_POWER : 1 + random.nextInt(50);
+        return new Vehicle(id, "vehicle" + id, random.nextInt(1940) - 970, random.nextInt(1800) - 900,
+                1_680_000_000L + random.nextInt(1_000_000), random.nextInt(1_000_000_000), enginePower,
+                1 + random.nextInt(8), VEHICLE_TYPES[random.nextInt(VEHICLE_TYPES.length)],
+                FUEL_TYPES[random.nextInt(FUEL_TYPES.length)]);
+    }
+
+    private static void verify(VehicleCollection vehicles, List<Long> ids, int step, long seed) {
+        int count = 0;
+        Vehicle previous = null;
+        HashSet<Long> seen = new HashSet<>();
+        for (Vehicle vehicle : vehicles) {
+            if (previous != null && previous.compareTo(vehicle) >= 0) {
+                fail("порядок элементов", step, seed, "по возрастанию", previous + " перед " + vehicle);
+            }
+            if (vehicles.getById(vehicle.getIdValue()) != vehicle) {
+                fail("элемент с id " + vehicle.getIdValue(), step, seed, vehicle, vehicles.getById(vehicle.getIdValue()));
+            }
+            seen.add(vehicle.getIdValue());
+            previous = vehicle;
+            count++;
+        }
+        if (count != vehicles.size()) {
+            fail("количество элементов", step, seed, vehicles.size(), count);
+        }
+        if (!seen.equals(new HashSet<>(ids))) {
+            fail("id элементов", step, seed, ids.size(), seen.size());
+        }
+
+        Map<Long, Long> expectedPowers = vehicles.stream()
+                .collect(Collectors.groupingBy(Vehicle::getEnginePowerValue, TreeMap::new, Collectors.counting()));
+        Map<Long, Long> actualPowers = new TreeMap<>();
+        for (long power : vehicles.enginePowers()) {
+            actualPowers.put(power, vehicles.countByEnginePower(power));
+        }
+        if (!expectedPowers.equals(actualPowers)) {
+            fail("счётчики по мощности", step, seed, expectedPowers, actualPowers);
+        }
+        Map<Long, Long> visitedPowers = new TreeMap<>();
+        vehicles.snapshot().forEachEnginePowerCount((power, powerCount) -> visitedPowers.put(power, (long) powerCount));
+        if (!expectedPowers.equals(visitedPowers)) {
+            fail("обход счётчиков по мощности", step, seed, expectedPowers, visitedPowers);
+        }
+
+        SortedMap<Integer, Integer> expectedWheels = vehicles.stream()
+                .collect(Collectors.groupingBy(Vehicle::getNumberOfWheels, TreeMap::new, Collectors.summingInt(v -> 1)));
+        if (!expectedWheels.equals(vehicles.countsByNumberOfWheels())) {
+            fail("группы по количеству колёс", step, seed, expectedWheels, vehicles.countsByNumberOfWheels());
+        }
+        for (int numberOfWheels : expectedWheels.keySet()) {
+            List<Vehicle> expected = vehicles.stream()
+                    .filter(v -> v.getNumberOfWheels() == numberOfWheels)
+                    .collect(Collectors.toList());
+            if (!expected.equals(new ArrayList<>(vehicles.withNumberOfWheels(numberOfWheels)))) {
+                fail("элементы с " + numberOfWheels + " колёсами", step, seed, expected.size(),
+                        vehicles.withNumberOfWheels(numberOfWheels).size());
+            }
+        }
+    }
+
+    private static void verifyTypes(VehicleCollection vehicles, int step, long seed) {
+        VehicleSnapshot snapshot = vehicles.snapshot();
+        for (VehicleType type : VEHICLE_TYPES) {
+            for (FuelType fuelType : FUEL_TYPES) {
+                long expected = snapshot.stream().filter(v -> v.getType() == type && v.getFuelType() == fuelType).count();
+                int actual = BitmapQuery.parse(type + " and " + fuelType).count(snapshot);
+                if (expected != actual) {
+                    fail("количество " + type + " and " + fuelType, step, seed, expected, actual);
+                }
+            }
+        }
+        int all = BitmapQuery.parse("BOAT or not BOAT").count(snapshot);
+        if (all != snapshot.size()) {
+            fail("количество занятых слотов", step, seed, snapshot.size(), all);
+        }
+    }
+
+    private static void verifyDistances(VehicleCollection vehicles, Random random, int step, long seed) {
+        VehicleSnapshot snapshot = vehicles.snapshot();
+        int x = random.nextInt(2200) - 1100;
+        int y = random.nextInt(2000) - 1000;
+        double radius = random.nextInt(4) == 0 ? random.nextDouble() * 20 : random.nextDouble() * 400;
+        Comparator<Vehicle> byDistance = Comparator.<Vehicle>comparingDouble(v -> distanceSquared(v, x, y))
+                .thenComparingLong(Vehicle::getIdValue);
+        List<Vehicle> all = snapshot.stream().sorted(byDistance).collect(Collectors.toList());
+        List<Vehicle> expected = all.stream()
+                .filter(v -> distanceSquared(v, x, y) <= radius * radius)
+                .collect(Collectors.toList());
+        List<Vehicle> actual = snapshot.withinDistance(x, y, radius);
+        if (!expected.equals(actual)) {
+            fail("элементы в радиусе " + radius + " от (" + x + ", " + y + ")", step, seed, expected.size(), actual.size());
+        }
+        int k = random.nextInt(20) == 0 ? all.size() + 1 : random.nextInt(30);
+        List<Vehicle> nearest = snapshot.nearest(x, y, k);
+        if (!all.subList(0, Math.min(k, all.size())).equals(nearest)) {
+            fail(k + " ближайших к (" + x + ", " + y + ")", step, seed, Math.min(k, all.size()), nearest.size());
+        }
+    }
+
+    private static double distanceSquared(Vehicle vehicle, int x, int y) {
+        double dx = (double) vehicle.getX() - x;
+        double dy = (double) vehicle.getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static void fail(String what, int step, long seed, Object expected, Object actual) {
+        Assertions.fail("Расхождение (" + what + ") на шаге " + step + ", seed " + seed
+                + ": ожидалось " + expected + ", получено " + actual);
+    }
+}
@@ -0,0 +1,175 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Восстановление коллекции при запуске: дамп, затем отложенные части журнала и текущий журнал;
+ * записи, уже вошедшие в дамп, не применяются повторно; недописанная или повреждённая последняя запись
+ * отбрасывается, и файл журнала обрезается до последней целой записи
+ */
+class JournalTest {
+    private static final LocalDateTime INIT_DATE = LocalDateTime.of(2023, 4, 9, 11, 24, 24);
+
+    @TempDir
+    Path directory;
+
+    private Path dataFile;
+    private Path journalFile;
+    private VehicleCollection vehicles;
+    private Journal journal;
+    // Ожидаемое состояние: те же изменения, применённые к коллекции в памяти
+    private VehicleCollection expected;
+
+    @BeforeEach
+    void writeSnapshot() throws IOException {
+        dataFile = directory.resolve("data.csv");
+        journalFile = directory.resolve("data.csv.journal");
+        List<Vehicle> initial = List.of(vehicle(1), vehicle(2), vehicle(3));
+        SnapshotFormat.CSV.write(dataFile, INIT_DATE, 0, initial);
+        expected = new VehicleCollection();
+        expected.addAll(initial);
+        open();
+    }
+
+    @AfterEach
+    void closeJournal() throws IOException {
+        journal.close();
+    }
+
+    private static Vehicle vehicle(long id) {
+        return new Vehicle(id, "vehicle" + id, (int) id, (int) -id, 1_680_000_000L + id, 0, 100 * id, 4,
+                VehicleType.BOAT, FuelType.PLASMA);
+    }
+
+    /**
+     * Загружает дамп и применяет к нему журнал, как при запуске программы
+     */
+    private void open() throws IOException {
+        SnapshotReader reader = SnapshotFormat.detect(dataFile).reader(1);
+        vehicles = reader.load(dataFile.toString());
+        journal = Journal.open(dataFile.toString(), reader.getSequence(), vehicles);
+    }
+
+    private void reopen() throws IOException {
+        journal.close();
+        open();
+    }
+
+    private void add(Vehicle vehicle) {
+        vehicles.add(vehicle);
+        journal.add(vehicle);
+        expected.add(vehicle);
+    }
+
+    private void commit() throws IOException {
+        journal.commit(vehicles, INIT_DATE);
+    }
+
+    private static List<String> describe(VehicleCollection vehicles) {
+        List<String> lines = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            lines.add(vehicle.toString());
+        }
+        return lines;
+    }
+
+    private void assertRestored() {
+        assertEquals(describe(expected), describe(vehicles));
+    }
+
+    @Test
+    void replaysJournalOverSnapshot() throws IOException {
+        add(vehicle(4));
+        Vehicle replacement = new Vehicle(2, "renamed", 7, 7, 1_680_000_002L, 0, 5, 3, null, null);
+        vehicles.update(replacement);
+        journal.update(replacement);
+        expected.update(replacement);
+        vehicles.removeById(1);
+        journal.remove(1);
+        expected.removeById(1);
+        commit();
+        // Несохранённая запись теряется при закрытии
+        vehicles.add(vehicle(5));
+        journal.add(vehicle(5));
+        reopen();
+        assertRestored();
+    }
+
+    @Test
+    void replaysRotatedPartsThenJournal() throws IOException {
+        add(vehicle(4));
+        commit();
+        journal.close();
+        // Журнал отложен сжатием, а дамп записать не успели
+        Files.move(journalFile, directory.resolve("data.csv.journal.1"));
+        open();
+        assertRestored();
+        add(vehicle(5));
+        commit();
+        reopen();
+        assertRestored();
+
+        // Сохранение с дампом: отложенные части удаляются, записи из них не применяются повторно
+        journal.commit(vehicles, INIT_DATE, SnapshotFormat.BINARY);
+        assertFalse(Files.exists(directory.resolve("data.csv.journal.1")));
+        add(vehicle(6));
+        commit();
+        reopen();
+        assertRestored();
+        assertEquals(SnapshotFormat.BINARY, SnapshotFormat.detect(dataFile));
+    }
+
+    @Test
+    void truncatesTornTail() throws IOException {
+        add(vehicle(4));
+        commit();
+        long valid = Files.size(journalFile);
+        journal.close();
+        // Заголовок записи, тело которой не успели дописать
+        Files.write(journalFile, new byte[] {0, 0, 0, 100, 1, 2, 3}, StandardOpenOption.APPEND);
+        open();
+        assertRestored();
+        assertEquals(valid, Files.size(journalFile));
+        // Новые записи идут сразу за последней целой, а не за мусором
+        add(vehicle(5));
+        commit();
+        reopen();
+        assertRestored();
+    }
+
+    @Test
+    void dropsRecordWithBadChecksum() throws IOException {
+        add(vehicle(4));
+        commit();
+        long valid = Files.size(journalFile);
+        vehicles.add(vehicle(5));
+        journal.add(vehicle(5));
+        commit();
+        journal.close();
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) ~last.get(0));
+            last.rewind();
+            channel.write(last, channel.size() - 1);
+        }
+        open();
+        assertRestored();
+        assertEquals(valid, Files.size(journalFile));
+    }
+}
@@ -0,0 +1,273 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Все способы доступа QueryPlan (поиск по id, диапазон мощности, индекс по колёсам с одним и несколькими ключами,
+ * индекс координат, битовые карты, полный проход), последовательно и параллельно, дают те же элементы в том же
+ * порядке, что и полный проход с проверкой каждого условия запроса по отдельности. Запросы случайные,
+ * с повторяющимися полями, границами Long и Integer, power = null и несовместимыми префиксами имени.
+ * Количество раундов и seed задаются свойствами query.rounds и query.seed, например
+ * mvn -pl app test -Dtest=QueryPlanTest -Dquery.rounds=200 -Dquery.seed=7
+ */
+class QueryPlanTest {
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+    private static final String[] NAMES = {"a", "ab", "abc", "b", "ba", "машина"};
+    private static final long[] POWERS = {Vehicle.NO_ENGINE_POWER, 1, 2, 50, 100, 1000, Long.MAX_VALUE - 1, Long.MAX_VALUE};
+    private static final int[] WHEELS = {1, 2, 3, 4, 6, Integer.MAX_VALUE};
+    private static final String[] NUMERIC_OPERATORS = {"=", "<", "<=", ">", ">="};
+
+    private static final int INITIAL_ELEMENTS = 2_000;
+    private static final int ROUNDS = Integer.getInteger("query.rounds", 20);
+    private static final int CHANGES_PER_ROUND = 50;
+    private static final int QUERIES_PER_ROUND = 50;
+    private static final long SEED = Long.getLong("query.seed", 1);
+
+    private static final String[] EDGE_QUERIES = {
+            "",
+            "power > 9223372036854775807",
+            "power >= 9223372036854775807",
+            "power < -9223372036854775808",
+            "power >= -9223372036854775808",
+            "power <= -9223372036854775807",
+            "power = null",
+            "power = null and power > 5",
+            "power = null and type = null",
+            "wheels > 2147483647",
+            "wheels >= 2147483647",
+            "wheels < -2147483648",
+            "wheels >= -2147483648 and wheels <= 2147483647",
+            "wheels >= 2 and wheels <= 4",
+            "x <= -2147483648",
+            "x < -2147483648",
+            "y >= 2147483647",
+            "y > 2147483647",
+            "x >= -5 and x <= 5 and y >= -900",
+            "id > 9223372036854775807",
+            "id < -9223372036854775808",
+            "id = 1 and id = 2",
+            "name ^= a and name ^= b",
+            "name ^= ab and name ^= a",
+            "name ^= a and name ^= abc",
+            "name = ab and name ^= b",
+            "name = ab and name ^= a",
+            "name = a and name = b",
+            "type = null and fuelType = null",
+            "type = BOAT and type = CHOPPER",
+    };
+
+    @Test
+    void accessPathsMatchFullScan() {
+        Random random = new Random(SEED);
+        VehicleCollection vehicles = new VehicleCollection();
+        List<Long> ids = new ArrayList<>();
+        long nextId = 1;
+        for (int i = 0; i < INITIAL_ELEMENTS; i++) {
+            vehicles.add(randomVehicle(random, nextId));
+            ids.add(nextId++);
+        }
+        ParallelScan parallel = ParallelScan.withThreads(3, 1);
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < CHANGES_PER_ROUND; i++) {
+                int operation = random.nextInt(3);
+                if (operation == 0 || ids.isEmpty()) {
+                    vehicles.add(randomVehicle(random, nextId));
+                    ids.add(nextId++);
+                } else if (operation == 1) {
+                    vehicles.removeById(ids.remove(random.nextInt(ids.size())));
+                } else {
+                    vehicles.update(randomVehicle(random, ids.get(random.nextInt(ids.size()))));
+                }
+            }
+            VehicleSnapshot snapshot = vehicles.snapshot();
+            if (round == 0) {
+                for (String text : EDGE_QUERIES) {
+                    check(text, snapshot, vehicles, parallel);
+                }
+            }
+            for (int i = 0; i < QUERIES_PER_ROUND; i++) {
+                check(randomQuery(random, ids), snapshot, vehicles, parallel);
+            }
+        }
+    }
+
+    private static void check(String text, VehicleSnapshot snapshot, VehicleCollection vehicles, ParallelScan parallel) {
+        List<String[]> conditions = conditions(text);
+        VehicleQuery query = VehicleQuery.parse(text);
+        List<Long> expected = new ArrayList<>();
+        List<Long> matched = new ArrayList<>();
+        for (Vehicle vehicle : snapshot) {
+            if (holds(vehicle, conditions)) {
+                expected.add(vehicle.getIdValue());
+            }
+            if (query.matches(vehicle)) {
+                matched.add(vehicle.getIdValue());
+            }
+        }
+        assertEquals(expected, matched, "matches: " + text);
+        List<QueryPlan> plans = QueryPlan.alternatives(query, snapshot);
+        assertFalse(plans.isEmpty(), text);
+        plans.add(QueryPlan.choose(query, snapshot));
+        for (QueryPlan plan : plans) {
+            String access = plan.explain(snapshot, ParallelScan.SEQUENTIAL).get(1);
+            assertEquals(expected, ids(plan.execute(snapshot, vehicles::getById, ParallelScan.SEQUENTIAL)),
+                    text + ": " + access);
+            assertEquals(expected, ids(plan.execute(snapshot, vehicles::getById, parallel)),
+                    text + ": " + access + ", parallel");
+        }
+    }
+
+    private static List<Long> ids(Iterator<Vehicle> vehicles) {
+        List<Long> ids = new ArrayList<>();
+        vehicles.forEachRemaining(vehicle -> ids.add(vehicle.getIdValue()));
+        return ids;
+    }
+
+    /**
+     * Условия запроса без свёртки в диапазоны: поле, сравнение, значение
+     */
+    private static List<String[]> conditions(String text) {
+        List<String[]> conditions = new ArrayList<>();
+        if (text.isEmpty()) {
+            return conditions;
+        }
+        for (String condition : text.split(" and ")) {
+            conditions.add(condition.split(" "));
+        }
+        return conditions;
+    }
+
+    /**
+     * Проверка условий по отдельности, без VehicleQuery
+     */
+    private static boolean holds(Vehicle vehicle, List<String[]> conditions) {
+        for (String[] condition : conditions) {
+            String operator = condition[1];
+            String value = condition[2];
+            boolean holds;
+            switch (condition[0]) {
+                case "id":
+                    holds = compare(vehicle.getIdValue(), operator, Long.parseLong(value));
+                    break;
+                case "power": {
+                    long power = vehicle.getEnginePowerValue();
+                    holds = value.equals("null") ? power == Vehicle.NO_ENGINE_POWER
+                            : power != Vehicle.NO_ENGINE_POWER && compare(power, operator, Long.parseLong(value));
+                    break;
+                }
+                case "wheels":
+                    holds = compare(vehicle.getNumberOfWheels(), operator, Integer.parseInt(value));
+                    break;
+                case "x":
+                    holds = compare(vehicle.getX(), operator, Integer.parseInt(value));
+                    break;
+                case "y":
+                    holds = compare(vehicle.getY(), operator, Integer.parseInt(value));
+                    break;
+                case "type":
+                    holds = String.valueOf(vehicle.getType()).equals(value);
+                    break;
+                case "fuelType":
+                    holds = String.valueOf(vehicle.getFuelType()).equals(value);
+                    break;
+                case "name":
+                    holds = operator.equals("^=") ? vehicle.getName().startsWith(value) : vehicle.getName().equals(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException(condition[0]);
+            }
+            if (!holds) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean compare(long value, String operator, long bound) {
+        switch (operator) {
+            case "=":
+                return value == bound;
+            case "<":
+                return value < bound;
+            case "<=":
+                return value <= bound;
+            case ">":
+                return value > bound;
+            case ">=":
+                return value >= bound;
+            default:
+                throw new IllegalArgumentException(operator);
+        }
+    }
+
+    private static String randomQuery(Random random, List<Long> ids) {
+        int count = 1 + random.nextInt(4);
+        List<String> conditions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            conditions.add(randomCondition(random, ids));
+        }
+        return String.join(" and ", conditions);
+    }
+
+    private static String randomCondition(Random random, List<Long> ids) {
+        String operator = NUMERIC_OPERATORS[random.nextInt(NUMERIC_OPERATORS.length)];
+        switch (random.nextInt(8)) {
+            case 0: {
+                // Чаще = по существующему id, чтобы применялся поиск по id
+                long id = ids.isEmpty() || random.nextInt(5) == 0
+                        ? pick(random, 0, -1, Long.MIN_VALUE, Long.MAX_VALUE) : ids.get(random.nextInt(ids.size()));
+                return "id " + (random.nextBoolean() ? "=" : operator) + " " + id;
+            }
+            case 1: {
+                if (random.nextInt(5) == 0) {
+                    return "power = null";
+                }
+                long power = random.nextInt(3) == 0 ? 1 + random.nextInt(1000)
+                        : POWERS[random.nextInt(POWERS.length)] + random.nextInt(3) - 1;
+                return "power " + operator + " " + power;
+            }
+            case 2: {
+                long wheels = random.nextInt(3) == 0 ? pick(random, Integer.MIN_VALUE, Integer.MAX_VALUE, 0)
+                        : WHEELS[random.nextInt(WHEELS.length)];
+                return "wheels " + operator + " " + wheels;
+            }
+            case 3:
+                return "x " + operator + " " + (random.nextInt(5) == 0
+                        ? pick(random, Integer.MIN_VALUE, Integer.MAX_VALUE) : random.nextInt(1940) - 970);
+            case 4:
+                return "y " + operator + " " + (random.nextInt(5) == 0
+                        ? pick(random, Integer.MIN_VALUE, Integer.MAX_VALUE) : random.nextInt(1974) - 987);
+            case 5:
+                return "type = " + (random.nextInt(5) == 0 ? "null" : VEHICLE_TYPES[random.nextInt(VEHICLE_TYPES.length)]);
+            case 6:
+                return "fuelType = " + (random.nextInt(5) == 0 ? "null" : FUEL_TYPES[random.nextInt(FUEL_TYPES.length)]);
+            default:
+                return "name " + (random.nextBoolean() ? "^=" : "=") + " " + NAMES[random.nextInt(NAMES.length)];
+        }
+    }
+
+    private static long pick(Random random, long... values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Значения из небольших наборов, чтобы у элементов совпадали ключи индексов; встречаются крайние значения
+     */
+    private static Vehicle randomVehicle(Random random, long id) {
+        long power = random.nextInt(3) == 0 ? 1 + random.nextInt(1000) : POWERS[random.nextInt(POWERS.length)];
+        int x = random.nextInt(50) == 0 ? Integer.MIN_VALUE : random.nextInt(1940) - 970;
+        int y = random.nextInt(50) == 0 ? Integer.MAX_VALUE : random.nextInt(1974) - 987;
+        VehicleType type = random.nextInt(5) == 0 ? null : VEHICLE_TYPES[random.nextInt(VEHICLE_TYPES.length)];
+        FuelType fuelType = random.nextInt(5) == 0 ? null : FUEL_TYPES[random.nextInt(FUEL_TYPES.length)];
+        return new Vehicle(id, NAMES[random.nextInt(NAMES.length)], x, y, 1_680_000_000L + random.nextInt(1000),
+                random.nextInt(1_000_000_000), power, WHEELS[random.nextInt(WHEELS.length)], type, fuelType);
+    }
+}
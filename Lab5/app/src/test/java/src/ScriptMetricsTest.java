@@ -0,0 +1,52 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * add из скрипта добавляются пачками, минуя разбор каждой строки реестром, но слушатели реестра
+ * (stats add, JMX) всё равно их видят: одно выполнение add на пачку с количеством добавленных элементов
+ */
+class ScriptMetricsTest {
+    private static final String ELEMENT = "add\nname\n1\n2\n3\n4\nBOAT\nPLASMA\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void batchedAddsReachListeners() throws IOException {
+        Path script = directory.resolve("script.txt");
+        // Две пачки: info между ними завершает первую
+        Files.writeString(script, ELEMENT.repeat(3) + "info\n" + ELEMENT.repeat(2));
+        VehicleCollection vehicles = new VehicleCollection();
+        Journal journal = Journal.open(directory.resolve("data.csv").toString(), 0, vehicles);
+        CommandMetrics metrics = new CommandMetrics();
+        Main.commands().addListener(metrics);
+        try (VehicleStore store = new VehicleStore(vehicles, LocalDateTime.now(), journal)) {
+            String input = "execute_script " + script + "\n";
+            Session session = new Session(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                    new PrintStream(OutputStream.nullOutputStream()), StandardCharsets.UTF_8, store, true);
+            Main.serve(session);
+            assertEquals(5, vehicles.size());
+        } finally {
+            Main.commands().removeListener(metrics);
+        }
+        CommandMetrics.Stats add = metrics.get("add");
+        assertNotNull(add, "слушатели не получили add из скрипта");
+        assertEquals(2, add.getCalls());
+        assertEquals(0, add.getFailures());
+        assertEquals(5, add.getElementsTouched());
+        assertEquals(1, metrics.get("info").getCalls());
+    }
+}
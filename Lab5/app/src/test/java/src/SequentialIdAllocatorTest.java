@@ -0,0 +1,132 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Выдача id: пропуски в загруженных id и освобождённые id выдаются повторно, начиная с наименьшего,
+ * в том числе через границы слов битовой карты; одновременные next() из нескольких потоков не выдают
+ * один id дважды
+ */
+class SequentialIdAllocatorTest {
+    private static long[] next(IdAllocator allocator, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = allocator.next();
+        }
+        return ids;
+    }
+
+    @Test
+    void fillsSeedGapsThenContinuesAfterMax() {
+        SequentialIdAllocator allocator = new SequentialIdAllocator();
+        allocator.seed(new long[] {2, 5, 63, 64, 66});
+        long[] expected = new long[70];
+        int k = 0;
+        for (long id = 1; id <= 70; id++) {
+            if (id != 2 && id != 5 && id != 63 && id != 64 && id != 66) {
+                expected[k++] = id;
+            }
+        }
+        assertEquals(Arrays.toString(Arrays.copyOf(expected, k)), Arrays.toString(next(allocator, k)));
+
+        // Повторный seed сбрасывает прежнее состояние
+        allocator.seed(new long[] {3});
+        assertEquals("[1, 2, 4, 5]", Arrays.toString(next(allocator, 4)));
+        allocator.seed(new long[0]);
+        assertEquals("[1, 2]", Arrays.toString(next(allocator, 2)));
+    }
+
+    @Test
+    void reusesLowestReleasedId() {
+        SequentialIdAllocator allocator = new SequentialIdAllocator();
+        allocator.seed(new long[0]);
+        next(allocator, 200);
+        allocator.release(150);
+        allocator.release(7);
+        allocator.release(130);
+        // Освобождение ниже уже пройденной части карты
+        assertEquals(7, allocator.next());
+        allocator.release(3);
+        assertEquals("[3, 130, 150, 201]", Arrays.toString(next(allocator, 4)));
+
+        // Повторное освобождение и id, которые ещё не выдавались, не дают дубликатов
+        allocator.release(10);
+        allocator.release(10);
+        allocator.release(500);
+        allocator.release(0);
+        allocator.release(-1);
+        assertEquals("[10, 202, 203]", Arrays.toString(next(allocator, 3)));
+    }
+
+    @Test
+    void reserveTakesIdOutOfReuse() {
+        SequentialIdAllocator allocator = new SequentialIdAllocator();
+        allocator.seed(new long[] {1});
+        // Пропуск 2..9 становится свободным, 10 занят
+        allocator.reserve(10);
+        allocator.reserve(4);
+        allocator.release(1);
+        allocator.reserve(1);
+        assertEquals("[2, 3, 5, 6, 7, 8, 9, 11]", Arrays.toString(next(allocator, 8)));
+    }
+
+    @Test
+    @Timeout(value = 1, unit = TimeUnit.MINUTES)
+    void concurrentNextIsUnique() throws InterruptedException {
+        int threads = 4;
+        int perThread = 20_000;
+        SequentialIdAllocator allocator = new SequentialIdAllocator();
+        // Свободные id из пропусков seed выдаются вперемешку с новыми после high
+        long[] seeded = new long[perThread];
+        for (int i = 0; i < seeded.length; i++) {
+            seeded[i] = 2L * (i + 1);
+        }
+        allocator.seed(seeded);
+        CountDownLatch start = new CountDownLatch(1);
+        long[][] issued = new long[threads][];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                issued[worker] = next(allocator, perThread);
+            }));
+        }
+        workers.forEach(Thread::start);
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long[] all = new long[threads * perThread + seeded.length];
+        int k = 0;
+        for (long[] ids : issued) {
+            for (long id : ids) {
+                all[k++] = id;
+            }
+        }
+        for (long id : seeded) {
+            all[k++] = id;
+        }
+        Arrays.sort(all);
+        // Все id различны и без пропусков: сначала заняты все нечётные id из пропусков seed
+        for (int i = 0; i < all.length; i++) {
+            assertEquals(i + 1, all[i], "id выдан дважды или пропущен");
+        }
+        assertTrue(allocator.next() > all.length);
+    }
+}
@@ -0,0 +1,98 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Сеанс клиента, ввод которого закончился посреди полей элемента: команда завершается с ошибкой,
+ * коллекция не меняется, сеанс закрывается, а не запрашивает поле заново без конца
+ */
+class SessionInputTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final int OUTPUT_LIMIT = 1 << 20;
+    private static final String END_OF_INPUT = "ввод закончился до конца данных элемента";
+
+    @TempDir
+    Path directory;
+
+    private VehicleStore store;
+
+    @BeforeEach
+    void openStore() throws IOException {
+        VehicleCollection vehicles = new VehicleCollection();
+        Journal journal = Journal.open(directory.resolve("data.csv").toString(), 0, vehicles);
+        store = new VehicleStore(vehicles, LocalDateTime.now(), journal);
+    }
+
+    @AfterEach
+    void closeStore() throws IOException {
+        store.close();
+    }
+
+    /**
+     * @return Вывод сеанса, который выполнил команды input и дошёл до конца ввода
+     */
+    private String serve(String input) {
+        // Вывод ограничен: сеанс, который повторяет запрос без конца, должен упасть по таймауту, а не по памяти
+        ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] bytes, int offset, int length) {
+                if (size() < OUTPUT_LIMIT) {
+                    super.write(bytes, offset, length);
+                }
+            }
+        };
+        PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8);
+        Session session = new Session(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out,
+                StandardCharsets.UTF_8, store, true);
+        assertTimeoutPreemptively(TIMEOUT, () -> Main.serve(session));
+        assertTrue(session.isClosed());
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void addCutAfterName() {
+        String output = serve("add\nname\n");
+        assertTrue(output.contains(END_OF_INPUT), output);
+        assertEquals(0, store.getVehicles().size());
+    }
+
+    @Test
+    void addCutInRetry() {
+        // После некорректной координаты X поле запрашивается заново, а ввод уже закончился
+        String output = serve("add\nname\nq\n");
+        assertTrue(output.contains(END_OF_INPUT), output);
+        assertEquals(0, store.getVehicles().size());
+    }
+
+    @Test
+    void addCutInType() {
+        String output = serve("add\nname\n1\n2\n3\n4\n");
+        assertTrue(output.contains(END_OF_INPUT), output);
+        assertEquals(0, store.getVehicles().size());
+    }
+
+    @Test
+    void updateCutKeepsElement() {
+        serve("add\nname\n1\n2\n3\n4\nBOAT\nPLASMA\n");
+        assertEquals(1, store.getVehicles().size());
+        Vehicle vehicle = store.getVehicles().first();
+        String output = serve("update " + vehicle.getIdValue() + "\nother\n5\n");
+        assertTrue(output.contains(END_OF_INPUT), output);
+        assertEquals("name", store.getVehicles().getById(vehicle.getIdValue()).getName());
+    }
+}
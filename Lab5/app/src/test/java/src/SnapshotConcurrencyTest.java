@@ -0,0 +1,190 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Версии коллекции при одновременной работе читателей и писателя: читатели без блокировок обходят текущую
+ * версию целиком, писатель в это время заменяет, добавляет (по одному и пачками) и удаляет элементы.
+ * Каждая версия, которую видит читатель, согласована: элементы строго по compareTo, размер совпадает с обходом,
+ * счётчики по количеству колёс и по мощности совпадают с подсчётом при обходе, повторный обход той же
+ * версии после новых изменений даёт те же элементы, а номера версий у читателя не убывают.
+ * В конце последняя версия совпадает с моделью писателя.
+ * Количество изменений, читателей и seed задаются свойствами snapshot.steps, snapshot.readers и snapshot.seed
+ * (как в SnapshotStress, но с проверками вместо замеров)
+ */
+class SnapshotConcurrencyTest {
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+
+    private static final int INITIAL_ELEMENTS = 2_000;
+    private static final int STEPS = Integer.getInteger("snapshot.steps", 20_000);
+    private static final int READERS = Integer.getInteger("snapshot.readers", 3);
+    private static final long SEED = Long.getLong("snapshot.seed", 1);
+    private static final int BATCH_SIZE = 16;
+
+    @Test
+    @Timeout(value = 2, unit = TimeUnit.MINUTES)
+    void readersSeeConsistentVersions() throws InterruptedException {
+        Random random = new Random(SEED);
+        Map<Long, Vehicle> model = new HashMap<>();
+        Vehicle[] initial = new Vehicle[INITIAL_ELEMENTS];
+        for (int i = 0; i < initial.length; i++) {
+            initial[i] = randomVehicle(random, i + 1);
+            model.put(initial[i].getIdValue(), initial[i]);
+        }
+        Arrays.sort(initial);
+        VehicleCollection vehicles = VehicleCollection.fromSorted(initial);
+
+        AtomicBoolean done = new AtomicBoolean();
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        long[] reads = new long[READERS];
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            int reader = i;
+            readers.add(new Thread(() -> {
+                long lastVersion = -1;
+                try {
+                    // Последний обход - после окончания записи, чтобы каждый читатель сделал хотя бы один
+                    boolean last;
+                    do {
+                        last = done.get();
+                        VehicleSnapshot snapshot = vehicles.snapshot();
+                        if (snapshot.getVersion() < lastVersion) {
+                            throw new AssertionError("версия " + snapshot.getVersion() + " после " + lastVersion);
+                        }
+                        lastVersion = snapshot.getVersion();
+                        check(snapshot);
+                        reads[reader]++;
+                    } while (!last && errors.isEmpty());
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }, "reader-" + i));
+        }
+        readers.forEach(Thread::start);
+
+        List<Long> ids = new ArrayList<>(model.keySet());
+        long nextId = INITIAL_ELEMENTS + 1;
+        try {
+            for (int step = 0; step < STEPS && errors.isEmpty(); step++) {
+                int operation = random.nextInt(100);
+                if (operation < 40 && !ids.isEmpty()) {
+                    // Замена, как в SnapshotStress: удаление и вставка элемента с новым id
+                    long id = ids.remove(random.nextInt(ids.size()));
+                    vehicles.removeById(id);
+                    model.remove(id);
+                    Vehicle replacement = randomVehicle(random, nextId++);
+                    vehicles.add(replacement);
+                    model.put(replacement.getIdValue(), replacement);
+                    ids.add(replacement.getIdValue());
+                } else if (operation < 60 && !ids.isEmpty()) {
+                    Vehicle replacement = randomVehicle(random, ids.get(random.nextInt(ids.size())));
+                    vehicles.update(replacement);
+                    model.put(replacement.getIdValue(), replacement);
+                } else if (operation < 75) {
+                    Vehicle vehicle = randomVehicle(random, nextId++);
+                    vehicles.add(vehicle);
+                    model.put(vehicle.getIdValue(), vehicle);
+                    ids.add(vehicle.getIdValue());
+                } else if (operation < 90 && !ids.isEmpty()) {
+                    long id = ids.remove(random.nextInt(ids.size()));
+                    vehicles.removeById(id);
+                    model.remove(id);
+                } else if (operation < 99) {
+                    List<Vehicle> batch = new ArrayList<>();
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        batch.add(randomVehicle(random, nextId++));
+                    }
+                    for (Vehicle vehicle : vehicles.addBatch(batch)) {
+                        model.put(vehicle.getIdValue(), vehicle);
+                        ids.add(vehicle.getIdValue());
+                    }
+                } else if (vehicles.size() > 10) {
+                    // Удаление нескольких наименьших элементов
+                    Vehicle bound = vehicles.snapshot().iterator(random.nextInt(10)).next();
+                    for (Vehicle removed : vehicles.removeLower(bound)) {
+                        model.remove(removed.getIdValue());
+                        ids.remove(removed.getIdValue());
+                    }
+                }
+            }
+        } finally {
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        if (!errors.isEmpty()) {
+            fail(errors.peek());
+        }
+        for (int i = 0; i < READERS; i++) {
+            assertTrue(reads[i] > 0, "читатель " + i + " не сделал ни одного обхода");
+        }
+
+        VehicleSnapshot last = vehicles.snapshot();
+        check(last);
+        Vehicle[] expected = model.values().toArray(new Vehicle[0]);
+        Arrays.sort(expected);
+        assertEquals(Arrays.asList(expected), last.stream().toList());
+    }
+
+    /**
+     * Проверяет согласованность одной версии; бросает AssertionError с номером версии
+     */
+    private static void check(VehicleSnapshot snapshot) {
+        List<Vehicle> scanned = new ArrayList<>(snapshot.size());
+        SortedMap<Integer, Integer> wheels = new TreeMap<>();
+        SortedMap<Long, Integer> powers = new TreeMap<>();
+        Vehicle previous = null;
+        for (Vehicle vehicle : snapshot) {
+            if (previous != null && previous.compareTo(vehicle) >= 0) {
+                throw new AssertionError("версия " + snapshot.getVersion() + ": " + previous + " перед " + vehicle);
+            }
+            previous = vehicle;
+            scanned.add(vehicle);
+            wheels.merge(vehicle.getNumberOfWheels(), 1, Integer::sum);
+            powers.merge(vehicle.getEnginePowerValue(), 1, Integer::sum);
+        }
+        assertEquals(scanned.size(), snapshot.size(), "размер версии " + snapshot.getVersion());
+        assertEquals(wheels, snapshot.countsByNumberOfWheels(), "количество колёс, версия " + snapshot.getVersion());
+        for (Map.Entry<Integer, Integer> group : wheels.entrySet()) {
+            assertEquals(group.getValue(), snapshot.withNumberOfWheels(group.getKey()).size(),
+                    "группа " + group.getKey() + " колёс, версия " + snapshot.getVersion());
+        }
+        SortedMap<Long, Integer> indexed = new TreeMap<>();
+        snapshot.forEachEnginePowerCount((power, count) -> indexed.put(power, count));
+        assertEquals(powers, indexed, "счётчики мощности, версия " + snapshot.getVersion());
+        // Версия не меняется, пока писатель создаёт следующие
+        List<Vehicle> again = new ArrayList<>(scanned.size());
+        snapshot.forEach(again::add);
+        assertEquals(scanned, again, "повторный обход версии " + snapshot.getVersion());
+    }
+
+    /**
+     * Небольшие наборы значений, чтобы у элементов совпадали ключи индексов
+     */
+    private static Vehicle randomVehicle(Random random, long id) {
+        long power = random.nextInt(10) == 0 ? Vehicle.NO_ENGINE_POWER : 1 + random.nextInt(50);
+        return new Vehicle(id, "vehicle" + id, random.nextInt(1940) - 970, random.nextInt(1800) - 900,
+                1_680_000_000L + random.nextInt(1000), random.nextInt(1_000_000_000), power, 1 + random.nextInt(8),
+                random.nextInt(5) == 0 ? null : VEHICLE_TYPES[random.nextInt(VEHICLE_TYPES.length)],
+                random.nextInt(5) == 0 ? null : FUEL_TYPES[random.nextInt(FUEL_TYPES.length)]);
+    }
+}
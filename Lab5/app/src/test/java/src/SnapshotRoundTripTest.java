@@ -0,0 +1,114 @@
+package src;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Дамп, записанный в каждом формате и прочитанный обратно, совпадает с исходными элементами и с загрузкой
+ * того же дампа из CSV: отсутствующая мощность, null-тип и топливо, крайние координаты, имена не ASCII,
+ * даты за пределами 1678 - 2261 годов (на них ключ сортировки compareTo насыщается) и високосный день
+ */
+class SnapshotRoundTripTest {
+    private static final LocalDateTime INIT_DATE = LocalDateTime.of(2023, 4, 9, 11, 24, 24);
+    private static final long SEQUENCE = 42;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * @param nanos Наносекунды даты создания (CSV хранит дату с точностью до секунды)
+     */
+    private static Vehicle[] vehicles(boolean nanos) {
+        List<Vehicle> vehicles = new ArrayList<>();
+        long[] seconds = {
+                LocalDateTime.of(1600, 1, 1, 0, 0, 0).toEpochSecond(ZoneOffset.UTC),
+                0,
+                LocalDateTime.of(2024, 2, 29, 23, 59, 59).toEpochSecond(ZoneOffset.UTC),
+                LocalDateTime.of(9999, 12, 31, 23, 59, 59).toEpochSecond(ZoneOffset.UTC),
+        };
+        long id = 1;
+        for (long second : seconds) {
+            int nano = nanos ? (int) (id * 123_456_789 % 1_000_000_000) : 0;
+            vehicles.add(new Vehicle(id, "vehicle" + id, 970, -987, second, nano, Vehicle.NO_ENGINE_POWER, 1, null, null));
+            id++;
+            vehicles.add(new Vehicle(id, "машина " + id, -970, 0, second, nano, 1, 4, VehicleType.BOAT, null));
+            id++;
+            vehicles.add(new Vehicle(id, "v", 0, 987, second, nano, Long.MAX_VALUE, Integer.MAX_VALUE, null, FuelType.ANTIMATTER));
+            id++;
+            // Те же мощность и дата, что у предыдущего: различаются только id
+            vehicles.add(new Vehicle(id, "twin", 1, 1, second, nano, Long.MAX_VALUE, 2, VehicleType.CHOPPER, FuelType.PLASMA));
+            id++;
+        }
+        Vehicle[] sorted = vehicles.toArray(new Vehicle[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static List<String> describe(Iterable<Vehicle> vehicles) {
+        List<String> lines = new ArrayList<>();
+        for (Vehicle vehicle : vehicles) {
+            lines.add(vehicle + " nano=" + vehicle.getCreationNano());
+        }
+        return lines;
+    }
+
+    private VehicleCollection roundTrip(SnapshotFormat format, Vehicle[] vehicles, int threads) throws IOException {
+        Path file = directory.resolve("data." + format.name().toLowerCase());
+        format.write(file, INIT_DATE, SEQUENCE, Arrays.asList(vehicles));
+        assertEquals(format, SnapshotFormat.detect(file));
+        SnapshotReader reader = format.reader(threads);
+        VehicleCollection loaded = reader.load(file.toString());
+        assertEquals(INIT_DATE, reader.getInitDate());
+        assertEquals(SEQUENCE, reader.getSequence());
+        return loaded;
+    }
+
+    @Test
+    void binaryMatchesCsv() throws IOException {
+        Vehicle[] vehicles = vehicles(false);
+        List<String> expected = describe(Arrays.asList(vehicles));
+        List<String> csv = describe(roundTrip(SnapshotFormat.CSV, vehicles, 1));
+        assertEquals(expected, csv);
+        assertEquals(csv, describe(roundTrip(SnapshotFormat.CSV, vehicles, 2)));
+        assertEquals(csv, describe(roundTrip(SnapshotFormat.BINARY, vehicles, 1)));
+        assertEquals(csv, describe(roundTrip(SnapshotFormat.COLUMNS, vehicles, 1)));
+    }
+
+    @Test
+    void binaryKeepsNanos() throws IOException {
+        Vehicle[] vehicles = vehicles(true);
+        List<String> expected = describe(Arrays.asList(vehicles));
+        assertEquals(expected, describe(roundTrip(SnapshotFormat.BINARY, vehicles, 1)));
+        assertEquals(expected, describe(roundTrip(SnapshotFormat.COLUMNS, vehicles, 1)));
+    }
+
+    @Test
+    void loadedCollectionKeepsOrderAndIds() throws IOException {
+        Vehicle[] vehicles = vehicles(true);
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            VehicleCollection loaded = roundTrip(format, vehicles, 1);
+            assertEquals(vehicles.length, loaded.size(), format.name());
+            Vehicle previous = null;
+            for (Vehicle vehicle : loaded) {
+                if (previous != null) {
+                    assertEquals(-1, Integer.signum(previous.compareTo(vehicle)), format + ": " + previous + " перед " + vehicle);
+                }
+                assertEquals(vehicle, loaded.getById(vehicle.getIdValue()), format.name());
+                previous = vehicle;
+            }
+            if (format == SnapshotFormat.COLUMNS) {
+                assertInstanceOf(MappedVehicle.class, loaded.first());
+            }
+        }
+    }
+}
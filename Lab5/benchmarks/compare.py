@@ -0,0 +1,73 @@
+#!/usr/bin/env python3
+"""Сравнивает два JSON-отчёта JMH (benchmarks/run.sh): результат и байты на операцию для каждого
+бенчмарка, режима и набора параметров.
+
+    python3 benchmarks/compare.py benchmarks/results/old.json benchmarks/results/new.json [--threshold 5]
+
+Изменение результата больше threshold процентов помечается: для Throughput больше - лучше,
+для AverageTime меньше - лучше. Код возврата 1, если есть ухудшения.
+"""
+import argparse
+import json
+import sys
+
+ALLOCATION = "gc.alloc.rate.norm"
+
+
+def load(path):
+    with open(path, encoding="utf-8") as file:
+        runs = json.load(file)
+    results = {}
+    for run in runs:
+        params = ",".join(f"{k}={v}" for k, v in sorted(run.get("params", {}).items()))
+        key = (".".join(run["benchmark"].split(".")[-2:]), run["mode"], params)
+        metric = run["primaryMetric"]
+        allocation = run.get("secondaryMetrics", {}).get(ALLOCATION)
+        results[key] = {
+            "score": metric["score"],
+            "error": metric["scoreError"],
+            "unit": metric["scoreUnit"],
+            "alloc": allocation["score"] if allocation else None,
+        }
+    return results
+
+
+def change(old, new):
+    return (new / old - 1) * 100 if old else float("inf")
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Сравнение двух отчётов JMH")
+    parser.add_argument("old")
+    parser.add_argument("new")
+    parser.add_argument("--threshold", type=float, default=5.0, help="порог изменения в процентах")
+    args = parser.parse_args()
+
+    old = load(args.old)
+    new = load(args.new)
+    worse = 0
+    print(f"{'benchmark':<48} {'mode':<6} {'old':>12} {'new':>12} {'unit':<8} {'diff':>8} {'B/op old':>10} {'B/op new':>10}")
+    for key in sorted(old.keys() | new.keys()):
+        name, mode, params = key
+        title = name + (f" [{params}]" if params else "")
+        if key not in old or key not in new:
+            print(f"{title:<48} {mode:<6} {'только в ' + ('новом' if key in new else 'старом'):>25}")
+            continue
+        before, after = old[key], new[key]
+        diff = change(before["score"], after["score"])
+        better = diff > 0 if mode == "thrpt" else diff < 0
+        mark = ""
+        if abs(diff) > args.threshold:
+            mark = "+" if better else "-"
+            worse += 0 if better else 1
+        alloc_old = "" if before["alloc"] is None else f"{before['alloc']:.0f}"
+        alloc_new = "" if after["alloc"] is None else f"{after['alloc']:.0f}"
+        print(f"{title:<48} {mode:<6} {before['score']:>12.3f} {after['score']:>12.3f} {after['unit']:<8} "
+              f"{diff:>+7.1f}%{mark:1} {alloc_old:>10} {alloc_new:>10}")
+    if worse:
+        print(f"Ухудшений больше {args.threshold}%: {worse}")
+    return 1 if worse else 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Собирает бенчмарки и запускает их с профилировщиком GC (gc.alloc.rate.norm - байт на операцию).
+# Отчёт JMH в JSON пишется в benchmarks/results/<дата>-<коммит>.json; два отчёта сравнивает compare.py.
+# Аргументы передаются JMH, например:
+#   benchmarks/run.sh CsvBenchmark
+#   benchmarks/run.sh LoadSaveBenchmark -p size=1000000 -p format=binary
+# Файл данных для ручных замеров: java -cp benchmarks/target/benchmarks.jar src.VehicleDataGenerator 10M data.csv
+set -e
+cd "$(dirname "$0")/.."
+mvn -q -B package -DskipTests
+mkdir -p benchmarks/results
+revision=$(git rev-parse --short HEAD 2>/dev/null || echo unknown)
+report="benchmarks/results/$(date +%Y%m%d-%H%M%S)-$revision.json"
+java -jar benchmarks/target/benchmarks.jar -prof gc -rf json -rff "$report" "$@"
+echo "Отчёт: $report"
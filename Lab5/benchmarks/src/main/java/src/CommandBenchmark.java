@@ -0,0 +1,81 @@
+package src;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Команды вывода, которые просматривают всю коллекцию из size элементов: команда выполняется в сеансе
+ * так же, как при вводе пользователя (разбор, реестр команд, вывод), вывод отбрасывается
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({
+            "group_counting_by_engine_power",
+            "filter_by_number_of_wheels 4",
+            "print_field_ascending_number_of_wheels",
+            "count_by_engine_power_range 1000 500000",
+            "show --limit 100",
+    })
+    public String command;
+
+    private Path directory;
+    private VehicleStore store;
+    private PrintStream nowhere;
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lab5-bench");
+        VehicleCollection vehicles = VehicleCollection.fromSorted(VehicleDataGenerator.vehicles(size, VehicleDataGenerator.DEFAULT_SEED));
+        store = new VehicleStore(vehicles, VehicleDataGenerator.INIT_DATE,
+                Journal.open(directory.resolve("data.csv").toString(), 0, vehicles));
+        nowhere = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        input = command + "\n";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Session run() {
+        Session session = new Session(new StringReader(input), nowhere, StandardCharsets.UTF_8, store, true);
+        Main.serve(session);
+        return session;
+    }
+}
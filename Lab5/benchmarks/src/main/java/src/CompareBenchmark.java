@@ -0,0 +1,60 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сравнение элементов (Vehicle.compareTo) отдельно и в сортировке перемешанного массива размера size:
+ * от сравнения зависят сортировка при загрузке, add_if_max и remove_lower
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompareBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Vehicle[] shuffled;
+    private Vehicle[] work;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Vehicle> vehicles = Arrays.asList(VehicleDataGenerator.vehicles(size, VehicleDataGenerator.DEFAULT_SEED));
+        Collections.shuffle(vehicles, new Random(VehicleDataGenerator.DEFAULT_SEED));
+        shuffled = vehicles.toArray(new Vehicle[0]);
+        work = new Vehicle[size];
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int compareTo() {
+        int i = next;
+        next = i + 1 == size ? 0 : i + 1;
+        return shuffled[i].compareTo(shuffled[next]);
+    }
+
+    @Benchmark
+    public Vehicle[] sort() {
+        System.arraycopy(shuffled, 0, work, 0, size);
+        Arrays.sort(work);
+        return work;
+    }
+}
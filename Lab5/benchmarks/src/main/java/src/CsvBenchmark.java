@@ -0,0 +1,62 @@
+package src;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Разбор и запись одной строки CSV: Vehicle.fromCSV (split и DateTimeFormatter), VehicleCsvParser
+ * (разбор прямо из байт, которым загружается файл данных) и Vehicle.toCSV. Строки и элементы
+ * перебираются по кругу, чтобы JIT не свёл замер к одной и той же строке
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvBenchmark {
+    private static final int ROWS = 1024;
+
+    private String[] rows;
+    private byte[][] rowBytes;
+    private Vehicle[] vehicles;
+    private final VehicleCsvParser parser = new VehicleCsvParser();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        vehicles = VehicleDataGenerator.vehicles(ROWS, VehicleDataGenerator.DEFAULT_SEED);
+        rows = new String[ROWS];
+        rowBytes = new byte[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = vehicles[i].toCSV();
+            rowBytes[i] = rows[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public Vehicle fromCsv() {
+        return Vehicle.fromCSV(rows[next++ & (ROWS - 1)]);
+    }
+
+    @Benchmark
+    public Vehicle csvParser() {
+        byte[] row = rowBytes[next++ & (ROWS - 1)];
+        return parser.parse(row, 0, row.length, 1);
+    }
+
+    @Benchmark
+    public String toCsv() {
+        return vehicles[next++ & (ROWS - 1)].toCSV();
+    }
+}
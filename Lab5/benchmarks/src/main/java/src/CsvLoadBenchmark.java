@@ -0,0 +1,78 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Чтение всех элементов CSV-файла из size строк: прежний путь загрузки (BufferedReader.readLine
+ * и Vehicle.fromCSV на каждую строку) и VehicleCsvReader. Коллекция не строится, сравнивается только разбор
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvLoadBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("lab5-bench", ".csv");
+        VehicleDataGenerator.write(file, size, VehicleDataGenerator.DEFAULT_SEED, SnapshotFormat.CSV);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public List<Vehicle> fromCsvLines() throws IOException {
+        List<Vehicle> vehicles = new ArrayList<>(size);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                vehicles.add(Vehicle.fromCSV(line));
+            }
+        }
+        return vehicles;
+    }
+
+    @Benchmark
+    public List<Vehicle> csvReader() throws IOException {
+        List<Vehicle> vehicles = new ArrayList<>(size);
+        try (InputStream in = Files.newInputStream(file); VehicleCsvReader reader = new VehicleCsvReader(in)) {
+            reader.readHeader();
+            Vehicle vehicle;
+            while ((vehicle = reader.next()) != null) {
+                vehicles.add(vehicle);
+            }
+        }
+        return vehicles;
+    }
+}
@@ -0,0 +1,57 @@
+package src;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Выдача id новым элементам (Vehicle.generateId через IdAllocator): выдача с возвратом, как при add
+ * и remove_by_id, и создание элемента с новым id. Распределитель заполняется size занятыми id
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IdBenchmark {
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private IdAllocator allocator;
+    private Coordinates coordinates;
+
+    @Setup
+    public void setUp() {
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i + 1;
+        }
+        Vehicle.seedIds(ids);
+        allocator = Vehicle.getIdAllocator();
+        coordinates = new Coordinates(0, 0);
+    }
+
+    @Benchmark
+    public long nextAndRelease() {
+        long id = allocator.next();
+        allocator.release(id);
+        return id;
+    }
+
+    @Benchmark
+    public Vehicle newVehicle() {
+        Vehicle vehicle = new Vehicle("vehicle", coordinates, 100L, 4, VehicleType.BOAT, FuelType.GASOLINE);
+        allocator.release(vehicle.getId());
+        return vehicle;
+    }
+}
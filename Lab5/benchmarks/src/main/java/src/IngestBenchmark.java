@@ -0,0 +1,110 @@
+package src;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сравнение скорости добавления rows элементов командой add из скрипта (path = add: execute_script,
+ * ввод по полям с подсказками, как в script.txt) и командой ingest (path = ingest: компактные записи,
+ * пачки по batch). Команда выполняется в сеансе, как у клиента сервера; каждая загрузка - одна операция
+ * в новую пустую коллекцию с журналом во временном каталоге, вывод сеанса отбрасывается
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class IngestBenchmark {
+    @Param({"10000", "200000"})
+    public int rows;
+
+    @Param({"add", "ingest"})
+    public String path;
+
+    @Param({"" + BulkIngest.DEFAULT_BATCH_SIZE})
+    public int batch;
+
+    private Path directory;
+    private Path dataFile;
+    private VehicleStore store;
+    private PrintStream nowhere;
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lab5-bench");
+        dataFile = directory.resolve("data.csv");
+        StringBuilder text = new StringBuilder();
+        for (Vehicle vehicle : VehicleDataGenerator.vehicles(rows, VehicleDataGenerator.DEFAULT_SEED, true)) {
+            if (path.equals("add")) {
+                VehicleDataGenerator.appendAdd(text, vehicle);
+            } else {
+                VehicleDataGenerator.appendRecord(text, vehicle);
+            }
+        }
+        Path source = directory.resolve("source.txt");
+        Files.writeString(source, text);
+        input = (path.equals("add") ? "execute_script " + source : "ingest " + source + " --batch " + batch) + "\n";
+        nowhere = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+    }
+
+    @Setup(Level.Iteration)
+    public void openStore() throws IOException {
+        VehicleCollection vehicles = new VehicleCollection();
+        store = new VehicleStore(vehicles, LocalDateTime.now(), Journal.open(dataFile.toString(), 0, vehicles));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeStore() throws IOException {
+        if (store.getVehicles().size() != rows) {
+            throw new IllegalStateException("загружено " + store.getVehicles().size() + " элементов из " + rows);
+        }
+        store.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith("data.csv")) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Session load() {
+        Session session = new Session(new StringReader(input), nowhere, StandardCharsets.UTF_8, store, true);
+        Main.serve(session);
+        return session;
+    }
+}
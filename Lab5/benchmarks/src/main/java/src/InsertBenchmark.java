@@ -0,0 +1,90 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Вставка size элементов в случайном порядке: в TreeSet с прежним сравнением (мощность через getEnginePower,
+ * дата через getCreationDate, без id) и с Vehicle.compareTo, и в VehicleCollection по одному (add).
+ * В powers задаётся разброс мощности: при малом разбросе чаще сравниваются даты создания
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InsertBenchmark {
+    /**
+     * Сравнение до ключа сортировки: упаковка мощности и сравнение LocalDateTime, null-мощность не поддерживается
+     */
+    private static final Comparator<Vehicle> LEGACY_ORDER = (a, b) -> {
+        int result = a.getEnginePower().compareTo(b.getEnginePower());
+        if (result == 0) {
+            result = a.getCreationDate().compareTo(b.getCreationDate());
+        }
+        return result;
+    };
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"1000000", "100"})
+    public int powers;
+
+    private Vehicle[] shuffled;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(VehicleDataGenerator.DEFAULT_SEED);
+        Vehicle[] vehicles = VehicleDataGenerator.vehicles(size, VehicleDataGenerator.DEFAULT_SEED);
+        for (int i = 0; i < size; i++) {
+            Vehicle vehicle = vehicles[i];
+            vehicles[i] = new Vehicle(vehicle.getIdValue(), vehicle.getName(), vehicle.getX(), vehicle.getY(),
+                    vehicle.getCreationEpochSecond(), vehicle.getCreationNano(), 1 + random.nextInt(powers),
+                    vehicle.getNumberOfWheels(), vehicle.getType(), vehicle.getFuelType());
+        }
+        List<Vehicle> list = Arrays.asList(vehicles);
+        Collections.shuffle(list, random);
+        shuffled = list.toArray(new Vehicle[0]);
+    }
+
+    @Benchmark
+    public TreeSet<Vehicle> treeSetLegacy() {
+        TreeSet<Vehicle> set = new TreeSet<>(LEGACY_ORDER);
+        Collections.addAll(set, shuffled);
+        return set;
+    }
+
+    @Benchmark
+    public TreeSet<Vehicle> treeSetSortKey() {
+        TreeSet<Vehicle> set = new TreeSet<>();
+        Collections.addAll(set, shuffled);
+        return set;
+    }
+
+    @Benchmark
+    public VehicleCollection collectionAdd() {
+        VehicleCollection vehicles = new VehicleCollection();
+        for (Vehicle vehicle : shuffled) {
+            vehicles.add(vehicle);
+        }
+        return vehicles;
+    }
+}
@@ -0,0 +1,130 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Нагрузочный клиент для сервера команд (SERVER_PORT). Для 1, 2, 4, ... клиентов каждый клиент
+ * открывает свой сеанс и по кругу отправляет команды, дожидаясь приглашения "Введите команду:"
+ * после каждого ответа. Выводит команды в секунду и задержки p50/p99 для каждого числа клиентов.
+ * Запуск: java -cp benchmarks/target/benchmarks.jar src.LoadGenerator порт [команды через ;] [секунд на шаг] [максимум клиентов]
+ */
+public class LoadGenerator {
+    private static final String PROMPT = "Введите команду:";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Использование: LoadGenerator порт [команды через ;] [секунд на шаг] [максимум клиентов]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        String[] commands = (args.length > 1 ? args[1] : "info;group_counting_by_engine_power;filter_by_number_of_wheels 3").split(";");
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int maxClients = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        System.out.printf("%8s %12s %10s %10s%n", "clients", "cmds/sec", "p50, ms", "p99, ms");
+        for (int clients = 1; clients <= maxClients; clients *= 2) {
+            run(port, commands, seconds, clients);
+        }
+    }
+
+    private static void run(int port, String[] commands, int seconds, int clients) throws InterruptedException {
+        Client[] workers = new Client[clients];
+        CountDownLatch ready = new CountDownLatch(clients);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        for (int i = 0; i < clients; i++) {
+            workers[i] = new Client(port, commands, i, ready, deadline);
+            workers[i].start();
+        }
+        long count = 0;
+        for (Client worker : workers) {
+            worker.join();
+            if (worker.error != null) {
+                System.out.println("Произошла ошибка: " + worker.error.getMessage());
+                return;
+            }
+            count += worker.count;
+        }
+        long[] latencies = new long[(int) count];
+        int k = 0;
+        for (Client worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, k, worker.count);
+            k += worker.count;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%8d %12.0f %10.3f %10.3f%n", clients, (double) count / seconds,
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static class Client extends Thread {
+        private final int port;
+        private final String[] commands;
+        private final int offset;
+        private final CountDownLatch ready;
+        private final long deadline;
+        long[] latencies = new long[1024];
+        int count;
+        Exception error;
+
+        Client(int port, String[] commands, int offset, CountDownLatch ready, long deadline) {
+            this.port = port;
+            this.commands = commands;
+            this.offset = offset;
+            this.ready = ready;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                socket.setTcpNoDelay(true);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                PrintStream out = new PrintStream(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+                awaitPrompt(in);
+                ready.countDown();
+                ready.await();
+                for (int i = offset; System.nanoTime() < deadline; i++) {
+                    long start = System.nanoTime();
+                    out.println(commands[i % commands.length]);
+                    awaitPrompt(in);
+                    record(System.nanoTime() - start);
+                }
+                out.println("exit");
+            } catch (IOException | InterruptedException e) {
+                error = e;
+                ready.countDown();
+            }
+        }
+
+        private static void awaitPrompt(BufferedReader in) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.endsWith(PROMPT)) {
+                    return;
+                }
+            }
+            throw new IOException("Сервер закрыл соединение");
+        }
+
+        private void record(long latency) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+        }
+    }
+}
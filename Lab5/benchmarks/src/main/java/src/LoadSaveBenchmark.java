@@ -0,0 +1,79 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Загрузка файла данных (Main.load: чтение снимка, журнала и сортировка) и сохранение коллекции
+ * (Journal.commit, команда save) для size элементов в каждом формате снимка. Файлы создаются во временном
+ * каталоге и удаляются после прогона
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoadSaveBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"csv", "binary", "columns"})
+    public String format;
+
+    private Path directory;
+    private String loadFile;
+    private VehicleStore saveStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lab5-bench");
+        SnapshotFormat snapshotFormat = SnapshotFormat.of(format);
+        loadFile = directory.resolve("load.csv").toString();
+        VehicleDataGenerator.write(Path.of(loadFile), size, VehicleDataGenerator.DEFAULT_SEED, snapshotFormat);
+
+        String saveFile = directory.resolve("save.csv").toString();
+        VehicleCollection vehicles = VehicleCollection.fromSorted(VehicleDataGenerator.vehicles(size, VehicleDataGenerator.DEFAULT_SEED));
+        saveStore = new VehicleStore(vehicles, VehicleDataGenerator.INIT_DATE, Journal.open(saveFile, 0, vehicles));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        saveStore.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public VehicleCollection load() throws IOException {
+        try (VehicleStore store = Main.load(loadFile)) {
+            return store.getVehicles();
+        }
+    }
+
+    @Benchmark
+    public VehicleStore save() throws IOException {
+        saveStore.getJournal().commit(saveStore.getVehicles(), saveStore.getInitDate(), SnapshotFormat.of(format));
+        return saveStore;
+    }
+}
@@ -0,0 +1,81 @@
+package src;
+
+import java.lang.ref.Reference;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Оценка занимаемой памяти на один элемент для прежнего (объектного) и текущего (примитивного)
+ * представления Vehicle. Размер считается по разнице занятой кучи до и после создания элементов,
+ * имена у всех элементов общие, чтобы учитывалась только раскладка полей.
+ * Запуск: java -cp benchmarks/target/benchmarks.jar src.MemoryReport [количество элементов]
+ */
+public class MemoryReport {
+    /**
+     * Прежняя раскладка полей Vehicle: упакованные Long, отдельные Coordinates и LocalDateTime
+     */
+    private static class LegacyVehicle {
+        private final Long id;
+        private final String name;
+        private final Coordinates coordinates;
+        private final LocalDateTime creationDate;
+        private final Long enginePower;
+        private final int numberOfWheels;
+        private final VehicleType type;
+        private final FuelType fuelType;
+
+        LegacyVehicle(Long id, String name, Coordinates coordinates, LocalDateTime creationDate, Long enginePower,
+                      int numberOfWheels, VehicleType type, FuelType fuelType) {
+            this.id = id;
+            this.name = name;
+            this.coordinates = coordinates;
+            this.creationDate = creationDate;
+            this.enginePower = enginePower;
+            this.numberOfWheels = numberOfWheels;
+            this.type = type;
+            this.fuelType = fuelType;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String name = "vehicle";
+        LocalDateTime base = LocalDateTime.of(2023, 4, 9, 11, 24, 24);
+
+        long before = usedMemory();
+        Object[] legacy = new Object[count];
+        for (int i = 0; i < count; i++) {
+            // Значения вне кеша Long.valueOf, как у реальных id и мощностей
+            legacy[i] = new LegacyVehicle(1000L + i, name, new Coordinates(i % 970, i % 900),
+                    base.plusSeconds(i).withNano(i), 1000L + i, 4, VehicleType.BOAT, FuelType.PLASMA);
+        }
+        long legacyBytes = usedMemory() - before;
+        Reference.reachabilityFence(legacy);
+        report("Vehicle (Long, Coordinates, LocalDateTime)", legacyBytes, count);
+        legacy = null;
+
+        before = usedMemory();
+        Object[] compact = new Object[count];
+        for (int i = 0; i < count; i++) {
+            compact[i] = new Vehicle(1000L + i, name, i % 970, i % 900, base.plusSeconds(i).toEpochSecond(ZoneOffset.UTC), i,
+                    1000L + i, 4, VehicleType.BOAT, FuelType.PLASMA);
+        }
+        long compactBytes = usedMemory() - before;
+        Reference.reachabilityFence(compact);
+        report("Vehicle (примитивные поля)", compactBytes, count);
+        System.out.printf("Экономия: %.1f%%%n", 100.0 * (legacyBytes - compactBytes) / legacyBytes);
+    }
+
+    private static void report(String title, long bytes, int count) {
+        // Из разницы вычитается ссылка в массиве-держателе
+        System.out.printf("%-45s %6.1f байт на элемент%n", title, (double) bytes / count - 4);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
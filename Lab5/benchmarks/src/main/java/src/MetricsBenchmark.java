@@ -0,0 +1,131 @@
+package src;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Накладные расходы метрик команд (CommandMetrics). commands - поток коротких команд чтения в сеансе
+ * на коллекции из size элементов без метрик (metrics = off) и с метриками (слушатель реестра команд, JMX),
+ * вывод отбрасывается; время - на одну команду. Короткие команды - худший случай: стоимость записи метрик
+ * сравнивается с длительностью самой команды. record - отдельно то, что реестр добавляет к команде
+ * при подключённых метриках: два замера времени и выделенной памяти и запись в статистику
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    // Количество COMMANDS: время commands делится на него
+    private static final int COMMAND_COUNT = 8;
+    private static final String[] COMMANDS = {
+            "info",
+            "show --limit 10",
+            "filter_by_number_of_wheels 3 --limit 5",
+            "count_by_engine_power_range 100 5000",
+            "top_by_engine_power 5",
+            "nearest 0 0 5",
+            "count_by_types BOAT or PLASMA",
+            "query power > 500 and wheels = 2 --limit 5",
+    };
+
+    /**
+     * Хранилище и сеансовый ввод для commands
+     */
+    @State(Scope.Thread)
+    public static class Commands {
+        @Param({"1000", "200000"})
+        public int size;
+
+        @Param({"off", "on"})
+        public String metrics;
+
+        private Path directory;
+        private VehicleStore store;
+        private PrintStream nowhere;
+        private String input;
+        private CommandMetrics listener;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            if (COMMANDS.length != COMMAND_COUNT) {
+                throw new IllegalStateException("COMMAND_COUNT не совпадает с количеством команд");
+            }
+            directory = Files.createTempDirectory("lab5-bench");
+            VehicleCollection vehicles = VehicleDataGenerator.collection(size, VehicleDataGenerator.DEFAULT_SEED);
+            store = new VehicleStore(vehicles, VehicleDataGenerator.INIT_DATE,
+                    Journal.open(directory.resolve("data.csv").toString(), 0, vehicles));
+            nowhere = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+            input = String.join("\n", COMMANDS) + "\n";
+            if (metrics.equals("on")) {
+                listener = new CommandMetrics();
+                listener.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+                Main.commands().addListener(listener);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (listener != null) {
+                Main.commands().removeListener(listener);
+            }
+            store.close();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Метрики и команда для record
+     */
+    @State(Scope.Thread)
+    public static class Recorder {
+        private final CommandMetrics metrics = new CommandMetrics();
+        private final Command command = Main.commands().get("info");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMAND_COUNT)
+    public Session commands(Commands state) {
+        Session session = new Session(new StringReader(state.input), state.nowhere, StandardCharsets.UTF_8, state.store, true);
+        Main.serve(session);
+        return session;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public CommandMetrics record(Recorder state) {
+        long allocated = CommandRegistry.allocatedBytes();
+        long start = System.nanoTime();
+        long nanos = System.nanoTime() - start;
+        long allocatedBytes = CommandRegistry.allocatedBytes() - allocated;
+        state.metrics.completed(state.command, nanos, allocatedBytes, 0, false);
+        return state.metrics;
+    }
+}
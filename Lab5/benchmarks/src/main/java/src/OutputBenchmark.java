@@ -0,0 +1,130 @@
+package src;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сравнение вывода show для коллекции из size элементов: прежний println(vehicle) на каждый элемент со строкой,
+ * собранной конкатенацией, как в прежнем Vehicle.toString (printlnConsole - в поток, устроенный как System.out:
+ * буфер 128 байт и сброс после каждой строки; printlnBuffered - в поток с буфером 8 КБ, как у сетевого сеанса)
+ * и OutputSink с форматированием через Vehicle.appendTo и записью блоками (outputSink).
+ * Вывод идёт в target (по умолчанию /dev/null); операция - вся коллекция, результат - количество выведенных байт
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputBenchmark {
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"/dev/null"})
+    public String target;
+
+    private VehicleSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshot = VehicleDataGenerator.collection(size, VehicleDataGenerator.DEFAULT_SEED).snapshot();
+    }
+
+    @Benchmark
+    public long printlnConsole() throws IOException {
+        try (CountingStream stream = new CountingStream(new FileOutputStream(target))) {
+            PrintStream out = new PrintStream(new BufferedOutputStream(stream, 128), true, CHARSET);
+            for (Vehicle vehicle : snapshot) {
+                out.println(concatenated(vehicle));
+            }
+            out.flush();
+            return stream.count;
+        }
+    }
+
+    @Benchmark
+    public long printlnBuffered() throws IOException {
+        try (CountingStream stream = new CountingStream(new FileOutputStream(target))) {
+            PrintStream out = new PrintStream(new BufferedOutputStream(stream, 8192), false, CHARSET);
+            for (Vehicle vehicle : snapshot) {
+                out.println(concatenated(vehicle));
+            }
+            out.flush();
+            return stream.count;
+        }
+    }
+
+    @Benchmark
+    public long outputSink() throws IOException {
+        try (CountingStream stream = new CountingStream(new FileOutputStream(target))) {
+            // Как в сеансе: блоки пишутся в PrintStream консоли, а не в файл напрямую
+            PrintStream out = new PrintStream(new BufferedOutputStream(stream, 128), true, CHARSET);
+            try (OutputSink sink = new OutputSink(out, CHARSET)) {
+                for (Vehicle vehicle : snapshot) {
+                    sink.println(vehicle);
+                }
+            }
+            return stream.count;
+        }
+    }
+
+    /**
+     * Прежняя реализация Vehicle.toString
+     */
+    private static String concatenated(Vehicle vehicle) {
+        return "Vehicle{" +
+                "id=" + vehicle.getId() +
+                ", name='" + vehicle.getName() + '\'' +
+                ", coordinates=" + vehicle.getCoordinates() +
+                ", creationDate=" + vehicle.getCreationDate() +
+                ", enginePower=" + vehicle.getEnginePower() +
+                ", numberOfWheels=" + vehicle.getNumberOfWheels() +
+                ", type=" + vehicle.getType() +
+                ", fuelType=" + vehicle.getFuelType() +
+                '}';
+    }
+
+    /**
+     * Считает записанные байты (позиция /dev/null всегда 0)
+     */
+    private static class CountingStream extends FilterOutputStream {
+        private long count;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package src;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сравнение последовательного (threads = 1) и параллельного (ParallelScan) выполнения больших просмотров
+ * коллекции из size элементов: query с полным проходом (фильтр по имени), query по широкому диапазону мощности
+ * с остаточным фильтром и по типу и топливу (query), count_by_types с not по битовым картам (countByTypes).
+ * Перед замером проверяет, что результаты совпадают с последовательным просмотром. Ускорение зависит
+ * от количества ядер, например -p threads=1,8.
+ * Для 5M элементов форку задан -Xmx3g
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ParallelScanBenchmark {
+    private static final String BITMAP_QUERY = "not BOAT and (PLASMA or KEROSENE)";
+
+    /**
+     * Коллекция и пул потоков просмотра
+     */
+    @State(Scope.Thread)
+    public static class Scan {
+        @Param({"1000000", "5000000"})
+        public int size;
+
+        @Param({"1", "4"})
+        public int threads;
+
+        private VehicleSnapshot snapshot;
+        private ParallelScan scan;
+        private BitmapQuery bitmapQuery;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            snapshot = VehicleDataGenerator.collection(size, VehicleDataGenerator.DEFAULT_SEED).snapshot();
+            scan = ParallelScan.withThreads(threads, 1);
+            bitmapQuery = BitmapQuery.parse(BITMAP_QUERY);
+            if (bitmapQuery.count(snapshot, scan) != bitmapQuery.count(snapshot)) {
+                throw new IllegalStateException("Последовательный и параллельный подсчёт разошлись");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            scan.shutdown();
+        }
+    }
+
+    /**
+     * План запроса для query
+     */
+    @State(Scope.Thread)
+    public static class Query {
+        @Param({
+                "name ^= \"vehicle1\"",
+                "power >= 1000 and power < 900000 and y > 800",
+                "type = CHOPPER and fuelType = PLASMA and x > 0",
+        })
+        public String query;
+
+        private QueryPlan plan;
+
+        @Setup(Level.Trial)
+        public void setUp(Scan state) {
+            plan = QueryPlan.choose(VehicleQuery.parse(query), state.snapshot);
+            if (count(plan.execute(state.snapshot, id -> null, state.scan))
+                    != count(plan.execute(state.snapshot, id -> null, ParallelScan.SEQUENTIAL))) {
+                throw new IllegalStateException("Последовательный и параллельный просмотр нашли разное количество элементов");
+            }
+        }
+    }
+
+    private static long count(Iterator<Vehicle> iterator) {
+        long found = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    public long query(Scan state, Query query) {
+        return count(query.plan.execute(state.snapshot, id -> null, state.scan));
+    }
+
+    @Benchmark
+    public int countByTypes(Scan state) {
+        return state.bitmapQuery.count(state.snapshot, state.scan);
+    }
+}
@@ -0,0 +1,135 @@
+package src;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Скорость выполнения скрипта из commands команд: построчный разбор и выполнение (mode = lines: скрипт подаётся
+ * в сеанс как ввод, add добавляет элементы по одному), execute_script нового файла (mode = execute_script:
+ * чтение и разбор файла) и execute_script файла из кэша CompiledScript (mode = cached). Два скрипта:
+ * только add (script = add) и только команды чтения (script = read: info, count_by_types,
+ * filter_by_number_of_wheels). Операция - весь скрипт; каждый запуск идёт в новое пустое хранилище
+ * с журналом во временном каталоге, вывод отбрасывается
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class ScriptBenchmark {
+    private static final String[] READ_COMMANDS = {
+            "info", "count_by_types BOAT or CHOPPER", "filter_by_number_of_wheels 3 --limit 1"
+    };
+
+    @Param({"10000", "100000"})
+    public int commands;
+
+    @Param({"add", "read"})
+    public String script;
+
+    @Param({"lines", "execute_script", "cached"})
+    public String mode;
+
+    private Path directory;
+    private Path dataFile;
+    private String text;
+    private Path scriptFile;
+    private int iteration;
+    private VehicleStore store;
+    private PrintStream nowhere;
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("lab5-bench");
+        dataFile = directory.resolve("data.csv");
+        StringBuilder builder = new StringBuilder();
+        if (script.equals("add")) {
+            for (Vehicle vehicle : VehicleDataGenerator.vehicles(commands, VehicleDataGenerator.DEFAULT_SEED, true)) {
+                VehicleDataGenerator.appendAdd(builder, vehicle);
+            }
+        } else {
+            for (int i = 0; i < commands; i++) {
+                builder.append(READ_COMMANDS[i % READ_COMMANDS.length]).append('\n');
+            }
+        }
+        text = builder.toString();
+        nowhere = new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8);
+        if (mode.equals("cached")) {
+            scriptFile = directory.resolve("script.txt");
+            Files.writeString(scriptFile, text);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void prepare() throws IOException {
+        if (mode.equals("lines")) {
+            input = text;
+        } else {
+            if (mode.equals("execute_script")) {
+                // Новый путь на каждый запуск: файла нет в кэше CompiledScript
+                if (scriptFile != null) {
+                    Files.delete(scriptFile);
+                }
+                scriptFile = directory.resolve("script-" + iteration++ + ".txt");
+                Files.writeString(scriptFile, text);
+            } else {
+                CompiledScript.load(scriptFile.toString(), Main.commands());
+            }
+            input = "execute_script " + scriptFile + "\n";
+        }
+        VehicleCollection vehicles = new VehicleCollection();
+        store = new VehicleStore(vehicles, LocalDateTime.now(), Journal.open(dataFile.toString(), 0, vehicles));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeStore() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith("data.csv")) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public Session run() {
+        Session session = new Session(new StringReader(input), nowhere, StandardCharsets.UTF_8, store, true);
+        Main.serve(session);
+        return session;
+    }
+}
@@ -0,0 +1,74 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Проверка сервера команд большим числом одновременных сеансов: открывает заданное количество
+ * соединений, дожидается приглашения в каждом, выполняет info во всех сеансах, держит их открытыми
+ * заданное время (чтобы снять потребление памяти сервером) и завершает командой exit.
+ * Запуск: java -cp benchmarks/target/benchmarks.jar src.SessionSoak порт [количество сеансов] [секунд удержания]
+ */
+public class SessionSoak {
+    private static final String PROMPT = "Введите команду:";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Использование: SessionSoak порт [количество сеансов] [секунд удержания]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int holdSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        Socket[] sockets = new Socket[count];
+        BufferedReader[] readers = new BufferedReader[count];
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            sockets[i] = new Socket(InetAddress.getLoopbackAddress(), port);
+            readers[i] = new BufferedReader(new InputStreamReader(sockets[i].getInputStream(), StandardCharsets.UTF_8), 256);
+        }
+        for (BufferedReader reader : readers) {
+            awaitPrompt(reader);
+        }
+        System.out.printf("Открыто сеансов: %d за %.2f с%n", count, (System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        byte[] info = "info\n".getBytes(StandardCharsets.UTF_8);
+        for (Socket socket : sockets) {
+            socket.getOutputStream().write(info);
+        }
+        for (BufferedReader reader : readers) {
+            awaitPrompt(reader);
+        }
+        System.out.printf("Команда info выполнена во всех сеансах за %.2f с%n", (System.nanoTime() - start) / 1e9);
+
+        if (holdSeconds > 0) {
+            System.out.println("Сеансы простаивают " + holdSeconds + " с");
+            Thread.sleep(holdSeconds * 1000L);
+        }
+
+        byte[] exit = "exit\n".getBytes(StandardCharsets.UTF_8);
+        for (Socket socket : sockets) {
+            OutputStream out = socket.getOutputStream();
+            out.write(exit);
+            socket.close();
+        }
+        System.out.println("Сеансы закрыты");
+    }
+
+    private static void awaitPrompt(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.endsWith(PROMPT)) {
+                return;
+            }
+        }
+        throw new IOException("Сервер закрыл соединение");
+    }
+}
@@ -0,0 +1,199 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Нагрузочная проверка версий коллекции: читатели в цикле обходят коллекцию целиком (как show),
+ * писатель в это время заменяет случайные элементы. Сначала проверяется, что каждая версия, которую видит
+ * читатель, согласована (порядок, размер, индекс по количеству колёс), затем та же нагрузка сравнивается
+ * с TreeSet под ReentrantReadWriteLock, где читатели держат блокировку чтения на время обхода.
+ * Запуск: java -cp benchmarks/target/benchmarks.jar src.SnapshotStress [элементов] [секунд на режим] [читателей]
+ */
+public class SnapshotStress {
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+
+    public static void main(String[] args) throws InterruptedException {
+        int elements = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        Vehicle[] initial = VehicleDataGenerator.vehicles(elements, VehicleDataGenerator.DEFAULT_SEED, true);
+
+        System.out.printf("%-28s %12s %12s %14s%n", "mode", "reads/sec", "writes/sec", "write p99, ms");
+        run("snapshot (без блокировок)", new SnapshotTarget(initial), initial, seconds, readers);
+        run("TreeSet + ReadWriteLock", new LockedTarget(initial), initial, seconds, readers);
+    }
+
+    /**
+     * Замена для писателя: новый id после элементов VehicleDataGenerator, те же диапазоны полей
+     */
+    private static Vehicle randomVehicle(Random random, long id) {
+        return new Vehicle(id, "vehicle" + id, random.nextInt(1940) - 970, random.nextInt(1800) - 900,
+                1_680_000_000L + id, random.nextInt(1_000_000_000), 1 + random.nextInt(1_000_000),
+                1 + random.nextInt(8), VEHICLE_TYPES[random.nextInt(VEHICLE_TYPES.length)],
+                FUEL_TYPES[random.nextInt(FUEL_TYPES.length)]);
+    }
+
+    private static void run(String mode, Target target, Vehicle[] initial, int seconds, int readers) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(() -> {
+                long count = 0;
+                while (!stop.get()) {
+                    target.read();
+                    count++;
+                }
+                reads.addAndGet(count);
+            }));
+        }
+        long[][] writeLatencies = {new long[1 << 16]};
+        int[] writes = new int[1];
+        threads.add(new Thread(() -> {
+            Random random = new Random(2);
+            Vehicle[] live = initial.clone();
+            long nextId = initial.length + 1;
+            while (!stop.get()) {
+                int index = random.nextInt(live.length);
+                Vehicle replacement = randomVehicle(random, nextId++);
+                long start = System.nanoTime();
+                target.replace(live[index], replacement);
+                long latency = System.nanoTime() - start;
+                live[index] = replacement;
+                if (writes[0] == writeLatencies[0].length) {
+                    writeLatencies[0] = Arrays.copyOf(writeLatencies[0], writes[0] * 2);
+                }
+                writeLatencies[0][writes[0]++] = latency;
+            }
+        }));
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+                stop.set(true);
+            });
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException(mode + ": " + errors.get(0).getMessage(), errors.get(0));
+        }
+        long[] latencies = Arrays.copyOf(writeLatencies[0], writes[0]);
+        Arrays.sort(latencies);
+        double p99 = latencies.length == 0 ? 0 : latencies[(int) Math.ceil(0.99 * latencies.length) - 1] / 1e6;
+        System.out.printf("%-28s %12.1f %12.1f %14.3f%n", mode, (double) reads.get() / seconds, (double) writes[0] / seconds, p99);
+    }
+
+    private interface Target {
+        /**
+         * Полный обход коллекции
+         */
+        void read();
+
+        /**
+         * Замена элемента old на replacement (удаление и вставка)
+         */
+        void replace(Vehicle old, Vehicle replacement);
+    }
+
+    private static class SnapshotTarget implements Target {
+        private final VehicleCollection vehicles;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        SnapshotTarget(Vehicle[] sorted) {
+            vehicles = VehicleCollection.fromSorted(sorted);
+        }
+
+        @Override
+        public void read() {
+            VehicleSnapshot snapshot = vehicles.snapshot();
+            int count = 0;
+            Vehicle previous = null;
+            for (Vehicle vehicle : snapshot) {
+                if (previous != null && previous.compareTo(vehicle) >= 0) {
+                    throw new IllegalStateException("Нарушен порядок элементов в версии " + snapshot.getVersion());
+                }
+                previous = vehicle;
+                count++;
+            }
+            int grouped = 0;
+            for (int groupSize : snapshot.countsByNumberOfWheels().values()) {
+                grouped += groupSize;
+            }
+            if (count != snapshot.size() || grouped != count) {
+                throw new IllegalStateException("Версия " + snapshot.getVersion() + " несогласована: обход " + count
+                        + ", размер " + snapshot.size() + ", по количеству колёс " + grouped);
+            }
+        }
+
+        @Override
+        public void replace(Vehicle old, Vehicle replacement) {
+            // Как в Main: изменения под блокировкой записи, читатели её не берут
+            lock.writeLock().lock();
+            try {
+                vehicles.removeById(old.getIdValue());
+                vehicles.add(replacement);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static class LockedTarget implements Target {
+        private final TreeSet<Vehicle> vehicles;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        LockedTarget(Vehicle[] sorted) {
+            vehicles = new TreeSet<>(Arrays.asList(sorted));
+        }
+
+        @Override
+        public void read() {
+            lock.readLock().lock();
+            try {
+                // Та же работа, что у читателя версий, для честного сравнения
+                int count = 0;
+                Vehicle previous = null;
+                for (Vehicle vehicle : vehicles) {
+                    if (previous != null && previous.compareTo(vehicle) >= 0) {
+                        throw new IllegalStateException("Нарушен порядок элементов");
+                    }
+                    previous = vehicle;
+                    count++;
+                }
+                if (count != vehicles.size()) {
+                    throw new IllegalStateException("Размер не совпадает с обходом");
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void replace(Vehicle old, Vehicle replacement) {
+            lock.writeLock().lock();
+            try {
+                vehicles.remove(old);
+                vehicles.add(replacement);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Поиск по координатам через индекс версии коллекции (SpatialTreap) и полным проходом потоком
+ * по size элементам: элементы в радиусе RADIUS от точки и K ближайших элементов. Координаты элементов
+ * равномерно распределены по области данных (x от -970 до 970, y от -900 до 900), точки запросов случайные.
+ * 10M элементов требуют около 3 ГБ кучи (-Xmx4g задан для форка)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class SpatialBenchmark {
+    private static final double RADIUS = 25;
+    private static final int K = 10;
+    private static final int POINTS = 1 << 10;
+
+    @Param({"100000", "10000000"})
+    public int size;
+
+    private Vehicle[] vehicles;
+    private VehicleSnapshot snapshot;
+    private int[] xs;
+    private int[] ys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        vehicles = VehicleDataGenerator.vehicles(size, VehicleDataGenerator.DEFAULT_SEED);
+        snapshot = VehicleCollection.fromSorted(vehicles).snapshot();
+        Random random = new Random(VehicleDataGenerator.DEFAULT_SEED);
+        xs = new int[POINTS];
+        ys = new int[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            xs[i] = random.nextInt(1940) - 970;
+            ys[i] = random.nextInt(1800) - 900;
+        }
+        // Индекс и полный проход должны находить одно и то же
+        for (int i = 0; i < 4; i++) {
+            if (snapshot.withinDistance(xs[i], ys[i], RADIUS).size() != scanWithinDistance(xs[i], ys[i])) {
+                throw new IllegalStateException("Индекс и полный проход нашли разное количество элементов");
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Vehicle> withinDistance() {
+        int point = next++ & (POINTS - 1);
+        return snapshot.withinDistance(xs[point], ys[point], RADIUS);
+    }
+
+    @Benchmark
+    public long withinDistanceScan() {
+        int point = next++ & (POINTS - 1);
+        return scanWithinDistance(xs[point], ys[point]);
+    }
+
+    @Benchmark
+    public List<Vehicle> nearest() {
+        int point = next++ & (POINTS - 1);
+        return snapshot.nearest(xs[point], ys[point], K);
+    }
+
+    @Benchmark
+    public PriorityQueue<Vehicle> nearestScan() {
+        int point = next++ & (POINTS - 1);
+        int x = xs[point];
+        int y = ys[point];
+        // Полный проход с ограниченной кучей из K ближайших
+        PriorityQueue<Vehicle> nearest = new PriorityQueue<>(Comparator.comparingDouble(
+                (Vehicle v) -> distanceSquared(v, x, y)).reversed());
+        Arrays.stream(vehicles).forEach(v -> {
+            nearest.add(v);
+            if (nearest.size() > K) {
+                nearest.poll();
+            }
+        });
+        return nearest;
+    }
+
+    private long scanWithinDistance(int x, int y) {
+        return Arrays.stream(vehicles).filter(v -> distanceSquared(v, x, y) <= RADIUS * RADIUS).count();
+    }
+
+    private static double distanceSquared(Vehicle vehicle, int x, int y) {
+        double dx = (double) vehicle.getX() - x;
+        double dy = (double) vehicle.getY() - y;
+        return dx * dx + dy * dy;
+    }
+}
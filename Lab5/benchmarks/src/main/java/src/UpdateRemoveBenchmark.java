@@ -0,0 +1,69 @@
+package src;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Изменения по id в коллекции из size элементов (update и remove_by_id): поиск по индексу id
+ * и замена или удаление в версии коллекции. id выбираются в случайном порядке; удалённый элемент
+ * сразу добавляется обратно, чтобы размер коллекции не менялся. Время операции должно расти
+ * не быстрее log(size).
+ * 10M элементов требуют около 3 ГБ кучи (-Xmx4g задан для форка)
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class UpdateRemoveBenchmark {
+    private static final int IDS = 1 << 16;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private VehicleCollection vehicles;
+    private long[] ids;
+    private int next;
+    private long power;
+
+    @Setup
+    public void setUp() {
+        vehicles = VehicleCollection.fromSorted(VehicleDataGenerator.vehicles(size, VehicleDataGenerator.DEFAULT_SEED));
+        Random random = new Random(VehicleDataGenerator.DEFAULT_SEED);
+        ids = new long[IDS];
+        for (int i = 0; i < IDS; i++) {
+            ids[i] = 1 + random.nextInt(size);
+        }
+    }
+
+    private long nextId() {
+        return ids[next++ & (IDS - 1)];
+    }
+
+    @Benchmark
+    public boolean update() {
+        Vehicle old = vehicles.getById(nextId());
+        power = power % 1_000_000 + 1;
+        return vehicles.update(new Vehicle(old.getIdValue(), old.getName(), old.getX(), old.getY(),
+                old.getCreationEpochSecond(), old.getCreationNano(), power, old.getNumberOfWheels(),
+                old.getType(), old.getFuelType()));
+    }
+
+    @Benchmark
+    public boolean removeByIdAndAdd() {
+        Vehicle removed = vehicles.removeById(nextId());
+        return vehicles.add(removed);
+    }
+}
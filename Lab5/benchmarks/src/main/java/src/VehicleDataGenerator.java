@@ -0,0 +1,136 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Синтетические элементы для бенчмарков и проверок: все поля проходят проверки Vehicle и Coordinates, id уникальны,
+ * секунды даты создания различаются, наносекунды случайны; мощность, типы и топливо иногда не заданы.
+ * Одинаковые size и seed дают одинаковые элементы. Те же элементы можно получить командами add
+ * (appendAdd) и записями ingest (appendRecord).
+ * Запуск: java -cp benchmarks/target/benchmarks.jar src.VehicleDataGenerator размер файл [csv|binary|columns] [seed],
+ * размер - число или с суффиксом k/M (1k ... 10M)
+ */
+public final class VehicleDataGenerator {
+    public static final long DEFAULT_SEED = 1;
+    public static final LocalDateTime INIT_DATE = LocalDateTime.of(2023, 4, 9, 11, 24, 24);
+    private static final long FIRST_CREATION_SECOND = 1_680_000_000L;
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+
+    private VehicleDataGenerator() {
+    }
+
+    /**
+     * @return size элементов с id 1..size в порядке compareTo
+     */
+    public static Vehicle[] vehicles(int size, long seed) {
+        return vehicles(size, seed, false);
+    }
+
+    /**
+     * @param complete true - мощность, тип и топливо заданы у всех элементов (такие элементы можно ввести
+     *                 командой add, которая не принимает пустой тип)
+     * @return size элементов с id 1..size в порядке compareTo
+     */
+    public static Vehicle[] vehicles(int size, long seed, boolean complete) {
+        Random random = new Random(seed);
+        Vehicle[] vehicles = new Vehicle[size];
+        for (int i = 0; i < size; i++) {
+            long id = i + 1;
+            boolean power = complete || random.nextInt(20) != 0;
+            boolean type = complete || random.nextInt(10) != 0;
+            boolean fuelType = complete || random.nextInt(10) != 0;
+            vehicles[i] = new Vehicle(id, "vehicle" + random.nextInt(size), random.nextInt(1940) - 970,
+                    random.nextInt(1800) - 900, FIRST_CREATION_SECOND + id, random.nextInt(1_000_000_000),
+                    power ? 1 + random.nextInt(1_000_000) : Vehicle.NO_ENGINE_POWER, 1 + random.nextInt(8),
+                    type ? TYPES[random.nextInt(TYPES.length)] : null,
+                    fuelType ? FUEL_TYPES[random.nextInt(FUEL_TYPES.length)] : null);
+        }
+        Arrays.sort(vehicles);
+        return vehicles;
+    }
+
+    /**
+     * @return Коллекция из vehicles(size, seed)
+     */
+    public static VehicleCollection collection(int size, long seed) {
+        return VehicleCollection.fromSorted(vehicles(size, seed));
+    }
+
+    /**
+     * Дописывает команду add с полями vehicle по строкам, как их вводит пользователь
+     * @param vehicle Элемент с заданными мощностью, типом и топливом (vehicles(size, seed, true))
+     */
+    public static StringBuilder appendAdd(StringBuilder script, Vehicle vehicle) {
+        return script.append("add\n").append(vehicle.getName()).append('\n').append(vehicle.getX()).append('\n')
+                .append(vehicle.getY()).append('\n').append(vehicle.getEnginePowerValue()).append('\n')
+                .append(vehicle.getNumberOfWheels()).append('\n').append(vehicle.getType()).append('\n')
+                .append(vehicle.getFuelType()).append('\n');
+    }
+
+    /**
+     * Дописывает запись ingest: name,x,y,enginePower,numberOfWheels,type,fuelType (null - значение не задано)
+     */
+    public static StringBuilder appendRecord(StringBuilder records, Vehicle vehicle) {
+        return records.append(vehicle.getName()).append(',').append(vehicle.getX()).append(',').append(vehicle.getY())
+                .append(',').append(vehicle.getEnginePower()).append(',').append(vehicle.getNumberOfWheels())
+                .append(',').append(vehicle.getType()).append(',').append(vehicle.getFuelType()).append('\n');
+    }
+
+    /**
+     * @return Строки Vehicle.toCSV для size элементов
+     */
+    public static String[] csvRows(int size, long seed) {
+        Vehicle[] vehicles = vehicles(size, seed);
+        String[] rows = new String[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = vehicles[i].toCSV();
+        }
+        return rows;
+    }
+
+    /**
+     * Пишет файл данных с size элементами в формате format
+     */
+    public static void write(Path file, int size, long seed, SnapshotFormat format) throws IOException {
+        format.write(file, INIT_DATE, 0, Arrays.asList(vehicles(size, seed)));
+    }
+
+    /**
+     * @param text Число, например 1000, или число с суффиксом k (тысячи) или M (миллионы)
+     */
+    public static int parseSize(String text) {
+        String value = text.trim();
+        int multiplier = 1;
+        if (value.endsWith("k") || value.endsWith("K")) {
+            multiplier = 1_000;
+        } else if (value.endsWith("m") || value.endsWith("M")) {
+            multiplier = 1_000_000;
+        }
+        if (multiplier != 1) {
+            value = value.substring(0, value.length() - 1);
+        }
+        long size = Long.parseLong(value) * multiplier;
+        if (size <= 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("некорректный размер: " + text);
+        }
+        return (int) size;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Использование: VehicleDataGenerator размер файл [csv|binary|columns] [seed]");
+            return;
+        }
+        int size = parseSize(args[0]);
+        SnapshotFormat format = args.length > 2 ? SnapshotFormat.of(args[2]) : SnapshotFormat.CSV;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        long start = System.nanoTime();
+        write(Path.of(args[1]), size, seed, format);
+        System.out.printf("%d элементов записано в %s (%s) за %.1f с%n", size, args[1], format, (System.nanoTime() - start) / 1e9);
+    }
+}
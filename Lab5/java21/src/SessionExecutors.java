@@ -0,0 +1,28 @@
+package src;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Исполнитель сеансов сервера команд для Java 21+: каждый сеанс - в своём виртуальном потоке, так что
+ * тысячи простаивающих сеансов, ждущих ввода, занимают по несколько килобайт.
+ * Попадает в META-INF/versions/21 многоверсионного jar; версия для Java 17 - в ../src
+ */
+final class SessionExecutors {
+    private SessionExecutors() {
+    }
+
+    /**
+     * @return Исполнитель, запускающий каждый сеанс в новом виртуальном потоке
+     */
+    static ExecutorService newExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * @return true, если сеансы выполняются в виртуальных потоках
+     */
+    static boolean isVirtual() {
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Двоичный дамп коллекции. Заголовок: сигнатура VHCL, версия формата, дата инициализации
+ * (секунды эпохи и наносекунды), номер последней записи журнала и количество элементов.
+ * Далее элементы в порядке compareTo в формате VehicleCodec.
+ * Чтение и запись идут через FileChannel с прямым буфером
+ */
+public class BinarySnapshot implements SnapshotReader {
+    static final int MAGIC = 0x5648434c; // "VHCL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8 + 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private LocalDateTime initDate;
+    private long sequence;
+
+    @Override
+    public LocalDateTime getInitDate() {
+        return initDate;
+    }
+
+    /**
+     * @return Номер последней записи журнала, вошедшей в загруженный дамп
+     */
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @param vehicles Элементы в порядке compareTo
+     */
+    public static void write(Path file, LocalDateTime initDate, long sequence, List<Vehicle> vehicles) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(initDate.toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(initDate.getNano());
+            buffer.putLong(sequence);
+            buffer.putLong(vehicles.size());
+            for (Vehicle vehicle : vehicles) {
+                int size = VehicleCodec.maxSize(vehicle);
+                if (buffer.remaining() < size) {
+                    flush(channel, buffer);
+                    if (buffer.capacity() < size) {
+                        buffer = ByteBuffer.allocateDirect(size);
+                    }
+                }
+                VehicleCodec.write(buffer, vehicle);
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @param fileName Имя файла с двоичным дампом
+     * @return Коллекция, загруженная из файла
+     */
+    @Override
+    public VehicleCollection load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(0);
+            buffer = ensure(channel, buffer, HEADER_SIZE);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Файл " + fileName + " не является двоичным дампом");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия двоичного дампа: " + version);
+            }
+            long epochSecond = buffer.getLong();
+            initDate = LocalDateTime.ofEpochSecond(epochSecond, buffer.getInt(), ZoneOffset.UTC);
+            sequence = buffer.getLong();
+            long count = buffer.getLong();
+            if (count < 0 || count > Integer.MAX_VALUE) {
+                throw new IOException("Некорректное количество элементов: " + count);
+            }
+
+            Vehicle[] vehicles = new Vehicle[(int) count];
+            boolean sorted = true;
+            for (int i = 0; i < vehicles.length; i++) {
+                buffer = ensure(channel, buffer, VehicleCodec.FIXED_SIZE);
+                int nameLength = buffer.getInt(buffer.position() + VehicleCodec.FIXED_SIZE - 4);
+                if (nameLength < 0) {
+                    throw new IOException("Повреждён элемент " + (i + 1));
+                }
+                buffer = ensure(channel, buffer, VehicleCodec.FIXED_SIZE + nameLength);
+                try {
+                    vehicles[i] = VehicleCodec.read(buffer);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Повреждён элемент " + (i + 1) + ": " + e.getMessage());
+                }
+                sorted &= i == 0 || vehicles[i - 1].compareTo(vehicles[i]) < 0;
+            }
+            if (sorted && distinctIds(vehicles)) {
+                return VehicleCollection.fromSorted(vehicles);
+            }
+            VehicleCollection collection = new VehicleCollection();
+            for (Vehicle vehicle : vehicles) {
+                if (!collection.add(vehicle)) {
+                    System.out.println("Элемент с id " + vehicle.getId() + " пропущен как дубликат");
+                }
+            }
+            return collection;
+        }
+    }
+
+    private static boolean distinctIds(Vehicle[] vehicles) {
+        LongObjectMap<Vehicle> ids = new LongObjectMap<>(vehicles.length);
+        for (Vehicle vehicle : vehicles) {
+            if (ids.put(vehicle.getId(), vehicle) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Дочитывает файл, пока в буфере не окажется хотя бы required байт
+     * @return Буфер (возможно, увеличенный) в режиме чтения
+     */
+    private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int required) throws IOException {
+        if (buffer.remaining() >= required) {
+            return buffer;
+        }
+        if (buffer.capacity() < required) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(required);
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < required) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Неожиданный конец двоичного дампа");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
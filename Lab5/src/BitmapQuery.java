@@ -0,0 +1,350 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Выражение над битовыми картами значений VehicleType и FuelType: имена констант (BOAT, PLASMA...),
+ * type:null и fuelType:null, операции and, or, not и скобки, например {@code CHOPPER and (PLASMA or not type:null)}.
+ * Выражение компилируется в обратную польскую запись и вычисляется по словам карт (64 слота за операцию)
+ * без обращения к элементам: количество - сумма Long.bitCount слов результата.
+ * not берётся относительно занятых слотов (объединение карт всех значений VehicleType)
+ */
+public final class BitmapQuery {
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+    // Номера карт в VehicleSnapshot: сначала VehicleType (0 - null), затем FuelType (TYPE_BITMAPS - null)
+    static final int TYPE_BITMAPS = VEHICLE_TYPES.length + 1;
+    static final int BITMAPS = TYPE_BITMAPS + FUEL_TYPES.length + 1;
+
+    private static final int AND = -1;
+    private static final int OR = -2;
+    private static final int NOT = -3;
+
+    private final int[] program;
+    private final int depth;
+    private final String text;
+
+    private BitmapQuery(int[] program, String text) {
+        this.program = program;
+        this.text = text;
+        int top = 0;
+        int max = 0;
+        for (int operation : program) {
+            if (operation >= 0) {
+                max = Math.max(max, ++top);
+            } else if (operation != NOT) {
+                top--;
+            }
+        }
+        this.depth = max;
+    }
+
+    static int bitmapIndex(VehicleType type) {
+        return type == null ? 0 : type.ordinal() + 1;
+    }
+
+    static int bitmapIndex(FuelType fuelType) {
+        return TYPE_BITMAPS + (fuelType == null ? 0 : fuelType.ordinal() + 1);
+    }
+
+    /**
+     * @throws IllegalArgumentException Если выражение некорректно
+     */
+    public static BitmapQuery parse(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end))
+                        && text.charAt(end) != '(' && text.charAt(end) != ')') {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("пустое выражение");
+        }
+        Parser parser = new Parser(tokens);
+        parser.or();
+        if (parser.position < tokens.size()) {
+            throw new IllegalArgumentException("лишний токен " + tokens.get(parser.position));
+        }
+        return new BitmapQuery(parser.program.stream().mapToInt(Integer::intValue).toArray(), String.join(" ", tokens));
+    }
+
+    /**
+     * Выражение для условий VehicleQuery: (любое из значений typeMask) and (любое из значений fuelTypeMask)
+     * @param typeMask Допустимые значения VehicleType (бит ordinal + 1, бит 0 - null) или -1 - любые
+     */
+    static BitmapQuery of(long typeMask, long fuelTypeMask) {
+        List<Integer> program = new ArrayList<>();
+        List<String> parts = new ArrayList<>();
+        anyOf(program, parts, typeMask, TYPE_BITMAPS, 0);
+        if (fuelTypeMask != -1) {
+            boolean both = !program.isEmpty();
+            anyOf(program, parts, fuelTypeMask, FUEL_TYPES.length + 1, TYPE_BITMAPS);
+            if (both) {
+                program.add(AND);
+            }
+        }
+        return new BitmapQuery(program.stream().mapToInt(Integer::intValue).toArray(), String.join(" and ", parts));
+    }
+
+    private static void anyOf(List<Integer> program, List<String> parts, long mask, int values, int first) {
+        if (mask == -1) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (int value = 0; value < values; value++) {
+            if ((mask & 1L << value) != 0) {
+                program.add(first + value);
+                if (!names.isEmpty()) {
+                    program.add(OR);
+                }
+                names.add(name(first + value));
+            }
+        }
+        parts.add(names.size() == 1 ? names.get(0) : "(" + String.join(" or ", names) + ")");
+    }
+
+    private static String name(int bitmap) {
+        if (bitmap == 0) {
+            return "type:null";
+        }
+        if (bitmap == TYPE_BITMAPS) {
+            return "fuelType:null";
+        }
+        return bitmap < TYPE_BITMAPS ? VEHICLE_TYPES[bitmap - 1].name() : FUEL_TYPES[bitmap - TYPE_BITMAPS - 1].name();
+    }
+
+    /**
+     * Разбор с приоритетами: not, затем and, затем or
+     */
+    private static final class Parser {
+        private final List<String> tokens;
+        private final List<Integer> program = new ArrayList<>();
+        private int position;
+
+        Parser(List<String> tokens) {
+            this.tokens = tokens;
+        }
+
+        void or() {
+            and();
+            while (accept("or")) {
+                and();
+                program.add(OR);
+            }
+        }
+
+        private void and() {
+            not();
+            while (accept("and")) {
+                not();
+                program.add(AND);
+            }
+        }
+
+        private void not() {
+            if (accept("not")) {
+                not();
+                program.add(NOT);
+            } else if (accept("(")) {
+                or();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("нет закрывающей скобки");
+                }
+            } else {
+                if (position == tokens.size()) {
+                    throw new IllegalArgumentException("выражение оборвано");
+                }
+                program.add(operand(tokens.get(position++)));
+            }
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private static int operand(String token) {
+            if (token.startsWith("type:")) {
+                String value = token.substring("type:".length());
+                return bitmapIndex(value.equals("null") ? null : VehicleType.valueOf(value));
+            }
+            if (token.startsWith("fuelType:")) {
+                String value = token.substring("fuelType:".length());
+                return bitmapIndex(value.equals("null") ? null : FuelType.valueOf(value));
+            }
+            for (VehicleType type : VEHICLE_TYPES) {
+                if (type.name().equals(token)) {
+                    return bitmapIndex(type);
+                }
+            }
+            for (FuelType fuelType : FUEL_TYPES) {
+                if (fuelType.name().equals(token)) {
+                    return bitmapIndex(fuelType);
+                }
+            }
+            throw new IllegalArgumentException("неизвестное значение " + token);
+        }
+    }
+
+    /**
+     * @return Количество элементов snapshot, для которых выражение истинно
+     */
+    public int count(VehicleSnapshot snapshot) {
+        return evaluate(snapshot, 0, leaves(snapshot), null);
+    }
+
+    /**
+     * Листы карт делятся между потоками scan, частичные количества складываются
+     * @return Количество элементов snapshot, для которых выражение истинно
+     */
+    public int count(VehicleSnapshot snapshot, ParallelScan scan) {
+        int count = 0;
+        for (int part : scan.split(snapshot.size(), 0, leaves(snapshot), (from, to) -> evaluate(snapshot, from, to, null))) {
+            count += part;
+        }
+        return count;
+    }
+
+    /**
+     * Передаёт action элементы, для которых выражение истинно, в порядке слотов
+     * @return Их количество
+     */
+    int forEach(VehicleSnapshot snapshot, Consumer<Vehicle> action) {
+        return evaluate(snapshot, 0, leaves(snapshot), action);
+    }
+
+    /**
+     * @return Элементы, для которых выражение истинно и которые прошли filter, в порядке слотов
+     *         (листы карт делятся между потоками scan)
+     */
+    Vehicle[] select(VehicleSnapshot snapshot, ParallelScan scan, Predicate<Vehicle> filter) {
+        return ParallelScan.concat(scan.split(snapshot.size(), 0, leaves(snapshot), (from, to) -> {
+            Selection selection = new Selection(filter);
+            evaluate(snapshot, from, to, selection);
+            return Arrays.copyOf(selection.vehicles, selection.count);
+        }));
+    }
+
+    /**
+     * Элементы одного куска листов, прошедшие фильтр
+     */
+    private static final class Selection implements Consumer<Vehicle> {
+        private final Predicate<Vehicle> filter;
+        private Vehicle[] vehicles = new Vehicle[16];
+        private int count;
+
+        Selection(Predicate<Vehicle> filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public void accept(Vehicle vehicle) {
+            if (!filter.test(vehicle)) {
+                return;
+            }
+            if (count == vehicles.length) {
+                vehicles = Arrays.copyOf(vehicles, count * 2);
+            }
+            vehicles[count++] = vehicle;
+        }
+    }
+
+    /**
+     * @return Количество листов, в которых могут быть занятые слоты
+     */
+    private static int leaves(VehicleSnapshot snapshot) {
+        SlotBitmap[] bitmaps = snapshot.bitmaps();
+        int leaves = 0;
+        for (int i = 0; i < TYPE_BITMAPS; i++) {
+            leaves = Math.max(leaves, bitmaps[i].leafCapacity());
+        }
+        return leaves;
+    }
+
+    /**
+     * Вычисляет выражение на листах [fromLeaf, toLeaf)
+     */
+    private int evaluate(VehicleSnapshot snapshot, int fromLeaf, int toLeaf, Consumer<Vehicle> action) {
+        SlotBitmap[] bitmaps = snapshot.bitmaps();
+        long[][] operands = new long[BITMAPS][];
+        long[] stack = new long[Math.max(1, depth)];
+        int count = 0;
+        for (int leaf = fromLeaf; leaf < toLeaf; leaf++) {
+            boolean occupied = false;
+            for (int i = 0; i < BITMAPS; i++) {
+                operands[i] = bitmaps[i].leaf(leaf);
+                occupied |= i < TYPE_BITMAPS && operands[i] != null;
+            }
+            if (!occupied) {
+                continue;
+            }
+            for (int word = 0; word < SlotBitmap.LEAF_WORDS; word++) {
+                // Каждый элемент есть ровно в одной карте VehicleType, поэтому их объединение - занятые слоты
+                long live = 0;
+                for (int i = 0; i < TYPE_BITMAPS; i++) {
+                    live |= word(operands[i], word);
+                }
+                if (live == 0) {
+                    continue;
+                }
+                int top = 0;
+                for (int operation : program) {
+                    switch (operation) {
+                        case AND:
+                            top--;
+                            stack[top - 1] &= stack[top];
+                            break;
+                        case OR:
+                            top--;
+                            stack[top - 1] |= stack[top];
+                            break;
+                        case NOT:
+                            stack[top - 1] = ~stack[top - 1];
+                            break;
+                        default:
+                            stack[top++] = word(operands[operation], word);
+                    }
+                }
+                long result = (program.length == 0 ? -1 : stack[0]) & live;
+                count += Long.bitCount(result);
+                if (action != null) {
+                    int base = leaf << SlotBitmap.LEAF_SHIFT | word << 6;
+                    while (result != 0) {
+                        action.accept(snapshot.vehicleAt(base | Long.numberOfTrailingZeros(result)));
+                        result &= result - 1;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long word(long[] leaf, int index) {
+        return leaf == null ? 0 : leaf[index];
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,213 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Массовое добавление элементов из компактных записей, по одной в строке:
+ * name,x,y,enginePower,numberOfWheels,type,fuelType. Мощность, тип и топливо можно не задавать
+ * (пустое значение или null). id и дата создания назначаются, как в add.
+ * Записи проверяются по тем же правилам, что и ввод add (Coordinates.checkCoordinates и сеттеры Vehicle),
+ * и добавляются пачками: на пачку - одна блокировка записи и одна публикация новой версии коллекции.
+ * Некорректные строки не прерывают загрузку, а попадают в сводку
+ */
+public class BulkIngest {
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    // Строка, завершающая записи, которые читаются из потока команд
+    public static final String END = "end";
+    private static final int MAX_REPORTED_ERRORS = 10;
+    private static final int FIELDS = 7;
+
+    /**
+     * Итог загрузки
+     */
+    public static final class Result {
+        private long rows;
+        private long added;
+        private long invalid;
+        private long duplicates;
+        private long nanos;
+        private final List<String> errors = new ArrayList<>();
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        /**
+         * @return Количество строк, не прошедших проверку
+         */
+        public long getInvalid() {
+            return invalid;
+        }
+
+        /**
+         * @return Количество корректных строк, не добавленных из-за равного элемента в коллекции
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return Первые сообщения об ошибках с номерами строк
+         */
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        private void error(long line, String message) {
+            invalid++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + line + ": " + message);
+            }
+        }
+    }
+
+    /**
+     * @param records Источник записей; чтение заканчивается в конце потока или на строке END
+     * @param batchSize Количество записей в пачке
+     */
+    public static Result ingest(BufferedReader records, VehicleStore store, int batchSize) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("размер пачки должен быть положительным");
+        }
+        Result result = new Result();
+        long start = System.nanoTime();
+        Vehicle checked = new Vehicle();
+        List<Vehicle> batch = new ArrayList<>(batchSize);
+        String line;
+        while ((line = records.readLine()) != null && !line.trim().equals(END)) {
+            result.rows++;
+            if (line.isBlank()) {
+                result.error(result.rows, "пустая строка");
+                continue;
+            }
+            try {
+                batch.add(parse(line, checked));
+            } catch (IllegalArgumentException e) {
+                result.error(result.rows, e.getMessage());
+            }
+            if (batch.size() == batchSize) {
+                insert(batch, store, result);
+            }
+        }
+        insert(batch, store, result);
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static void insert(List<Vehicle> batch, VehicleStore store, Result result) {
+        int size = batch.size();
+        int added = insert(batch, store);
+        result.added += added;
+        result.duplicates += size - added;
+    }
+
+    /**
+     * Добавляет пачку под одной блокировкой записи и записывает добавленные элементы в журнал.
+     * id элементов, не добавленных из-за равных, возвращаются, как в add. Пачка очищается
+     * @return Количество добавленных элементов
+     */
+    static int insert(List<Vehicle> batch, VehicleStore store) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        List<Vehicle> added;
+        store.getLock().writeLock().lock();
+        try {
+            added = store.getVehicles().addBatch(batch);
+            for (Vehicle vehicle : added) {
+                store.getJournal().add(vehicle);
+            }
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+        if (added.size() < batch.size()) {
+            LongObjectMap<Vehicle> addedIds = new LongObjectMap<>(added.size());
+            for (Vehicle vehicle : added) {
+                addedIds.put(vehicle.getId(), vehicle);
+            }
+            for (Vehicle vehicle : batch) {
+                if (!addedIds.containsKey(vehicle.getId())) {
+                    Vehicle.releaseId(vehicle.getId());
+                }
+            }
+        }
+        batch.clear();
+        return added.size();
+    }
+
+    /**
+     * @param checked Элемент, сеттеры которого проверяют значения полей
+     * @return Новый элемент с назначенными id и датой создания
+     * @throws IllegalArgumentException Если запись некорректна
+     */
+    static Vehicle parse(String line, Vehicle checked) {
+        String[] fields = new String[FIELDS];
+        int count = 0;
+        int from = 0;
+        while (true) {
+            int comma = line.indexOf(',', from);
+            if (count == FIELDS) {
+                throw new IllegalArgumentException("больше " + FIELDS + " полей");
+            }
+            fields[count++] = (comma < 0 ? line.substring(from) : line.substring(from, comma)).trim();
+            if (comma < 0) {
+                break;
+            }
+            from = comma + 1;
+        }
+        if (count != FIELDS) {
+            throw new IllegalArgumentException("ожидается " + FIELDS + " полей: name,x,y,enginePower,numberOfWheels,type,fuelType");
+        }
+        checked.setName(fields[0]);
+        int x = parseInt(fields[1], "x");
+        int y = parseInt(fields[2], "y");
+        if (!Coordinates.checkCoordinates(x, y)) {
+            throw new IllegalArgumentException("Invalid coordinates: (" + x + "," + y + ")");
+        }
+        Long enginePower = isNull(fields[3]) ? null : parseLong(fields[3]);
+        checked.setEnginePower(enginePower);
+        checked.setNumberOfWheels(parseInt(fields[4], "numberOfWheels"));
+        VehicleType type = isNull(fields[5]) ? null : parseEnum(VehicleType.class, fields[5]);
+        FuelType fuelType = isNull(fields[6]) ? null : parseEnum(FuelType.class, fields[6]);
+        return new Vehicle(fields[0], new Coordinates(x, y), enginePower, checked.getNumberOfWheels(), type, fuelType);
+    }
+
+    private static boolean isNull(String value) {
+        return value.isEmpty() || value.equals("null");
+    }
+
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("некорректное значение " + field + ": " + value);
+        }
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("некорректное значение enginePower: " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("неизвестное значение " + type.getSimpleName() + ": " + value);
+        }
+    }
+}
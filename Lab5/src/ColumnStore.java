@@ -0,0 +1,268 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поколоночный дамп коллекции, который не разбирается при загрузке, а отображается в память.
+ * Каждое поле хранится отдельным массивом примитивов (id, x, y, секунды и наносекунды даты создания,
+ * мощность, количество колёс, порядковые номера типа и топлива), имена - словарём без повторов.
+ * Элементы коллекции при загрузке - лёгкие представления MappedVehicle, которые читают поля
+ * из отображённых файлов: значения полей не разбираются и не копируются в кучу.
+ * Строки записаны в порядке compareTo, поэтому коллекция собирается без сортировки, но загрузка всё равно
+ * линейна по времени и памяти: на каждую строку создаётся представление, а индексы коллекции (дерево элементов,
+ * индексы по id, колёсам, координатам и мощности, битовые карты) строятся в куче, как и для других форматов.
+ * Словарь имён тоже читается в кучу. Формат ускоряет перезапуск, но не делает коллекцию больше кучи
+ */
+public class ColumnStore implements SnapshotReader {
+    static final int MAGIC = 0x56434f4c; // "VCOL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8 + 8 + 8 + 8;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte HAS_ENGINE_POWER = 1;
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+
+    private LocalDateTime initDate;
+    private long sequence;
+    private int count;
+    private ByteBuffer ids;
+    private ByteBuffer xs;
+    private ByteBuffer ys;
+    private ByteBuffer epochSeconds;
+    private ByteBuffer nanos;
+    private ByteBuffer enginePowers;
+    private ByteBuffer flags;
+    private ByteBuffer wheels;
+    private ByteBuffer types;
+    private ByteBuffer fuelTypes;
+    private ByteBuffer nameIndexes;
+    private String[] names;
+
+    @Override
+    public LocalDateTime getInitDate() {
+        return initDate;
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Пишет элементы по колонкам
+     * @param vehicles Элементы в порядке compareTo
+     */
+    public static void write(Path file, LocalDateTime initDate, long sequence, List<Vehicle> vehicles) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        int[] nameIndexes = new int[vehicles.size()];
+        long nameBytes = 0;
+        for (int i = 0; i < nameIndexes.length; i++) {
+            String name = vehicles.get(i).getName();
+            Integer index = dictionary.get(name);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(name, index);
+                nameBytes += 4 + name.getBytes(StandardCharsets.UTF_8).length;
+            }
+            nameIndexes[i] = index;
+        }
+        String[] names = new String[dictionary.size()];
+        dictionary.forEach((name, index) -> names[index] = name);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(initDate.toEpochSecond(ZoneOffset.UTC));
+            buffer.putInt(initDate.getNano());
+            buffer.putLong(sequence);
+            buffer.putLong(vehicles.size());
+            buffer.putLong(names.length);
+            buffer.putLong(nameBytes);
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 8).putLong(vehicle.getIdValue());
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 4).putInt(vehicle.getX());
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 4).putInt(vehicle.getY());
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 8).putLong(vehicle.getCreationEpochSecond());
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 4).putInt(vehicle.getCreationNano());
+            }
+            for (Vehicle vehicle : vehicles) {
+                long enginePower = vehicle.getEnginePowerValue();
+                buffer = ensure(channel, buffer, 8).putLong(enginePower == Vehicle.NO_ENGINE_POWER ? 0 : enginePower);
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 1).put(vehicle.getEnginePowerValue() == Vehicle.NO_ENGINE_POWER ? 0 : HAS_ENGINE_POWER);
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 4).putInt(vehicle.getNumberOfWheels());
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 1).put(ordinal(vehicle.getType()));
+            }
+            for (Vehicle vehicle : vehicles) {
+                buffer = ensure(channel, buffer, 1).put(ordinal(vehicle.getFuelType()));
+            }
+            for (int index : nameIndexes) {
+                buffer = ensure(channel, buffer, 4).putInt(index);
+            }
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                buffer = ensure(channel, buffer, 4 + bytes.length);
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+            flush(channel, buffer);
+            channel.force(true);
+        }
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return value == null ? -1 : (byte) value.ordinal();
+    }
+
+    private static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int required) throws IOException {
+        if (buffer.remaining() < required) {
+            flush(channel, buffer);
+            if (buffer.capacity() < required) {
+                return ByteBuffer.allocateDirect(required);
+            }
+        }
+        return buffer;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Отображает колонки файла в память и собирает коллекцию из представлений строк (O(n) времени и кучи
+     * на представления и индексы коллекции)
+     * @param fileName Имя файла с поколоночным дампом
+     */
+    @Override
+    public VehicleCollection load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Файл " + fileName + " не является поколоночным дампом");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия поколоночного дампа: " + version);
+            }
+            long epochSecond = header.getLong();
+            initDate = LocalDateTime.ofEpochSecond(epochSecond, header.getInt(), ZoneOffset.UTC);
+            sequence = header.getLong();
+            long rows = header.getLong();
+            long nameCount = header.getLong();
+            long nameBytes = header.getLong();
+            if (rows < 0 || rows > Integer.MAX_VALUE / 8 || nameCount < 0 || nameCount > rows || nameBytes < 0) {
+                throw new IOException("Повреждён заголовок поколоночного дампа");
+            }
+            count = (int) rows;
+            long position = HEADER_SIZE;
+            ids = map(channel, position, 8L * count);
+            xs = map(channel, position += 8L * count, 4L * count);
+            ys = map(channel, position += 4L * count, 4L * count);
+            epochSeconds = map(channel, position += 4L * count, 8L * count);
+            nanos = map(channel, position += 8L * count, 4L * count);
+            enginePowers = map(channel, position += 4L * count, 8L * count);
+            flags = map(channel, position += 8L * count, count);
+            wheels = map(channel, position += count, 4L * count);
+            types = map(channel, position += 4L * count, count);
+            fuelTypes = map(channel, position += count, count);
+            nameIndexes = map(channel, position += count, 4L * count);
+            position += 4L * count;
+            // Словарь имён обычно намного меньше колонок, поэтому читается в кучу целиком
+            ByteBuffer dictionary = map(channel, position, nameBytes);
+            names = new String[(int) nameCount];
+            for (int i = 0; i < names.length; i++) {
+                byte[] bytes = new byte[dictionary.getInt()];
+                dictionary.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        Vehicle[] views = new Vehicle[count];
+        for (int row = 0; row < count; row++) {
+            views[row] = new MappedVehicle(this, row);
+        }
+        return VehicleCollection.fromSorted(views);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (position + size > channel.size()) {
+            throw new IOException("Поколоночный дамп обрезан");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    long id(int row) {
+        return ids.getLong(row * 8);
+    }
+
+    String name(int row) {
+        return names[nameIndexes.getInt(row * 4)];
+    }
+
+    int x(int row) {
+        return xs.getInt(row * 4);
+    }
+
+    int y(int row) {
+        return ys.getInt(row * 4);
+    }
+
+    long creationEpochSecond(int row) {
+        return epochSeconds.getLong(row * 8);
+    }
+
+    int creationNano(int row) {
+        return nanos.getInt(row * 4);
+    }
+
+    /**
+     * @return Мощность или Vehicle.NO_ENGINE_POWER
+     */
+    long enginePower(int row) {
+        return (flags.get(row) & HAS_ENGINE_POWER) != 0 ? enginePowers.getLong(row * 8) : Vehicle.NO_ENGINE_POWER;
+    }
+
+    int numberOfWheels(int row) {
+        return wheels.getInt(row * 4);
+    }
+
+    VehicleType type(int row) {
+        byte ordinal = types.get(row);
+        return ordinal < 0 ? null : VEHICLE_TYPES[ordinal];
+    }
+
+    FuelType fuelType(int row) {
+        byte ordinal = fuelTypes.get(row);
+        return ordinal < 0 ? null : FUEL_TYPES[ordinal];
+    }
+}
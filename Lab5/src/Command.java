@@ -0,0 +1,154 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * Команда оператора: имя и синтаксис (для справки), вид доступа к коллекции и разбор аргументов.
+ * Разбор проверяет аргументы до выполнения и возвращает действие с уже преобразованными значениями,
+ * поэтому ошибка в аргументах не затрагивает коллекцию, а разобранную строку можно выполнять повторно
+ */
+public final class Command {
+    /**
+     * Обозначение в синтаксисе команды: после строки команды из потока читаются поля элемента
+     */
+    public static final String ELEMENT = "{элемент}";
+
+    /**
+     * Вид доступа команды к коллекции
+     */
+    public enum Access {
+        /**
+         * Только чтение: команда работает с версией коллекции и может выполняться одновременно с другими
+         */
+        READ,
+        /**
+         * Изменение коллекции (или журнала) под блокировкой записи
+         */
+        WRITE
+    }
+
+    /**
+     * Разбор строки команды
+     */
+    @FunctionalInterface
+    public interface Parser {
+        /**
+         * @param line Строка команды
+         * @param tokens Слова строки; tokens[0] - имя команды
+         * @return Действие с разобранными аргументами
+         * @throws IllegalArgumentException Если аргументы некорректны
+         */
+        Action parse(String line, String[] tokens);
+    }
+
+    /**
+     * Выполнение команды с разобранными аргументами
+     */
+    @FunctionalInterface
+    public interface Action {
+        /**
+         * @param stream Поток, из которого читаются данные элемента
+         * @param session Сеанс, в который выводится результат
+         */
+        void execute(BufferedReader stream, Session session) throws IOException;
+    }
+
+    private final String name;
+    private final String usage;
+    private final String description;
+    private final Access access;
+    private final Parser parser;
+
+    /**
+     * @param usage Синтаксис: имя команды и аргументы
+     * @param description Описание для справки; строки продолжения начинаются с перевода строки
+     */
+    public Command(String usage, String description, Access access, Parser parser) {
+        int space = usage.indexOf(' ');
+        this.name = space < 0 ? usage : usage.substring(0, space);
+        this.usage = usage;
+        this.description = description;
+        this.access = access;
+        this.parser = parser;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUsage() {
+        return usage;
+    }
+
+    public Access getAccess() {
+        return access;
+    }
+
+    /**
+     * @return true, если после строки команды читаются поля элемента
+     */
+    public boolean readsElement() {
+        return usage.contains(ELEMENT);
+    }
+
+    /**
+     * @return Строки справки по команде
+     */
+    public String[] help() {
+        return (usage + " - " + description).split("\n");
+    }
+
+    /**
+     * @throws IllegalArgumentException Если аргументы некорректны; к сообщению добавляется синтаксис команды
+     */
+    public Action parse(String line, String[] tokens) {
+        try {
+            return parser.parse(line, tokens);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(e.getMessage() + " (" + usage + ")", e);
+        }
+    }
+
+    /**
+     * @return Текст строки после имени команды
+     */
+    public static String text(String line, String name) {
+        String trimmed = line.trim();
+        return trimmed.substring(Math.min(name.length(), trimmed.length()));
+    }
+
+    public static String argument(String[] tokens, int index, String name) {
+        if (index >= tokens.length) {
+            throw new IllegalArgumentException("не указан аргумент " + name);
+        }
+        return tokens[index];
+    }
+
+    public static long longArgument(String[] tokens, int index, String name) {
+        String value = argument(tokens, index, name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("некорректное значение " + name + ": " + value);
+        }
+    }
+
+    public static int intArgument(String[] tokens, int index, String name) {
+        String value = argument(tokens, index, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("некорректное значение " + name + ": " + value);
+        }
+    }
+
+    public static double doubleArgument(String[] tokens, int index, String name) {
+        String value = argument(tokens, index, name);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("некорректное значение " + name + ": " + value);
+        }
+    }
+}
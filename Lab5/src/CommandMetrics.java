@@ -0,0 +1,275 @@
+package src;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Метрики команд: количество вызовов и ошибок, процентили длительности (LatencyHistogram),
+ * элементы, выведенные или изменённые командой, и память, выделенная потоком сеанса.
+ * Подключается к реестру команд как слушатель; загрузка файла данных записывается отдельно под именем load.
+ * Запись - несколько неблокирующих счётчиков на команду. Метрики доступны командой stats, через JMX
+ * и, если задан файл, периодически записываются в него
+ */
+public final class CommandMetrics implements CommandRegistry.Listener {
+    public static final String LOAD = "load";
+    private static final String DOMAIN = "src";
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+    private static final int DEFAULT_DUMP_SECONDS = 60;
+
+    /**
+     * Статистика одной команды
+     */
+    public static final class Stats implements CommandStatsMXBean {
+        private final String name;
+        private final String access;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder elements = new LongAdder();
+        private final LongAdder allocated = new LongAdder();
+
+        private Stats(String name, String access) {
+            this.name = name;
+            this.access = access;
+        }
+
+        private void record(long duration, long allocatedBytes, long touched, boolean failed) {
+            latency.record(duration);
+            calls.increment();
+            nanos.add(duration);
+            if (failed) {
+                failures.increment();
+            }
+            if (touched != 0) {
+                elements.add(touched);
+            }
+            if (allocatedBytes != 0) {
+                allocated.add(allocatedBytes);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getAccess() {
+            return access;
+        }
+
+        @Override
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        @Override
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            long count = calls.sum();
+            return count == 0 ? 0 : nanos.sum() / 1e3 / count;
+        }
+
+        @Override
+        public long getP50Micros() {
+            return latency.percentiles(50)[0] / 1000;
+        }
+
+        @Override
+        public long getP90Micros() {
+            return latency.percentiles(90)[0] / 1000;
+        }
+
+        @Override
+        public long getP99Micros() {
+            return latency.percentiles(99)[0] / 1000;
+        }
+
+        @Override
+        public long getP999Micros() {
+            return latency.percentiles(99.9)[0] / 1000;
+        }
+
+        @Override
+        public long getMaxMicros() {
+            return latency.percentiles(100)[0] / 1000;
+        }
+
+        @Override
+        public long getElementsTouched() {
+            return elements.sum();
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            return allocated.sum();
+        }
+    }
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private volatile MBeanServer server;
+    private ScheduledExecutorService dumper;
+
+    /**
+     * Метрики по переменным окружения: METRICS=off выключает их (null), METRICS_FILE - файл, в который
+     * отчёт записывается каждые METRICS_INTERVAL секунд (по умолчанию 60). Включённые метрики
+     * регистрируются в JMX
+     * @param commands Реестр, к которому подключаются метрики
+     */
+    public static CommandMetrics fromEnvironment(CommandRegistry commands) {
+        String value = System.getenv("METRICS");
+        if (value != null && value.trim().equals("off")) {
+            return null;
+        }
+        CommandMetrics metrics = new CommandMetrics();
+        commands.addListener(metrics);
+        metrics.registerMBeans(ManagementFactory.getPlatformMBeanServer());
+        String file = System.getenv("METRICS_FILE");
+        if (file != null && !file.isBlank()) {
+            int seconds = DEFAULT_DUMP_SECONDS;
+            value = System.getenv("METRICS_INTERVAL");
+            if (value != null && !value.isBlank()) {
+                try {
+                    seconds = Math.max(1, Integer.parseInt(value.trim()));
+                } catch (NumberFormatException e) {
+                    System.out.println("Некорректное значение METRICS_INTERVAL: " + value);
+                }
+            }
+            metrics.dumpPeriodically(Path.of(file.trim()), seconds);
+        }
+        return metrics;
+    }
+
+    @Override
+    public void completed(Command command, long nanos, long allocatedBytes, long elements, boolean failed) {
+        record(command.getName(), command.getAccess().name(), nanos, allocatedBytes, elements, failed);
+    }
+
+    /**
+     * Записывает выполнение операции, которая не проходит через реестр команд (например, загрузку)
+     */
+    public void record(String name, String access, long nanos, long allocatedBytes, long elements, boolean failed) {
+        Stats entry = stats.get(name);
+        if (entry == null) {
+            entry = stats.computeIfAbsent(name, key -> register(new Stats(key, access)));
+        }
+        entry.record(nanos, allocatedBytes, elements, failed);
+    }
+
+    /**
+     * @return Статистика команды или null, если команда не выполнялась
+     */
+    public Stats get(String name) {
+        return stats.get(name);
+    }
+
+    /**
+     * Регистрирует статистику уже выполненных и всех следующих команд в server
+     */
+    public void registerMBeans(MBeanServer server) {
+        this.server = server;
+        for (Stats entry : stats.values()) {
+            register(entry);
+        }
+    }
+
+    private Stats register(Stats entry) {
+        MBeanServer target = server;
+        if (target != null) {
+            try {
+                ObjectName name = new ObjectName(DOMAIN + ":type=CommandStats,name=" + ObjectName.quote(entry.name));
+                if (!target.isRegistered(name)) {
+                    target.registerMBean(entry, name);
+                }
+            } catch (JMException e) {
+                System.out.println("Не удалось зарегистрировать метрики " + entry.name + " в JMX: " + e.getMessage());
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * @param name Имя команды или null - все выполнявшиеся команды
+     * @return Таблица метрик, команды по имени
+     */
+    public List<String> report(String name) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-40s %7s %9s %7s %10s %10s %10s %10s %10s %10s %12s %12s",
+                "command", "access", "calls", "failed", "mean(us)", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)",
+                "max(us)", "elements", "alloc(KB)"));
+        for (Stats entry : new TreeMap<>(stats).values()) {
+            if (name != null && !entry.name.equals(name)) {
+                continue;
+            }
+            long[] values = entry.latency.percentiles(PERCENTILES);
+            lines.add(String.format("%-40s %7s %9d %7d %10.1f %10d %10d %10d %10d %10d %12d %12d",
+                    entry.name, entry.access, entry.getCalls(), entry.getFailures(), entry.getMeanMicros(),
+                    values[0] / 1000, values[1] / 1000, values[2] / 1000, values[3] / 1000, values[4] / 1000,
+                    entry.getElementsTouched(), entry.getAllocatedBytes() / 1024));
+        }
+        return lines;
+    }
+
+    /**
+     * Каждые seconds секунд переписывает file отчётом (через временный файл, чтобы читатель не видел половину)
+     */
+    public synchronized void dumpPeriodically(Path file, int seconds) {
+        if (dumper != null) {
+            dumper.shutdownNow();
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Записывает отчёт в file
+     */
+    public void dump(Path file) {
+        List<String> lines = new ArrayList<>();
+        lines.add("# " + LocalDateTime.now());
+        lines.addAll(report(null));
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Не удалось записать метрики в " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Останавливает периодическую запись
+     */
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Команды по именам и их выполнение. Строка команды разбивается CommandTokenizer и разбирается
+ * командой в вызов, который можно выполнять повторно. Выполнение сообщает слушателям длительность,
+ * выделенную потоком память и количество затронутых элементов (Session.touch), что позволяет подключать измерения к любой команде, не меняя её код. Порядок регистрации - порядок справки
+ */
+public final class CommandRegistry {
+    /**
+     * Слушатель выполнения команд. Вызывается в потоке сеанса после каждой команды, поэтому должен быть быстрым
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param command Выполненная команда
+         * @param nanos Длительность выполнения (для ошибки в аргументах - длительность разбора)
+         * @param allocatedBytes Память, выделенная потоком во время выполнения (0, если JVM её не считает)
+         * @param elements Элементы, выведенные или изменённые командой
+         * @param failed true, если команда завершилась исключением
+         */
+        void completed(Command command, long nanos, long allocatedBytes, long elements, boolean failed);
+    }
+
+    /**
+     * Разобранная строка команды: команда и действие с аргументами
+     */
+    public static final class Invocation {
+        private final Command command;
+        private final Command.Action action;
+
+        private Invocation(Command command, Command.Action action) {
+            this.command = command;
+            this.action = action;
+        }
+
+        public Command getCommand() {
+            return command;
+        }
+    }
+
+    // Счётчик памяти, выделенной потоком, есть в HotSpot; на других JVM память не измеряется
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final Map<String, Command> commands = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @throws IllegalArgumentException Если команда с таким именем уже есть
+     */
+    public void register(Command command) {
+        if (commands.putIfAbsent(command.getName(), command) != null) {
+            throw new IllegalArgumentException("команда " + command.getName() + " уже зарегистрирована");
+        }
+    }
+
+    /**
+     * @return Команда с именем name или null
+     */
+    public Command get(String name) {
+        return commands.get(name);
+    }
+
+    public Collection<Command> commands() {
+        return Collections.unmodifiableCollection(commands.values());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param tokens Слова строки (CommandTokenizer.tokenize)
+     * @return Вызов или null, если строка пустая или команда неизвестна
+     * @throws IllegalArgumentException Если аргументы некорректны
+     */
+    public Invocation parse(String line, String[] tokens) {
+        Command command = tokens.length == 0 ? null : commands.get(tokens[0]);
+        if (command == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            return new Invocation(command, command.parse(line, tokens));
+        } catch (RuntimeException e) {
+            completed(command, System.nanoTime() - start, 0, 0, true);
+            throw e;
+        }
+    }
+
+    /**
+     * Выполняет разобранный вызов и сообщает слушателям его длительность
+     */
+    public void execute(Invocation invocation, BufferedReader stream, Session session) throws IOException {
+        execute(invocation.command, invocation.action, stream, session);
+    }
+
+    /**
+     * Выполняет действие, которое заменяет несколько вызовов command (пачка add из скрипта), и сообщает
+     * слушателям о нём как об одном выполнении command с элементами, затронутыми всей пачкой
+     */
+    public void execute(Command command, Command.Action action, BufferedReader stream, Session session) throws IOException {
+        if (listeners.isEmpty()) {
+            action.execute(stream, session);
+            return;
+        }
+        long elements = session.getTouched();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            action.execute(stream, session);
+            failed = false;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            completed(command, nanos, allocated < 0 || allocatedAfter < 0 ? 0 : allocatedAfter - allocated,
+                    session.getTouched() - elements, failed);
+        }
+    }
+
+    /**
+     * Разбирает и выполняет строку команды
+     * @return false, если строка пустая или команда неизвестна
+     */
+    public boolean execute(String line, BufferedReader stream, Session session) throws IOException {
+        Invocation invocation = parse(line, CommandTokenizer.tokenize(line));
+        if (invocation == null) {
+            return false;
+        }
+        execute(invocation, stream, session);
+        return true;
+    }
+
+    private void completed(Command command, long nanos, long allocatedBytes, long elements, boolean failed) {
+        for (Listener listener : listeners) {
+            listener.completed(command, nanos, allocatedBytes, elements, failed);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // Нет com.sun.management
+        }
+        return null;
+    }
+
+    /**
+     * @return Память, выделенная текущим потоком с его запуска, или -1, если она не измеряется
+     */
+    static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+}
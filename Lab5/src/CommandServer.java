@@ -0,0 +1,87 @@
+package src;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * TCP-сервер команд на локальном интерфейсе. Каждый клиент получает свой сеанс с тем же
+ * набором команд, что и консоль; ответ на команду заканчивается строкой приглашения "Введите команду:".
+ * Команды чтения разных клиентов идут параллельно по неизменяемым версиям коллекции,
+ * а изменения коллекции выполняются по одному под блокировкой записи хранилища.
+ * Каждый сеанс выполняется в своём потоке из SessionExecutors: в многоверсионном jar на Java 21+ - в виртуальном,
+ * иначе - в платформенном с уменьшенным стеком
+ */
+public class CommandServer implements Closeable {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 13;
+
+    private final ServerSocket serverSocket;
+    private final VehicleStore store;
+    private final ExecutorService sessions;
+    private final Thread acceptor;
+
+    /**
+     * @param port Порт на локальном интерфейсе (0 - любой свободный)
+     * @param store Хранилище, с которым работают сеансы клиентов
+     */
+    public CommandServer(int port, VehicleStore store) throws IOException {
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        this.store = store;
+        sessions = SessionExecutors.newExecutor();
+        acceptor = new Thread(this::acceptLoop, "command-server");
+        acceptor.setDaemon(true);
+    }
+
+    /**
+     * @return true, если сеансы выполняются в виртуальных потоках
+     */
+    public boolean isVirtual() {
+        return SessionExecutors.isVirtual();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        acceptor.start();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessions.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.out.println("Произошла ошибка: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_SIZE),
+                    false, StandardCharsets.UTF_8);
+            Session session = new Session(socket.getInputStream(), out, StandardCharsets.UTF_8, store, true);
+            Main.serve(session);
+            out.flush();
+        } catch (IOException e) {
+            // клиент отключился
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+    }
+}
@@ -0,0 +1,39 @@
+package src;
+
+/**
+ * Статистика одной команды в JMX: объект src:type=CommandStats,name=имя команды
+ */
+public interface CommandStatsMXBean {
+    String getName();
+
+    /**
+     * @return READ, WRITE или STARTUP (загрузка файла данных)
+     */
+    String getAccess();
+
+    long getCalls();
+
+    long getFailures();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP90Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    /**
+     * @return Элементы, выведенные или изменённые командой, за все вызовы
+     */
+    long getElementsTouched();
+
+    /**
+     * @return Байты, выделенные потоком сеанса за все вызовы
+     */
+    long getAllocatedBytes();
+}
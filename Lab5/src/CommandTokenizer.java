@@ -0,0 +1,45 @@
+package src;
+
+import java.util.Arrays;
+
+/**
+ * Разбиение строки команды на слова без регулярных выражений: слова разделяются пробельными символами
+ * (как \s: пробел, табуляции, переводы строки и страницы), пустых слов не бывает. Для строки из одних
+ * пробелов результат пустой
+ */
+public final class CommandTokenizer {
+    private static final String[] NO_TOKENS = new String[0];
+    // Большинство команд - имя и несколько аргументов
+    private static final int INITIAL_TOKENS = 4;
+
+    private CommandTokenizer() {
+    }
+
+    public static String[] tokenize(String line) {
+        String[] tokens = NO_TOKENS;
+        int count = 0;
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            while (i < length && isSpace(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && !isSpace(line.charAt(i))) {
+                i++;
+            }
+            if (count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(INITIAL_TOKENS, count * 2));
+            }
+            tokens[count++] = line.substring(start, i);
+        }
+        return count == tokens.length ? tokens : Arrays.copyOf(tokens, count);
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
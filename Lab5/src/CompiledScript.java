@@ -0,0 +1,199 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Скрипт для execute_script, прочитанный один раз: строки файла и разобранные команды (строка разбирается
+ * реестром команд при первом выполнении и запоминается). Скрипты кэшируются по пути; запись действительна, пока у файла
+ * те же время изменения и размер, поэтому повторный запуск не читает и не разбирает файл.
+ * При загрузке проверяются вложенные вызовы execute_script: скрипт, который прямо или через другие
+ * скрипты вызывает сам себя, отклоняется до выполнения первой команды
+ */
+public final class CompiledScript {
+    private static final int CACHE_SIZE = 16;
+
+    private static final Map<Path, CompiledScript> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Path, CompiledScript> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    private final Path path;
+    private final FileTime modified;
+    private final long size;
+    private final CommandRegistry commands;
+    private final String[] lines;
+    private final CommandRegistry.Invocation[] invocations;
+    // Файлы, которые скрипт вызывает через execute_script
+    private final List<String> includes;
+
+    private CompiledScript(Path path, FileTime modified, long size, CommandRegistry commands, String[] lines) {
+        this.path = path;
+        this.modified = modified;
+        this.size = size;
+        this.commands = commands;
+        this.lines = lines;
+        this.invocations = new CommandRegistry.Invocation[lines.length];
+        this.includes = new ArrayList<>();
+        int i = 0;
+        while (i < lines.length) {
+            String[] tokens = CommandTokenizer.tokenize(lines[i++]);
+            Command command = tokens.length == 0 ? null : commands.get(tokens[0]);
+            if (command == null) {
+                continue;
+            }
+            if (command.readsElement()) {
+                // Поля элемента пропускаются тем же чтением, что и при выполнении: после некорректного значения
+                // поле вводится заново со следующей строки, поэтому число строк элемента заранее не известно
+                LineScan scan = new LineScan(i);
+                try {
+                    Vehicle.skipUser(scan);
+                } catch (RuntimeException e) {
+                    // На этом элементе выполнение остановится с ошибкой: следующие строки не выполняются
+                    break;
+                }
+                i = scan.position;
+            } else if (tokens[0].equals("ingest") && tokens.length > 1 && tokens[1].equals("-")) {
+                while (i < lines.length && !lines[i++].trim().equals(BulkIngest.END)) {
+                    // Записи ingest - данные, а не команды
+                }
+            } else if (tokens[0].equals("execute_script") && tokens.length > 1) {
+                includes.add(tokens[1]);
+            }
+        }
+    }
+
+    /**
+     * @param commands Реестр, по которому разбираются команды скрипта
+     * @return Скрипт из кэша или прочитанный заново, если файл изменился или его нет в кэше
+     * @throws IllegalArgumentException Если скрипт прямо или через вложенные скрипты вызывает сам себя
+     */
+    public static CompiledScript load(String fileName, CommandRegistry commands) throws IOException {
+        return load(Path.of(fileName), commands, new ArrayDeque<>());
+    }
+
+    private static CompiledScript load(Path file, CommandRegistry commands, Deque<Path> calling) throws IOException {
+        Path path = file.toRealPath();
+        if (calling.contains(path)) {
+            StringBuilder chain = new StringBuilder();
+            for (var iterator = calling.descendingIterator(); iterator.hasNext(); ) {
+                chain.append(iterator.next().getFileName()).append(" -> ");
+            }
+            throw new IllegalArgumentException("рекурсивный вызов скрипта: " + chain + path.getFileName());
+        }
+        FileTime modified = Files.getLastModifiedTime(path);
+        long size = Files.size(path);
+        CompiledScript script = CACHE.get(path);
+        if (script == null || !script.modified.equals(modified) || script.size != size || script.commands != commands) {
+            List<String> lines = Files.readAllLines(path, Charset.defaultCharset());
+            script = new CompiledScript(path, modified, size, commands, lines.toArray(new String[0]));
+            CACHE.put(path, script);
+        }
+        calling.push(path);
+        for (String include : script.includes) {
+            load(Path.of(include), commands, calling);
+        }
+        calling.pop();
+        return script;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return Количество строк скрипта
+     */
+    public int size() {
+        return lines.length;
+    }
+
+    /**
+     * @return Разобранная команда в строке с номером line или null, если строка пустая или команда неизвестна
+     * @throws IllegalArgumentException Если аргументы некорректны (такая строка не запоминается)
+     */
+    private CommandRegistry.Invocation invocation(int line) {
+        CommandRegistry.Invocation result = invocations[line];
+        if (result == null) {
+            // Разные сеансы могут разобрать строку одновременно: вызовы равнозначны
+            result = commands.parse(lines[line], CommandTokenizer.tokenize(lines[line]));
+            invocations[line] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Чтение строк при разборе скрипта; в конце файла - null, на котором чтение полей элемента
+     * завершается с ошибкой
+     */
+    private final class LineScan extends BufferedReader {
+        private int position;
+
+        private LineScan(int position) {
+            super(Reader.nullReader(), 1);
+            this.position = position;
+        }
+
+        @Override
+        public String readLine() {
+            return position == lines.length ? null : lines[position++];
+        }
+    }
+
+    /**
+     * @return Новый проход по строкам скрипта
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Чтение строк скрипта по порядку: команды и данные элементов читаются из одного прохода,
+     * как из файла. Не потокобезопасен
+     */
+    public final class Cursor extends BufferedReader {
+        private int position;
+
+        private Cursor() {
+            super(Reader.nullReader(), 1);
+        }
+
+        @Override
+        public String readLine() {
+            return position < lines.length ? lines[position++] : null;
+        }
+
+        /**
+         * @return Номер последней прочитанной строки, начиная с 1
+         */
+        public int getLineNumber() {
+            return position;
+        }
+
+        /**
+         * @return Команда в последней прочитанной строке (см. CommandRegistry.parse)
+         */
+        public CommandRegistry.Invocation invocation() {
+            return CompiledScript.this.invocation(position - 1);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
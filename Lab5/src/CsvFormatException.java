@@ -0,0 +1,28 @@
+package src;
+
+/**
+ * Ошибка в строке CSV-дампа с указанием номера строки
+ */
+public class CsvFormatException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final long line;
+    private final String reason;
+
+    public CsvFormatException(long line, String reason) {
+        super("Строка " + line + ": " + reason);
+        this.line = line;
+        this.reason = reason;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * @return Описание ошибки без номера строки
+     */
+    public String getReason() {
+        return reason;
+    }
+}
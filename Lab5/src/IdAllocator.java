@@ -0,0 +1,27 @@
+package src;
+
+/**
+ * Источник уникальных положительных id для новых элементов коллекции
+ */
+public interface IdAllocator {
+    /**
+     * @return Новый id, не выданный ранее и не занятый загруженными элементами
+     */
+    long next();
+
+    /**
+     * Отмечает id как занятый (элемент с явно заданным id, например при загрузке журнала)
+     */
+    void reserve(long id);
+
+    /**
+     * Возвращает id удалённого элемента для повторного использования
+     */
+    void release(long id);
+
+    /**
+     * Сбрасывает состояние и отмечает занятыми переданные id
+     * @param ids id всех элементов коллекции
+     */
+    void seed(long[] ids);
+}
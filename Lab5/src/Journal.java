@@ -0,0 +1,368 @@
+package src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений коллекции, дописываемый в конец файла &lt;файл данных&gt;.journal.
+ * Команды копят записи в памяти, save дописывает их одним блоком, поэтому стоимость
+ * сохранения зависит от размера изменений, а не коллекции. Когда журнал вырастает больше порога,
+ * в фоне пишется новый дамп коллекции (в формате из переменной окружения SNAPSHOT_FORMAT, по умолчанию CSV;
+ * columns ускоряет перезапуск, но память под коллекцию и индексы та же, см. ColumnStore)
+ * и старые части журнала удаляются.
+ * Запись: длина тела (int), CRC32 тела (int), тело: операция (byte), номер записи (long), данные
+ */
+public class Journal implements Closeable {
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+    private static final byte CLEAR = 4;
+    private static final byte REMOVE_LOWER = 5;
+    private static final int FRAME_HEADER = 8;
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 16L << 20;
+
+    private final Path dataFile;
+    private final Path journalFile;
+    private final long compactionThreshold;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private long sequence;
+    private Future<?> compaction;
+    private SnapshotFormat format;
+
+    private Journal(Path dataFile, long sequence, long compactionThreshold, SnapshotFormat format) throws IOException {
+        this.dataFile = dataFile;
+        this.journalFile = journalPath(dataFile);
+        this.sequence = sequence;
+        this.compactionThreshold = compactionThreshold;
+        this.format = format;
+        this.channel = openChannel();
+    }
+
+    /**
+     * Применяет к загруженному дампу записи журнала, которых в нём ещё нет, и открывает журнал для дописывания.
+     * Недописанная при сбое последняя запись отбрасывается
+     * @param fileName Имя файла данных
+     * @param snapshotSequence Номер последней записи, вошедшей в дамп
+     * @param vehicles Коллекция, загруженная из дампа
+     */
+    public static Journal open(String fileName, long snapshotSequence, VehicleCollection vehicles) throws IOException {
+        Path dataFile = Path.of(fileName).toAbsolutePath();
+        long sequence = snapshotSequence;
+        for (Path rotated : rotatedJournals(dataFile).values()) {
+            sequence = Math.max(sequence, replay(rotated, snapshotSequence, vehicles, false));
+        }
+        Path journalFile = journalPath(dataFile);
+        if (Files.exists(journalFile)) {
+            sequence = Math.max(sequence, replay(journalFile, snapshotSequence, vehicles, true));
+        }
+        return new Journal(dataFile, sequence, compactionThreshold(), snapshotFormat());
+    }
+
+    private static Path journalPath(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".journal");
+    }
+
+    /**
+     * @return Части журнала, отложенные на время фонового сжатия, по номеру последней записи
+     */
+    private static TreeMap<Long, Path> rotatedJournals(Path dataFile) throws IOException {
+        TreeMap<Long, Path> rotated = new TreeMap<>();
+        String prefix = dataFile.getFileName() + ".journal.";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dataFile.toAbsolutePath().getParent(), prefix + "*")) {
+            for (Path file : files) {
+                try {
+                    rotated.put(Long.parseLong(file.getFileName().toString().substring(prefix.length())), file);
+                } catch (NumberFormatException e) {
+                    // посторонний файл с похожим именем
+                }
+            }
+        }
+        return rotated;
+    }
+
+    private static long compactionThreshold() {
+        String value = System.getenv("JOURNAL_LIMIT");
+        if (value != null && !value.isBlank()) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                System.out.println("Некорректное значение JOURNAL_LIMIT: " + value);
+            }
+        }
+        return DEFAULT_COMPACTION_THRESHOLD;
+    }
+
+    private static SnapshotFormat snapshotFormat() {
+        String value = System.getenv("SNAPSHOT_FORMAT");
+        if (value != null && !value.isBlank()) {
+            try {
+                return SnapshotFormat.of(value);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Некорректное значение SNAPSHOT_FORMAT: " + value);
+            }
+        }
+        return SnapshotFormat.CSV;
+    }
+
+    /**
+     * @return Номер последней записи в файле
+     */
+    private static long replay(Path file, long snapshotSequence, VehicleCollection vehicles, boolean truncate) throws IOException {
+        long last = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CRC32 crc = new CRC32();
+            int valid = 0;
+            while (buffer.remaining() >= FRAME_HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer body = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                byte operation = body.get();
+                long sequence = body.getLong();
+                if (sequence > snapshotSequence) {
+                    apply(operation, body, vehicles);
+                }
+                last = sequence;
+                valid = buffer.position();
+            }
+            if (valid < channel.size()) {
+                System.out.println("Журнал " + file.getFileName() + ": отброшен повреждённый хвост с позиции " + valid);
+                if (truncate) {
+                    channel.truncate(valid);
+                }
+            }
+        }
+        return last;
+    }
+
+    private static void apply(byte operation, ByteBuffer body, VehicleCollection vehicles) {
+        switch (operation) {
+            case ADD:
+            case UPDATE: {
+                Vehicle vehicle = VehicleCodec.read(body);
+                vehicles.removeById(vehicle.getId());
+                vehicles.add(vehicle);
+                break;
+            }
+            case REMOVE:
+                vehicles.removeById(body.getLong());
+                break;
+            case CLEAR:
+                vehicles.clear();
+                break;
+            case REMOVE_LOWER:
+                vehicles.removeLower(VehicleCodec.read(body));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal operation: " + operation);
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    public void add(Vehicle vehicle) {
+        append(ADD, vehicle);
+    }
+
+    public void update(Vehicle vehicle) {
+        append(UPDATE, vehicle);
+    }
+
+    public void removeLower(Vehicle vehicle) {
+        append(REMOVE_LOWER, vehicle);
+    }
+
+    public void remove(long id) {
+        int start = begin(REMOVE, 8);
+        pending.putLong(id);
+        end(start);
+    }
+
+    public void clear() {
+        end(begin(CLEAR, 0));
+    }
+
+    private void append(byte operation, Vehicle vehicle) {
+        int start = begin(operation, VehicleCodec.maxSize(vehicle));
+        VehicleCodec.write(pending, vehicle);
+        end(start);
+    }
+
+    /**
+     * Резервирует место под заголовок записи и пишет операцию и номер
+     * @return Позиция начала записи
+     */
+    private int begin(byte operation, int payload) {
+        int required = FRAME_HEADER + 1 + 8 + payload;
+        if (pending.remaining() < required) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + required));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        int start = pending.position();
+        pending.position(start + FRAME_HEADER);
+        pending.put(operation);
+        pending.putLong(++sequence);
+        return start;
+    }
+
+    private void end(int start) {
+        int length = pending.position() - start - FRAME_HEADER;
+        crc.reset();
+        crc.update(pending.array(), start + FRAME_HEADER, length);
+        pending.putInt(start, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+    }
+
+    /**
+     * Дописывает накопленные записи в файл журнала и сбрасывает их на диск.
+     * Если журнал превысил порог, запускает фоновое сжатие.
+     * При ошибке записи файл обрезается до прежней длины, а записи остаются в памяти до следующего сохранения
+     * @param vehicles Текущее состояние коллекции
+     * @param initDate Дата инициализации коллекции
+     */
+    public void commit(VehicleCollection vehicles, LocalDateTime initDate) throws IOException {
+        ByteBuffer block = pending.duplicate().flip();
+        long size = channel.size();
+        try {
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // Недописанный блок посреди файла остановил бы восстановление на себе вместе со следующими записями
+            try {
+                channel.truncate(size);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        pending.clear();
+        if (channel.size() > compactionThreshold && (compaction == null || compaction.isDone())) {
+            compact(vehicles, initDate, true);
+        }
+    }
+
+    /**
+     * Сохраняет изменения и сразу переписывает файл данных в заданном формате.
+     * Этот формат используется и для последующих фоновых сжатий.
+     * Ошибка записи дампа передаётся вызывающему (IOException), изменения при этом остаются в журнале
+     */
+    public void commit(VehicleCollection vehicles, LocalDateTime initDate, SnapshotFormat format) throws IOException {
+        this.format = format;
+        commit(vehicles, initDate);
+        if (compaction != null) {
+            await(compaction);
+        }
+        await(compact(vehicles, initDate, false));
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Сохранение прервано");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Откладывает текущий журнал и в фоне пишет дамп коллекции на момент последней записи
+     * @param background true - сжатие по порогу, которого никто не ждёт: ошибка только выводится;
+     *                   false - ошибка завершает возвращаемый Future и передаётся через await
+     */
+    private Future<?> compact(VehicleCollection vehicles, LocalDateTime initDate, boolean background) throws IOException {
+        List<Vehicle> snapshot = new ArrayList<>(vehicles.size());
+        for (Vehicle vehicle : vehicles) {
+            snapshot.add(vehicle);
+        }
+        long snapshotSequence = sequence;
+        // Пустой журнал не откладываем, чтобы не затереть часть с тем же номером от неудачного сжатия
+        if (channel.size() > 0) {
+            channel.close();
+            Files.move(journalFile, journalFile.resolveSibling(journalFile.getFileName() + "." + snapshotSequence),
+                    StandardCopyOption.ATOMIC_MOVE);
+            channel = openChannel();
+        }
+        SnapshotFormat snapshotFormat = format;
+        compaction = compactor.submit(() -> {
+            try {
+                writeSnapshot(snapshotFormat, snapshot, initDate, snapshotSequence);
+                for (var rotated : rotatedJournals(dataFile).entrySet()) {
+                    if (rotated.getKey() <= snapshotSequence) {
+                        Files.deleteIfExists(rotated.getValue());
+                    }
+                }
+            } catch (IOException e) {
+                if (!background) {
+                    throw e;
+                }
+                System.out.println("Произошла ошибка при сжатии журнала: " + e.getMessage());
+            }
+            return null;
+        });
+        return compaction;
+    }
+
+    /**
+     * Пишет дамп во временный файл и атомарно подменяет им файл данных
+     */
+    private void writeSnapshot(SnapshotFormat format, List<Vehicle> snapshot, LocalDateTime initDate, long snapshotSequence) throws IOException {
+        Path tmp = dataFile.resolveSibling(dataFile.getFileName() + ".tmp");
+        format.write(tmp, initDate, snapshotSequence, snapshot);
+        Files.move(tmp, dataFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Дожидается окончания фонового сжатия и закрывает журнал. Несохранённые записи отбрасываются
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+}
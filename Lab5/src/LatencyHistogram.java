@@ -0,0 +1,80 @@
+package src;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма длительностей с логарифмически-линейными корзинами, как в HdrHistogram: значения до 128
+ * хранятся точно, дальше каждая степень двойки делится на 64 корзины, поэтому процентиль отличается
+ * от точного значения не больше чем на 1/64. Запись - одно атомарное увеличение счётчика, без блокировок
+ * и выделения памяти; значения больше MAX_VALUE записываются как MAX_VALUE
+ */
+public final class LatencyHistogram {
+    // Около 18 минут в наносекундах
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+
+    /**
+     * @param value Неотрицательное значение (отрицательные записываются как 0)
+     */
+    public void record(long value) {
+        counts.incrementAndGet(index(Math.max(0, Math.min(value, MAX_VALUE))));
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return exponent * HALF + (int) (value >>> exponent);
+    }
+
+    /**
+     * @return Наибольшее значение, которое попадает в корзину index
+     */
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / HALF - 1;
+        long mantissa = index - (long) exponent * HALF;
+        return ((mantissa + 1) << exponent) - 1;
+    }
+
+    /**
+     * Процентили по текущим счётчикам. Записи, сделанные во время подсчёта, могут учитываться не во всех корзинах
+     * @param percentiles Процентили по возрастанию, от 0 до 100
+     * @return Значения процентилей (0 для пустой гистограммы)
+     */
+    public long[] percentiles(double... percentiles) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long[] result = new long[percentiles.length];
+        if (total == 0) {
+            return result;
+        }
+        int index = 0;
+        long seen = 0;
+        for (int p = 0; p < percentiles.length; p++) {
+            long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * total));
+            while (seen + snapshot[index] < rank) {
+                seen += snapshot[index++];
+            }
+            result[p] = highestValue(index);
+        }
+        return result;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+}
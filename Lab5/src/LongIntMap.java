@@ -0,0 +1,131 @@
+package src;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица с примитивными ключами long и неотрицательными значениями int
+ * (открытая адресация, линейное пробирование, как в LongObjectMap).
+ * Значение хранится увеличенным на 1: пустая ячейка определяется по 0
+ */
+public class LongIntMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeAt;
+
+    public LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expected Ожидаемое количество элементов
+     */
+    public LongIntMap(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    private static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+    }
+
+    private int indexOf(long key) {
+        int i = LongObjectMap.mix(key) & mask;
+        while (values[i] != 0) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Значение по ключу или -1, если ключа нет
+     */
+    public int get(long key) {
+        int i = indexOf(key);
+        return i >= 0 ? values[i] - 1 : -1;
+    }
+
+    /**
+     * @param value Неотрицательное значение
+     */
+    public void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value cannot be negative");
+        }
+        int i = indexOf(key);
+        if (i >= 0) {
+            values[i] = value + 1;
+            return;
+        }
+        i = -i - 1;
+        keys[i] = key;
+        values[i] = value + 1;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * @return Удалённое значение или -1, если ключа не было
+     */
+    public int remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return -1;
+        }
+        int old = values[i] - 1;
+        // Сдвигаем следующие элементы цепочки назад, чтобы не оставлять "надгробий"
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (values[j] != 0) {
+            int home = LongObjectMap.mix(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        values[gap] = 0;
+        size--;
+        return old;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int j = -indexOf(oldKeys[i]) - 1;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -3,27 +3,34 @@ package src;
 import src.Vehicle;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
+
+import static src.Command.Access.READ;
+import static src.Command.Access.WRITE;
 
 
 /**
  * Основной класс программы
  */
 public class Main {
-    private static TreeSet<Vehicle> vehicles = new TreeSet<>();
-    private static LocalDateTime initDate;
-    private static String filename;
+    private static final CommandRegistry COMMANDS = registerCommands();
+    // null, если метрики выключены (METRICS=off) или программа запущена не через main
+    private static volatile CommandMetrics metrics;
 
     /**
      * @param args Аргументы командной строки
      *             Основной цикл программы
      */
     public static void main(String[] args) {
+        String filename;
         if (args != null){
             Map<String, String> env = System.getenv();
             filename = System.getenv("FILENAME");
@@ -33,328 +40,941 @@ public class Main {
             Scanner scanner = new Scanner(System.in);
             filename = scanner.nextLine().trim();
         }
-        vehicles = load(filename);
-        BufferedReader scanner = new BufferedReader(new InputStreamReader(System.in));
+        metrics = CommandMetrics.fromEnvironment(COMMANDS);
+        long allocated = CommandRegistry.allocatedBytes();
+        long start = System.nanoTime();
+        VehicleStore store = load(filename);
+        if (metrics != null) {
+            long nanos = System.nanoTime() - start;
+            long allocatedAfter = CommandRegistry.allocatedBytes();
+            metrics.record(CommandMetrics.LOAD, "STARTUP", nanos, allocated < 0 || allocatedAfter < 0 ? 0 : allocatedAfter - allocated,
+                    store.getVehicles().size(), false);
+        }
+        startServer(store);
+        serve(new Session(new InputStreamReader(System.in), System.out, consoleCharset(), store, false));
+    }
+
+    /**
+     * @return Кодировка, в которой System.out выводит текст
+     */
+    private static Charset consoleCharset() {
+        String encoding = System.getProperty("sun.stdout.encoding");
+        if (encoding != null) {
+            try {
+                return Charset.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                // System.out в этом случае тоже использует кодировку по умолчанию
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * @param store Хранилище, с которым будут работать сеансы клиентов
+     *              Запускает сервер команд, если задана переменная окружения SERVER_PORT
+     */
+    private static void startServer(VehicleStore store) {
+        String port = System.getenv("SERVER_PORT");
+        if (port == null || port.isBlank()) {
+            return;
+        }
+        try {
+            CommandServer server = new CommandServer(Integer.parseInt(port.trim()), store);
+            server.start();
+            System.out.println("Сервер команд слушает порт " + server.getPort()
+                    + (server.isVirtual() ? " (сеансы в виртуальных потоках)" : " (сеансы в платформенных потоках)"));
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Произошла ошибка: не удалось запустить сервер команд: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param session Сеанс оператора
+     *                Основной цикл сеанса: читает команды, пока сеанс не завершится
+     */
+    static void serve(Session session) {
+        BufferedReader scanner = session.getIn();
         try(scanner) {
-            while (true) {
-                System.out.println("Введите команду:");
+            while (!session.isClosed()) {
+                session.getOut().println("Введите команду:");
+                String command = scanner.readLine();
+                if (command == null) {
+                    // Ввод закончился: сеанс завершается, как по команде exit
+                    exit(session);
+                    break;
+                }
                 try {
-                    String command = scanner.readLine().trim();
-                    commandHandler(command, scanner);
+                    commandHandler(command.trim(), scanner, session);
                 } catch (Exception e) {
-                    System.out.println("Произошла ошибка: " + e.getMessage());
-                    exit();
+                    // Ошибка команды не завершает сеанс: коллекция не изменена или изменена целиком
+                    session.getOut().println("Произошла ошибка: " + e.getMessage());
                 }
             }
         }
         catch (Exception e) {
-            System.out.println("Произошла ошибка: " + e.getMessage());
-            exit();
+            session.getOut().println("Произошла ошибка: " + e.getMessage());
+            exit(session);
         }
     }
 
+    /**
+     * @return Реестр команд; через него другие подсистемы подключают слушателей выполнения
+     */
+    public static CommandRegistry commands() {
+        return COMMANDS;
+    }
+
     /**
      * @param command Команда для обработки
-     * @param stream Поток для считывания данных (консоль или файл)
-     *               Используется для обработки команд и перенаправления в соответствующие методы
+     * @param stream Поток для считывания данных (консоль, сокет клиента или файл)
+     * @param session Сеанс, в который выводится результат
+     *               Разбирает команду и выполняет её через реестр команд
      */
-    private static void commandHandler(String command, BufferedReader stream){
-        String[] tokens = command.split("\\s+");
-        try {
-            switch (tokens[0]) {
-                case "help":
-                    help();
-                    break;
-                case "info":
-                    info();
-                    break;
-                case "show":
-                    show();
-                    break;
-                case "add":
-                    add(stream);
-                    break;
-                case "update":
-                    update(tokens[1], stream);
-                    break;
-                case "remove_by_id":
-                    removeById(tokens[1]);
-                    break;
-                case "clear":
-                    clear();
-                    break;
-                case "save":
-                    save(filename);
-                    break;
-                case "execute_script":
-                    executeScript(tokens[1]);
-                    break;
-                case "exit":
-                    exit();
-                    break;
-                case "add_if_max":
-                    addIfMax(stream);
-                    break;
-                case "add_if_min":
-                    addIfMin(stream);
-                    break;
-                case "remove_lower":
-                    removeLower(stream);
-                    break;
-                case "group_counting_by_engine_power":
-                    groupCountingByEnginePower();
-                    break;
-                case "filter_by_number_of_wheels":
-                    filterByNumberOfWheels(tokens[1]);
-                    break;
-                case "print_field_ascending_number_of_wheels":
-                    printFieldAscendingNumberOfWheels();
-                    break;
-                default:
-                    System.out.println("Неизвестная команда. Наберите help чтобы получить список доступных команд");
+    private static void commandHandler(String command, BufferedReader stream, Session session) throws IOException {
+        if (!COMMANDS.execute(command, stream, session)) {
+            unknownCommand(session);
+        }
+    }
+
+    private static void unknownCommand(Session session) {
+        session.getOut().println("Неизвестная команда. Наберите help чтобы получить список доступных команд");
+    }
+
+    /**
+     * @return Реестр со всеми командами программы в порядке справки
+     */
+    private static CommandRegistry registerCommands() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new Command("help", "показать доступные команды", READ,
+                (line, tokens) -> (stream, session) -> help(session)));
+        registry.register(new Command("info", "показать информацию о коллекции", READ,
+                (line, tokens) -> (stream, session) -> info(session)));
+        registry.register(new Command("show [--limit N] [--offset M]",
+                "показать все элементы (или не больше N, пропустив первые M)", READ, (line, tokens) -> {
+            Page page = Page.parse(tokens, 1);
+            return (stream, session) -> show(page, session);
+        }));
+        registry.register(new Command("add {элемент}", "добавить элемент в коллекцию", WRITE,
+                (line, tokens) -> Main::add));
+        registry.register(new Command("update id {элемент}", "обновить элемент с заданным id", WRITE, (line, tokens) -> {
+            long id = Command.longArgument(tokens, 1, "id");
+            return (stream, session) -> update(id, stream, session);
+        }));
+        registry.register(new Command("remove_by_id id", "удалить элемент с заданным id", WRITE, (line, tokens) -> {
+            long id = Command.longArgument(tokens, 1, "id");
+            return (stream, session) -> removeById(id, session);
+        }));
+        registry.register(new Command("clear", "удалить все элементы из коллекции", WRITE,
+                (line, tokens) -> (stream, session) -> clear(session)));
+        registry.register(new Command("save [csv|binary|columns]",
+                "сохранить коллекцию в файл (с форматом - сразу переписать файл данных в этом формате)", WRITE, (line, tokens) -> {
+            SnapshotFormat format = tokens.length > 1 ? snapshotFormat(tokens[1]) : null;
+            return (stream, session) -> save(format, session);
+        }));
+        registry.register(new Command("execute_script file_name", "выполнить команды из файла", WRITE, (line, tokens) -> {
+            String fileName = Command.argument(tokens, 1, "file_name");
+            return (stream, session) -> executeScript(fileName, session);
+        }));
+        registry.register(new Command("ingest file_name|- [--batch N]",
+                "добавить элементы из записей name,x,y,enginePower,numberOfWheels,type,fuelType\n"
+                        + "    по одной в строке, из файла или (-) из следующих строк ввода до строки end", WRITE, (line, tokens) -> {
+            String source = Command.argument(tokens, 1, "file_name");
+            int batchSize = BulkIngest.DEFAULT_BATCH_SIZE;
+            if (tokens.length > 2) {
+                if (tokens.length != 4 || !tokens[2].equals("--batch")) {
+                    throw new IllegalArgumentException("неизвестный параметр " + tokens[2]);
+                }
+                batchSize = Command.intArgument(tokens, 3, "--batch");
+                if (batchSize <= 0) {
+                    throw new IllegalArgumentException("размер пачки должен быть положительным");
+                }
             }
+            int batch = batchSize;
+            return (stream, session) -> ingest(source, batch, stream, session);
+        }));
+        registry.register(new Command("exit", "выйти из программы", READ,
+                (line, tokens) -> (stream, session) -> exit(session)));
+        registry.register(new Command("add_if_max {элемент}",
+                "добавить элемент, если его значение больше максимального значения в коллекции", WRITE,
+                (line, tokens) -> Main::addIfMax));
+        registry.register(new Command("add_if_min {элемент}",
+                "добавить элемент, если его значение меньше минимального значения в коллекции", WRITE,
+                (line, tokens) -> Main::addIfMin));
+        registry.register(new Command("remove_lower {элемент}", "удалить все элементы, которые меньше заданного элемента", WRITE,
+                (line, tokens) -> Main::removeLower));
+        registry.register(new Command("group_counting_by_engine_power",
+                "сгруппировать элементы по мощности двигателя и показать их количество", READ,
+                (line, tokens) -> (stream, session) -> groupCountingByEnginePower(session)));
+        registry.register(new Command("filter_by_number_of_wheels numberOfWheels [--limit N] [--offset M]",
+                "показать элементы с заданным количеством колес", READ, (line, tokens) -> {
+            int numberOfWheels = Command.intArgument(tokens, 1, "numberOfWheels");
+            Page page = Page.parse(tokens, 2);
+            return (stream, session) -> filterByNumberOfWheels(numberOfWheels, page, session);
+        }));
+        registry.register(new Command("print_field_ascending_number_of_wheels",
+                "показать значения поля 'количество колес' в порядке возрастания", READ,
+                (line, tokens) -> (stream, session) -> printFieldAscendingNumberOfWheels(session)));
+        registry.register(new Command("count_by_engine_power_range from to",
+                "показать количество элементов с мощностью двигателя в [from, to)", READ, (line, tokens) -> {
+            long from = Command.longArgument(tokens, 1, "from");
+            long to = Command.longArgument(tokens, 2, "to");
+            return (stream, session) -> countByEnginePowerRange(from, to, session);
+        }));
+        registry.register(new Command("filter_by_engine_power_range from to [--limit N] [--offset M]",
+                "показать элементы с мощностью двигателя в [from, to)", READ, (line, tokens) -> {
+            long from = Command.longArgument(tokens, 1, "from");
+            long to = Command.longArgument(tokens, 2, "to");
+            Page page = Page.parse(tokens, 3);
+            return (stream, session) -> filterByEnginePowerRange(from, to, page, session);
+        }));
+        registry.register(new Command("top_by_engine_power k", "показать k элементов с наибольшей мощностью двигателя", READ,
+                (line, tokens) -> {
+            int k = count(tokens, 1);
+            return (stream, session) -> topByEnginePower(k, session);
+        }));
+        registry.register(new Command("filter_by_distance x y radius [--limit N] [--offset M]",
+                "показать элементы на расстоянии не больше radius от точки (x, y), ближайшие первыми", READ, (line, tokens) -> {
+            int x = Command.intArgument(tokens, 1, "x");
+            int y = Command.intArgument(tokens, 2, "y");
+            double radius = Command.doubleArgument(tokens, 3, "radius");
+            if (!(radius >= 0)) {
+                throw new IllegalArgumentException("радиус должен быть неотрицательным числом");
+            }
+            Page page = Page.parse(tokens, 4);
+            return (stream, session) -> filterByDistance(x, y, radius, page, session);
+        }));
+        registry.register(new Command("nearest x y k", "показать k элементов, ближайших к точке (x, y)", READ, (line, tokens) -> {
+            int x = Command.intArgument(tokens, 1, "x");
+            int y = Command.intArgument(tokens, 2, "y");
+            int k = count(tokens, 3);
+            return (stream, session) -> nearest(x, y, k, session);
+        }));
+        registry.register(new Command("count_by_types выражение", "показать количество элементов, для которых выражение истинно,\n"
+                + "    выражение: значения VehicleType и FuelType, type:null, fuelType:null, and, or, not, скобки", READ,
+                (line, tokens) -> {
+            BitmapQuery query = BitmapQuery.parse(Command.text(line, "count_by_types"));
+            return (stream, session) -> countByTypes(query, session);
+        }));
+        registry.register(new Command("filter_by_types выражение [--limit N] [--offset M]",
+                "показать элементы, для которых выражение истинно", READ, (line, tokens) -> {
+            String text = Command.text(line, "filter_by_types");
+            int options = optionsStart(text);
+            BitmapQuery query = BitmapQuery.parse(text.substring(0, options));
+            Page page = Page.parse(CommandTokenizer.tokenize(text.substring(options)), 0);
+            return (stream, session) -> filterByTypes(query, page, session);
+        }));
+        registry.register(new Command("query условие and условие ... [--limit N] [--offset M]",
+                "показать элементы, подходящие под все условия,\n"
+                        + "    условия: id, power, wheels, x, y (=, <, <=, >, >= число), type, fuelType (= значение или null), name (= или ^= строка)",
+                READ, (line, tokens) -> {
+            String text = Command.text(line, "query");
+            int options = optionsStart(text);
+            VehicleQuery query = VehicleQuery.parse(text.substring(0, options));
+            Page page = Page.parse(CommandTokenizer.tokenize(text.substring(options)), 0);
+            return (stream, session) -> query(query, page, session);
+        }));
+        registry.register(new Command("explain условие and условие ...", "показать, как будет выполнен query с этими условиями", READ,
+                (line, tokens) -> {
+            String text = Command.text(line, "explain");
+            VehicleQuery query = VehicleQuery.parse(text.substring(0, optionsStart(text)));
+            return (stream, session) -> explain(query, session);
+        }));
+        registry.register(new Command("stats [command]",
+                "показать метрики команд: вызовы, ошибки, процентили длительности, затронутые элементы и выделенную память", READ,
+                (line, tokens) -> {
+            String name = tokens.length > 1 ? tokens[1] : null;
+            return (stream, session) -> stats(name, session);
+        }));
+        return registry;
+    }
+
+    /**
+     * @return Неотрицательное количество элементов из tokens[index]
+     */
+    private static int count(String[] tokens, int index) {
+        int k = Command.intArgument(tokens, index, "k");
+        if (k < 0) {
+            throw new IllegalArgumentException("количество элементов не может быть отрицательным");
         }
-        catch (Exception e) {
-            System.out.println("Произошла ошибка: " + e.getMessage());
-            exit();
+        return k;
+    }
+
+    private static SnapshotFormat snapshotFormat(String name) {
+        try {
+            return SnapshotFormat.of(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("неизвестный формат " + name);
+        }
+    }
+
+    /**
+     * @param session Сеанс, в который выводится результат
+     *            Выводит справку по доступным командам
+     */
+    private static void help(Session session) {
+        PrintStream out = session.getOut();
+        out.println("Доступные команды:");
+        for (Command command : COMMANDS.commands()) {
+            for (String line : command.help()) {
+                out.println(line);
+            }
         }
     }
 
     /**
-     * Выводит справку по доступным командам
+     * @param session Сеанс, в который выводится результат
+     *            Выводит информацию о коллекции (тип, дата инициализации, количество элементом
      */
-    private static void help() {
-        System.out.println("Доступные команды:");
-        System.out.println("help - показать доступные команды");
-        System.out.println("info - показать информацию о коллекции");
-        System.out.println("show - показать все элементы");
-        System.out.println("add {элемент} - добавить элемент в коллекцию");
-        System.out.println("update id {элемент} - обновить элемент с заданным id");
-        System.out.println("remove_by_id id - удалить элемент с заданным id");
-        System.out.println("clear - удалить все элементы из коллекции");
-        System.out.println("save - сохранить коллекцию в файл");
-        System.out.println("execute_script file_name - выполнить команды из файла");
-        System.out.println("exit - выйти из программы");
-        System.out.println("add_if_max {элемент} - добавить элемент, если его значение больше максимального значения в коллекции");
-        System.out.println("add_if_min {элемент} - добавить элемент, если его значение меньше минимального значения в коллекции");
-        System.out.println("remove_lower {элемент} - удалить все элементы, которые меньше заданного элемента");
-        System.out.println("group_counting_by_engine_power - сгруппировать элементы по мощности двигателя и показать их количество");
-        System.out.println("filter_by_number_of_wheels numberOfWheels - показать элементы с заданным количеством колес");
-        System.out.println("print_field_ascending_number_of_wheels - показать значения поля 'количество колес' в порядке возрастания");
+    private static void info(Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        out.println("Collection type: " + vehicles.getClass().getName());
+        out.println("Initialization date: " + store.getInitDate().toString());
+        out.println("Number of elements: " + vehicles.snapshot().size());
     }
 
     /**
-     * Выводит в стандартный поток вывода информацию о коллекции (тип, дата инициализации, количество элементом
+     * @param page Параметры --limit и --offset
+     * @param session Сеанс, в который выводится результат
+     *            Выводит элементы коллекции в строковом представлении
      */
-    private static void info() {
-        System.out.println("Collection type: " + vehicles.getClass().getName());
-        System.out.println("Initialization date: " + initDate.toString());
-        System.out.println("Number of elements: " + vehicles.size());
+    private static void show(Page page, Session session) {
+        // Версия коллекции на момент начала команды: изменения из других сеансов вывод не затрагивают
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        try (OutputSink sink = session.newSink()) {
+            page.print(snapshot.iterator(page.offset), sink);
+        }
     }
 
     /**
-     * Выводит в стандартный поток вывода все элементы коллекции в строковом представлении
+     * Часть строк вывода: --offset M пропускает первые M элементов, --limit N выводит не больше N
      */
-    private static void show() {
-        for (Vehicle vehicle : vehicles) {
-            System.out.println(vehicle);
+    private static class Page {
+        private int offset;
+        private long limit = Long.MAX_VALUE;
+
+        /**
+         * @param tokens Токены команды
+         * @param from Номер первого токена с параметрами
+         */
+        static Page parse(String[] tokens, int from) {
+            Page page = new Page();
+            for (int i = from; i < tokens.length; i += 2) {
+                if (i + 1 == tokens.length) {
+                    throw new IllegalArgumentException("не указано значение параметра " + tokens[i]);
+                }
+                long value = Long.parseLong(tokens[i + 1]);
+                if (value < 0) {
+                    throw new IllegalArgumentException("значение параметра " + tokens[i] + " не может быть отрицательным");
+                }
+                switch (tokens[i]) {
+                    case "--limit":
+                        page.limit = value;
+                        break;
+                    case "--offset":
+                        page.offset = (int) Math.min(value, Integer.MAX_VALUE);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("неизвестный параметр " + tokens[i]);
+                }
+            }
+            return page;
+        }
+
+        /**
+         * @param vehicles Элементы, начиная с номера offset
+         */
+        void print(Iterator<Vehicle> vehicles, OutputSink sink) {
+            for (long printed = 0; printed < limit && vehicles.hasNext(); printed++) {
+                sink.println(vehicles.next());
+            }
         }
     }
 
     /**
      * @param stream Поток для считывания данных
+     * @param session Сеанс, в который выводится результат
      *               Добавляет новый элемент в коллекцию
      */
-    public static void add(BufferedReader stream) {
-            vehicles.add(Vehicle.fromUser(stream));
+    public static void add(BufferedReader stream, Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        // Данные элемента читаются до блокировки, чтобы ожидание ввода не задерживало другие сеансы
+        Vehicle vehicle = Vehicle.fromUser(stream, out);
+        store.getLock().writeLock().lock();
+        try {
+            if (vehicles.add(vehicle)) {
+                store.getJournal().add(vehicle);
+                session.touch(1);
+                return;
+            }
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+        Vehicle.releaseId(vehicle.getId());
     }
 
     /**
-     * @param idString id элемента, который надо обновить
+     * @param id id элемента, который надо обновить
      * @param stream Поток для считывания данных
+     * @param session Сеанс, в который выводится результат
      *               Обновляет значения элемента с данным id
      */
-    public static void update(String idString, BufferedReader stream) {
-        int id = Integer.parseInt(idString);
-        for (Vehicle v : vehicles) {
-            if (v.getId() == id) {
-                vehicles.remove(v);
-                vehicles.add(Vehicle.modifyFromUser(v, stream));
-                break;
+    public static void update(long id, BufferedReader stream, Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        Vehicle vehicle;
+        store.getLock().readLock().lock();
+        try {
+            vehicle = vehicles.getById(id);
+        } finally {
+            store.getLock().readLock().unlock();
+        }
+        if (vehicle == null) {
+            throw new IllegalArgumentException("Element with given id not found.");
+        }
+        Vehicle modified = Vehicle.modifyFromUser(vehicle, stream, out);
+        store.getLock().writeLock().lock();
+        try {
+            // Пока вводились данные, элемент мог удалить другой сеанс
+            if (!vehicles.containsId(id)) {
+                throw new IllegalArgumentException("Element with given id not found.");
             }
+            if (vehicles.update(modified)) {
+                store.getJournal().update(modified);
+                session.touch(1);
+            }
+        } finally {
+            store.getLock().writeLock().unlock();
         }
     }
 
     /**
-     * @param idString id элемента, который надо удалить
+     * @param id id элемента, который надо удалить
+     * @param session Сеанс, в который выводится результат
      *                 Удаляет элемент с соответствующим id
      */
-    private static void removeById(String idString) {
-        long id = Long.parseLong(idString);
-        Vehicle vehicle = vehicles.stream().filter(v -> v.getId() == id).findFirst().orElse(null);
-        if (vehicle == null) {
-            throw new IllegalArgumentException("Element with given id not found.");
+    private static void removeById(long id, Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        store.getLock().writeLock().lock();
+        try {
+            if (vehicles.removeById(id) == null) {
+                throw new IllegalArgumentException("Element with given id not found.");
+            }
+            Vehicle.releaseId(id);
+            store.getJournal().remove(id);
+            session.touch(1);
+        } finally {
+            store.getLock().writeLock().unlock();
         }
-        vehicles.remove(vehicle);
-        System.out.println("Element removed.");
+        out.println("Element removed.");
     }
 
     /**
-     * Очищает коллекцию
+     * @param session Сеанс, в который выводится результат
+     *            Очищает коллекцию
      */
-    private static void clear() {
-        vehicles.clear();
-        System.out.println("Collection cleared.");
+    private static void clear(Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        store.getLock().writeLock().lock();
+        try {
+            session.touch(vehicles.size());
+            vehicles.clear();
+            Vehicle.seedIds(new long[0]);
+            store.getJournal().clear();
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+        out.println("Collection cleared.");
     }
 
     /**
      * @param fileName Имя файла с CSV-дампом коллекции
-     *                 Возвращает коллекцию, загруженную из CSV-файла
+     *                 Возвращает хранилище с коллекцией, загруженной из файла данных (CSV, двоичный или
+     *                 поколоночный дамп), с применёнными записями журнала.
+     *                 Если переменная окружения LOAD_THREADS больше 1, CSV-файл разбирается параллельно
+     *                 Переменные SCAN_THREADS и SCAN_THRESHOLD включают параллельные просмотры (см. ParallelScan.fromEnvironment)
      */
-    public static TreeSet<Vehicle> load(String fileName){
-        TreeSet<Vehicle> vehicles = new TreeSet<>();
-
-        String currentLine;
-        try (BufferedReader scanner = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)))){
-            try {
-                initDate = LocalDateTime.parse(scanner.readLine(), DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"));
-            }
-            catch (NullPointerException e){
+    public static VehicleStore load(String fileName){
+        VehicleStore store = null;
+        int threads = loadThreads();
+        try {
+            SnapshotReader reader = SnapshotFormat.detect(Path.of(fileName)).reader(threads);
+            VehicleCollection vehicles = reader.load(fileName);
+            LocalDateTime initDate = reader.getInitDate();
+            long sequence = reader.getSequence();
+            if (initDate == null) {
                 initDate = LocalDateTime.now();
             }
-            while ((currentLine = scanner.readLine()) != null) {
-                vehicles.add(Vehicle.fromCSV(currentLine));
-            }
+            store = new VehicleStore(vehicles, initDate, Journal.open(fileName, sequence, vehicles), ParallelScan.fromEnvironment());
         } catch (IOException e) {
             System.out.println("Произошла ошибка:" + e.getMessage());
-            exit();
+            exit(store);
         }
-        for(Vehicle vehicle: vehicles) {
-            Vehicle.updateId(vehicle.getId());
+        long[] ids = new long[store.getVehicles().size()];
+        int i = 0;
+        for (Vehicle vehicle : store.getVehicles()) {
+            ids[i++] = vehicle.getId();
         }
-        return vehicles;
+        Vehicle.seedIds(ids);
+        return store;
     }
 
     /**
-     * @param fileName Имя файла для CSV-дампа коллекции
-     *                 Сохраняет текущее состояние коллекции в CSV-файл
+     * @return Количество потоков загрузки из переменной окружения LOAD_THREADS (по умолчанию 1)
      */
-    private static void save(String fileName) {
-        try (BufferedWriter printer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName)))){
-            printer.write(initDate.format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))+'\n');
-            for (Vehicle vehicle: vehicles) {
-                printer.write(vehicle.toCSV() + '\n');
-            }
+    private static int loadThreads() {
+        String value = System.getenv("LOAD_THREADS");
+        if (value == null || value.isBlank()) {
+            return 1;
         }
-        catch (FileNotFoundException e){
-            System.out.println("Произошла ошибка: " + e.getMessage());
-            exit();
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            System.out.println("Некорректное значение LOAD_THREADS: " + value);
+            return 1;
+        }
+    }
+
+    /**
+     * @param format Формат файла данных или null
+     *                   Дописывает изменения с момента прошлого сохранения в журнал файла данных.
+     *                   Сам файл данных перезаписывается в фоне, когда журнал становится слишком большим,
+     *                   или сразу, если указан формат
+     * @param session Сеанс, в который выводятся ошибки
+     */
+    private static void save(SnapshotFormat format, Session session) throws IOException {
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        store.getLock().writeLock().lock();
+        try {
+            if (format == null) {
+                store.getJournal().commit(vehicles, store.getInitDate());
+            } else {
+                store.getJournal().commit(vehicles, store.getInitDate(), format);
+            }
         }
-        catch (IOException e){
-            System.out.println("Произошла ошибка: " + e.getMessage());
-            exit();
+        finally {
+            store.getLock().writeLock().unlock();
         }
     }
 
     /**
      * @param fileName Имя файла со скриптом
-     *                 Выполняет команды из файла как если бы они вводились в консоль
+     * @param session Сеанс, в который выводится результат
+     *                 Выполняет команды из файла как если бы они вводились в консоль. Скрипт берётся из кэша
+     *                 CompiledScript, если файл не менялся; подряд идущие add добавляются одной пачкой
+     *                 перед следующей командой другого вида или в конце скрипта (слушатели реестра видят пачку
+     *                 как одно выполнение add). Выполнение останавливается на первой ошибке
      */
-    private static void executeScript(String fileName) {
-        String currentLine;
+    private static void executeScript(String fileName, Session session) throws IOException {
+        CompiledScript script = CompiledScript.load(fileName, COMMANDS);
+        if (!session.enterScript(script.getPath())) {
+            throw new IllegalArgumentException("рекурсивный вызов скрипта " + fileName);
+        }
+        List<Vehicle> added = new ArrayList<>();
+        CompiledScript.Cursor cursor = script.cursor();
+        int line = 0;
         try {
-            InputStream stream = new FileInputStream(fileName);
-            BufferedReader scanner = new BufferedReader(new InputStreamReader(stream));
-            try (scanner){
-                while ((currentLine = scanner.readLine()) != null){
-                    commandHandler(currentLine, scanner);
+            while (!session.isClosed() && cursor.readLine() != null) {
+                line = cursor.getLineNumber();
+                CommandRegistry.Invocation invocation = cursor.invocation();
+                if (invocation != null && invocation.getCommand().getName().equals("add")) {
+                    added.add(Vehicle.fromUser(cursor, session.getOut()));
+                    if (added.size() == BulkIngest.DEFAULT_BATCH_SIZE) {
+                        insertBatch(added, session);
+                    }
+                    continue;
+                }
+                insertBatch(added, session);
+                if (invocation == null) {
+                    unknownCommand(session);
+                } else {
+                    COMMANDS.execute(invocation, cursor, session);
                 }
             }
-            catch (IOException e){
-                System.out.println("Произошла ошибка:" + e.getMessage());
-                exit();
+        } catch (Exception e) {
+            // Скрипт останавливается на первой ошибке: следующие команды могут зависеть от результата этой
+            throw new IllegalArgumentException(script.getPath().getFileName() + ", строка " + line + ": " + e.getMessage(), e);
+        } finally {
+            // Элементы, прочитанные до ошибки, добавляются, как при выполнении add по одной
+            try {
+                insertBatch(added, session);
+            } finally {
+                session.exitScript(script.getPath());
+            }
+        }
+    }
+
+    /**
+     * Добавляет прочитанные из скрипта элементы одной пачкой через реестр команд, чтобы метрики add
+     * учитывали и их: одно выполнение add на пачку, затронутые элементы - добавленные из пачки
+     */
+    private static void insertBatch(List<Vehicle> added, Session session) throws IOException {
+        if (added.isEmpty()) {
+            return;
+        }
+        COMMANDS.execute(COMMANDS.get("add"), (stream, target) -> target.touch(BulkIngest.insert(added, target.getStore())),
+                null, session);
+    }
+
+    /**
+     * Добавляет элементы из компактных записей пачками и выводит сводку: количество строк, добавленных
+     * элементов, ошибок (с первыми сообщениями) и скорость загрузки
+     * @param source Имя файла записей или - (записи в следующих строках ввода до строки end)
+     * @param batchSize Количество записей в пачке (параметр --batch)
+     * @param stream Поток команд (источник записей для -)
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void ingest(String source, int batchSize, BufferedReader stream, Session session) throws IOException {
+        BulkIngest.Result result;
+        if (source.equals("-")) {
+            result = BulkIngest.ingest(stream, session.getStore(), batchSize);
+        } else {
+            try (BufferedReader records = new BufferedReader(new FileReader(source), 1 << 16)) {
+                result = BulkIngest.ingest(records, session.getStore(), batchSize);
             }
         }
-        catch (FileNotFoundException e){
-            System.out.println("Произошла ошибка: " + e.getMessage());
-            exit();
+        session.touch(result.getAdded());
+        PrintStream out = session.getOut();
+        out.println("Rows: " + result.getRows() + ", added: " + result.getAdded() + ", invalid: " + result.getInvalid()
+                + ", duplicates: " + result.getDuplicates());
+        for (String error : result.getErrors()) {
+            out.println("  " + error);
         }
+        if (result.getInvalid() > result.getErrors().size()) {
+            out.println("  ... and " + (result.getInvalid() - result.getErrors().size()) + " more invalid rows");
+        }
+        out.printf("Rows per second: %.0f%n", result.rowsPerSecond());
     }
 
     /**
-     * Завершает работу программы
+     * @param session Сеанс, в котором выполнена команда exit или произошла ошибка
+     *                Завершает сеанс клиента сервера или, для консоли, работу программы
      */
-    private static void exit() {
+    private static void exit(Session session) {
+        if (session.isRemote()) {
+            session.close();
+            return;
+        }
+        exit(session.getStore());
+    }
+
+    /**
+     * @param store Хранилище, журнал которого надо закрыть, или null
+     *              Завершает работу программы
+     */
+    private static void exit(VehicleStore store) {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.out.println("Произошла ошибка: " + e.getMessage());
+            }
+        }
         System.exit(0);
     }
 
     /**
      * @param stream Поток для считывания данных
+     * @param session Сеанс, в который выводится результат
      *               Добавляет новый элемент в коллекцию, если его значение превышает значение наибольшего элемента этой коллекции
      */
-    public static void addIfMax(BufferedReader stream) {
-        Vehicle vehicle = Vehicle.fromUser(stream);
-        if (vehicles.isEmpty() || vehicles.last().compareTo(vehicle) < 0) {
-            vehicles.add(vehicle);
-            System.out.println("Элемент добавлен в коллекцию.");
+    public static void addIfMax(BufferedReader stream, Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        Vehicle vehicle = Vehicle.fromUser(stream, out);
+        boolean added;
+        store.getLock().writeLock().lock();
+        try {
+            added = (vehicles.isEmpty() || vehicles.last().compareTo(vehicle) < 0) && vehicles.add(vehicle);
+            if (added) {
+                store.getJournal().add(vehicle);
+                session.touch(1);
+            }
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+        if (added) {
+            out.println("Элемент добавлен в коллекцию.");
         } else {
-            System.out.println("Элемент не добавлен в коллекцию.");
+            Vehicle.releaseId(vehicle.getId());
+            out.println("Элемент не добавлен в коллекцию.");
         }
     }
 
     /**
      * @param stream Поток для считывания данных
+     * @param session Сеанс, в который выводится результат
      *               Добавляет новый элемент в коллекцию, если его значение меньше, чем у наименьшего элемента этой коллекции
      */
-    public static void addIfMin(BufferedReader stream) {
-        Vehicle vehicle = Vehicle.fromUser(stream);
+    public static void addIfMin(BufferedReader stream, Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        Vehicle vehicle = Vehicle.fromUser(stream, out);
 
-        if (vehicles.isEmpty() || vehicles.first().compareTo(vehicle) > 0) {
-            vehicles.add(vehicle);
-            System.out.println("Элемент добавлен в коллекцию.");
+        boolean added;
+        store.getLock().writeLock().lock();
+        try {
+            added = (vehicles.isEmpty() || vehicles.first().compareTo(vehicle) > 0) && vehicles.add(vehicle);
+            if (added) {
+                store.getJournal().add(vehicle);
+                session.touch(1);
+            }
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
+        if (added) {
+            out.println("Элемент добавлен в коллекцию.");
         } else {
-            System.out.println("Элемент не добавлен в коллекцию.");
+            Vehicle.releaseId(vehicle.getId());
+            out.println("Элемент не добавлен в коллекцию.");
         }
     }
 
     /**
      * @param stream Поток для считывания данных
+     * @param session Сеанс, в который выводится результат
      *               Удаляет из коллекции все элементы, меньшие, чем заданный
      */
-    public static void removeLower(BufferedReader stream) {
-        Vehicle vehicle = Vehicle.fromUser(stream);
-        vehicles.removeIf(v -> v.compareTo(vehicle) < 0);
+    public static void removeLower(BufferedReader stream, Session session) {
+        PrintStream out = session.getOut();
+        VehicleStore store = session.getStore();
+        VehicleCollection vehicles = store.getVehicles();
+        Vehicle vehicle = Vehicle.fromUser(stream, out);
+        Vehicle.releaseId(vehicle.getId());
+        store.getLock().writeLock().lock();
+        try {
+            List<Vehicle> removed = vehicles.removeLower(vehicle);
+            for (Vehicle element : removed) {
+                Vehicle.releaseId(element.getId());
+            }
+            session.touch(removed.size());
+            store.getJournal().removeLower(vehicle);
+        } finally {
+            store.getLock().writeLock().unlock();
+        }
     }
 
     /**
      * Группирует элементы коллекции по значению поля enginePower, выводит количество элементов в каждой группе
+     * по возрастанию мощности (элементы без мощности - первыми)
+     * @param session Сеанс, в который выводится результат
      */
-    private static void groupCountingByEnginePower() {
-        vehicles.stream()
-                .collect(Collectors.groupingBy(Vehicle::getEnginePower, Collectors.counting()))
-                .forEach((power, count) -> System.out.println("Engine power: " + power + ", count: " + count));
+    private static void groupCountingByEnginePower(Session session) {
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        try (OutputSink sink = session.newSink()) {
+            snapshot.forEachEnginePowerCount((power, count) -> {
+                sink.print("Engine power: ");
+                if (power == Vehicle.NO_ENGINE_POWER) {
+                    sink.print("null");
+                } else {
+                    sink.print(power);
+                }
+                sink.print(", count: ").println(count);
+            });
+        }
     }
 
     /**
-     * @param numberOfWheelsString
+     * @param page Параметры --limit и --offset
+     * @param session Сеанс, в который выводится результат
      * Выводит элементы, значения поля numberOfWheels в который равно заданному
      */
-    private static void filterByNumberOfWheels(String numberOfWheelsString) {
-        int numberOfWheels = Integer.parseInt(numberOfWheelsString);
-        vehicles.stream()
-                .filter(v -> v.getNumberOfWheels() == numberOfWheels)
-                .forEach(System.out::println);
+    private static void filterByNumberOfWheels(int numberOfWheels, Page page, Session session) {
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        try (OutputSink sink = session.newSink()) {
+            page.print(snapshot.withNumberOfWheels(numberOfWheels, page.offset), sink);
+        }
     }
 
     /**
      * Выводит значения поля numberOfWheels всех элементов в порядке возрастания
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void printFieldAscendingNumberOfWheels(Session session) {
+        try (OutputSink sink = session.newSink()) {
+            session.getStore().getVehicles().snapshot().countsByNumberOfWheels().forEach((numberOfWheels, count) -> {
+                for (int i = 0; i < count; i++) {
+                    sink.println(numberOfWheels);
+                }
+            });
+        }
+    }
+
+    /**
+     * Выводит количество элементов с мощностью двигателя в [from, to)
+     * @param from Нижняя граница мощности, включительно
+     * @param to Верхняя граница мощности, не включительно
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void countByEnginePowerRange(long from, long to, Session session) {
+        session.getOut().println("Number of elements: "
+                + session.getStore().getVehicles().snapshot().countByEnginePowerRange(from, to));
+    }
+
+    /**
+     * Выводит элементы с мощностью двигателя в [from, to) в порядке возрастания
+     * @param page Параметры --limit и --offset
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void filterByEnginePowerRange(long from, long to, Page page, Session session) {
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        try (OutputSink sink = session.newSink()) {
+            page.print(snapshot.withEnginePowerRange(from, to, page.offset), sink);
+        }
+    }
+
+    /**
+     * Выводит k элементов с наибольшей мощностью двигателя, начиная с самого мощного
+     * @param k Количество элементов
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void topByEnginePower(int k, Session session) {
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        try (OutputSink sink = session.newSink()) {
+            for (Vehicle vehicle : snapshot.mostPowerful(k)) {
+                sink.println(vehicle);
+            }
+        }
+    }
+
+    /**
+     * Выводит элементы на расстоянии не больше radius от точки (x, y), начиная с ближайшего
+     * @param page Параметры --limit и --offset
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void filterByDistance(int x, int y, double radius, Page page, Session session) {
+        List<Vehicle> found = session.getStore().getVehicles().snapshot().withinDistance(x, y, radius);
+        try (OutputSink sink = session.newSink()) {
+            page.print(found.listIterator(Math.min(page.offset, found.size())), sink);
+        }
+    }
+
+    /**
+     * Выводит k элементов, ближайших к точке (x, y), начиная с ближайшего
+     * @param k Количество элементов
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void nearest(int x, int y, int k, Session session) {
+        try (OutputSink sink = session.newSink()) {
+            for (Vehicle vehicle : session.getStore().getVehicles().snapshot().nearest(x, y, k)) {
+                sink.println(vehicle);
+            }
+        }
+    }
+
+    /**
+     * Выводит количество элементов, для которых истинно выражение над типами; считается по битовым картам
+     * @param query Выражение над типами
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void countByTypes(BitmapQuery query, Session session) {
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        session.getOut().println("Number of elements: " + query.count(snapshot, session.getStore().getScan()));
+    }
+
+    /**
+     * Выводит элементы, для которых истинно выражение над типами, в порядке коллекции
+     * @param query Выражение над типами
+     * @param page Параметры --limit и --offset
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void filterByTypes(BitmapQuery query, Page page, Session session) {
+        Vehicle[] found = query.select(session.getStore().getVehicles().snapshot(), session.getStore().getScan(), vehicle -> true);
+        // Карты выдают элементы в порядке слотов
+        Arrays.sort(found);
+        try (OutputSink sink = session.newSink()) {
+            page.print(Arrays.asList(found).listIterator(Math.min(page.offset, found.length)), sink);
+        }
+    }
+
+    /**
+     * Выводит элементы, подходящие под все условия запроса, в порядке коллекции
+     * @param query Условия запроса
+     * @param page Параметры --limit и --offset
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void query(VehicleQuery query, Page page, Session session) {
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        Iterator<Vehicle> found = QueryPlan.choose(query, snapshot).execute(snapshot, id -> getById(session.getStore(), id),
+                session.getStore().getScan());
+        for (int skipped = 0; skipped < page.offset && found.hasNext(); skipped++) {
+            found.next();
+        }
+        try (OutputSink sink = session.newSink()) {
+            page.print(found, sink);
+        }
+    }
+
+    /**
+     * Выводит план выполнения запроса: выбранный индекс, оценки и остаточный фильтр
+     * @param query Условия запроса
+     * @param session Сеанс, в который выводится результат
      */
-    private static void printFieldAscendingNumberOfWheels() {
-        vehicles.stream()
-                .map(Vehicle::getNumberOfWheels)
-                .sorted()
-                .forEach(System.out::println);
+    private static void explain(VehicleQuery query, Session session) {
+        VehicleSnapshot snapshot = session.getStore().getVehicles().snapshot();
+        for (String line : QueryPlan.choose(query, snapshot).explain(snapshot, session.getStore().getScan())) {
+            session.getOut().println(line);
+        }
+    }
+
+    /**
+     * @return Позиция первого параметра --limit или --offset вне кавычек (или длина строки)
+     */
+    private static int optionsStart(String text) {
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (i == 0 || Character.isWhitespace(text.charAt(i - 1)))
+                    && (text.startsWith("--limit", i) || text.startsWith("--offset", i))) {
+                return i;
+            }
+        }
+        return text.length();
     }
 
+    /**
+     * Выводит метрики команд (CommandMetrics)
+     * @param name Имя команды или null - все выполнявшиеся команды
+     * @param session Сеанс, в который выводится результат
+     */
+    private static void stats(String name, Session session) {
+        CommandMetrics current = metrics;
+        if (current == null) {
+            session.getOut().println("Metrics are disabled.");
+            return;
+        }
+        if (name != null && COMMANDS.get(name) == null && !name.equals(CommandMetrics.LOAD)) {
+            throw new IllegalArgumentException("неизвестная команда " + name);
+        }
+        try (OutputSink sink = session.newSink()) {
+            for (String line : current.report(name)) {
+                sink.println(line);
+            }
+        }
+    }
 
-}
\ No newline at end of file
+    /**
+     * Индекс по id читается под блокировкой чтения, как в update
+     */
+    private static Vehicle getById(VehicleStore store, long id) {
+        store.getLock().readLock().lock();
+        try {
+            return store.getVehicles().getById(id);
+        } finally {
+            store.getLock().readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package src;
+
+import java.time.LocalDateTime;
+
+/**
+ * Лёгкое представление строки ColumnStore: хранит только ссылку на хранилище и номер строки,
+ * значения полей читаются из отображённых в память колонок при каждом обращении.
+ * Представление неизменяемо, изменённый элемент заменяется обычным Vehicle
+ */
+public class MappedVehicle extends Vehicle {
+    private final ColumnStore store;
+    private final int row;
+
+    MappedVehicle(ColumnStore store, int row) {
+        this.store = store;
+        this.row = row;
+    }
+
+    @Override
+    public long getIdValue() {
+        return store.id(row);
+    }
+
+    @Override
+    public String getName() {
+        return store.name(row);
+    }
+
+    @Override
+    public int getX() {
+        return store.x(row);
+    }
+
+    @Override
+    public int getY() {
+        return store.y(row);
+    }
+
+    @Override
+    public long getCreationEpochSecond() {
+        return store.creationEpochSecond(row);
+    }
+
+    @Override
+    public int getCreationNano() {
+        return store.creationNano(row);
+    }
+
+    @Override
+    long getCreationKey() {
+        return creationKey(store.creationEpochSecond(row), store.creationNano(row));
+    }
+
+    @Override
+    public long getEnginePowerValue() {
+        return store.enginePower(row);
+    }
+
+    @Override
+    public int getNumberOfWheels() {
+        return store.numberOfWheels(row);
+    }
+
+    @Override
+    public VehicleType getType() {
+        return store.type(row);
+    }
+
+    @Override
+    public FuelType getFuelType() {
+        return store.fuelType(row);
+    }
+
+    @Override
+    public void setId(Long id) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+
+    @Override
+    public void setName(String name) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+
+    @Override
+    public void setCoordinates(Coordinates coordinates) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+
+    @Override
+    public void setCreationDate(LocalDateTime creationDate) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+
+    @Override
+    public void setEnginePower(Long enginePower) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+
+    @Override
+    public void setNumberOfWheels(int numberOfWheels) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+
+    @Override
+    public void setType(VehicleType type) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+
+    @Override
+    public void setFuelType(FuelType fuelType) {
+        throw new UnsupportedOperationException("Mapped vehicle is read-only");
+    }
+}
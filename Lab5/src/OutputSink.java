@@ -0,0 +1,150 @@
+package src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Вывод строк команды крупными блоками: строки собираются в многократно используемом StringBuilder
+ * (элементы форматируются через Vehicle.appendTo, без промежуточных строк), затем кодируются
+ * в байтовый буфер и записываются в поток одним вызовом на блок, а не синхронизированным println на строку.
+ * Создаётся на время одной команды; close() дописывает остаток и сбрасывает поток
+ */
+public class OutputSink implements Closeable {
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final OutputStream out;
+    private final CharsetEncoder encoder;
+    // Буферы растут по мере вывода: у большинства команд ответ в одну строку, а сеанс создаёт вывод на каждую
+    private final StringBuilder text = new StringBuilder();
+    // Кодировщик быстрее всего работает с буферами поверх массивов, поэтому текст блока копируется в chars
+    private char[] chars = new char[0];
+    private ByteBuffer bytes = ByteBuffer.allocate(0);
+    private long elements;
+
+    /**
+     * @param out Поток вывода (поток сеанса, файл)
+     * @param charset Кодировка, в которой поток ожидает текст
+     */
+    public OutputSink(OutputStream out, Charset charset) {
+        this.out = out;
+        // Как у PrintStream: непредставимые символы заменяются, а не прерывают вывод
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Добавляет строку с представлением элемента (как Vehicle.toString)
+     */
+    public OutputSink println(Vehicle vehicle) {
+        vehicle.appendTo(text);
+        elements++;
+        return newLine();
+    }
+
+    public OutputSink println(String line) {
+        text.append(line);
+        return newLine();
+    }
+
+    public OutputSink println(long value) {
+        text.append(value);
+        return newLine();
+    }
+
+    /**
+     * Добавляет часть строки; строка завершается одним из println
+     */
+    public OutputSink print(String part) {
+        text.append(part);
+        return this;
+    }
+
+    public OutputSink print(long value) {
+        text.append(value);
+        return this;
+    }
+
+    private OutputSink newLine() {
+        text.append(LINE_SEPARATOR);
+        // Блок пишется только по границе строки, поэтому суррогатные пары не разрываются
+        if (text.length() >= BLOCK_SIZE) {
+            writeText();
+        }
+        return this;
+    }
+
+    /**
+     * @return Количество выведенных элементов
+     */
+    public long getElements() {
+        return elements;
+    }
+
+    private void writeText() {
+        if (text.length() == 0) {
+            return;
+        }
+        try {
+            int length = text.length();
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            text.getChars(0, length, chars, 0);
+            int capacity = (int) (Math.min(length, BLOCK_SIZE) * encoder.maxBytesPerChar()) + 16;
+            if (bytes.capacity() < capacity) {
+                bytes = ByteBuffer.allocate(capacity);
+            }
+            CharBuffer block = CharBuffer.wrap(chars, 0, length);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(block, bytes, true);
+                if (result.isOverflow()) {
+                    writeBytes();
+                }
+            } while (result.isOverflow());
+            while (encoder.flush(bytes).isOverflow()) {
+                writeBytes();
+            }
+            writeBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        text.setLength(0);
+    }
+
+    private void writeBytes() throws IOException {
+        out.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
+    }
+
+    /**
+     * Записывает накопленные строки и сбрасывает поток
+     */
+    public void flush() {
+        writeText();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Записывает остаток; сам поток не закрывается
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+}
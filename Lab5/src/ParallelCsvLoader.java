@@ -0,0 +1,238 @@
+package src;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Параллельная загрузка CSV-дампа: файл отображается в память, делится на куски
+ * по границам строк, куски разбираются в ForkJoinPool, а результат сортируется один раз
+ * и собирается в коллекцию без поэлементных вставок.
+ * Результат (включая сообщения о пропущенных строках) совпадает с последовательной загрузкой
+ */
+public class ParallelCsvLoader implements SnapshotReader {
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 1 << 26;
+    private static final int BOUNDARY_PROBE = 4096;
+
+    private final int threads;
+    private LocalDateTime initDate;
+    private long sequence;
+
+    /**
+     * @param threads Количество потоков разбора
+     */
+    public ParallelCsvLoader(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be greater than 0");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @return Дата инициализации из заголовка последнего загруженного файла или null, если файл пуст
+     */
+    @Override
+    public LocalDateTime getInitDate() {
+        return initDate;
+    }
+
+    /**
+     * @return Номер последней записи журнала, вошедшей в загруженный дамп
+     */
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @param fileName Имя файла с CSV-дампом коллекции
+     * @return Коллекция, загруженная из файла
+     */
+    @Override
+    public VehicleCollection load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = nextLineStart(channel, 0, size);
+            initDate = null;
+            sequence = 0;
+            if (headerEnd > 0) {
+                byte[] header = read(channel, 0, (int) Math.min(headerEnd, BOUNDARY_PROBE));
+                int length = header.length > 0 && header[header.length - 1] == '\n' ? header.length - 1 : header.length;
+                VehicleCsvParser parser = new VehicleCsvParser();
+                initDate = parser.parseHeader(header, 0, length, 1);
+                sequence = parser.getHeaderSequence();
+            }
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, (size - headerEnd) / (threads * 4L) + 1));
+            long start = headerEnd;
+            while (start < size) {
+                long end = nextLineStart(channel, Math.min(start + chunkSize, size), size);
+                tasks.add(new ChunkTask(channel, start, end));
+                start = end;
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                return pool.submit(() -> merge(tasks)).join();
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Выполняется внутри пула: разбирает куски, проверяет дубликаты и собирает коллекцию
+     */
+    private VehicleCollection merge(List<ChunkTask> tasks) {
+        ForkJoinTask.invokeAll(tasks);
+
+        int total = 0;
+        for (ChunkTask task : tasks) {
+            total += task.join().count;
+        }
+        Vehicle[] all = new Vehicle[total];
+        long[] lines = new long[total];
+        long lineOffset = 1; // строка заголовка
+        int k = 0;
+        for (ChunkTask task : tasks) {
+            Chunk chunk = task.join();
+            for (CsvFormatException error : chunk.errors) {
+                System.out.println("Строка пропущена: " + new CsvFormatException(lineOffset + error.getLine(), error.getReason()).getMessage());
+            }
+            for (int i = 0; i < chunk.count; i++) {
+                all[k] = chunk.vehicles[i];
+                lines[k++] = lineOffset + chunk.lines[i];
+            }
+            lineOffset += chunk.lineCount;
+        }
+
+        Vehicle[] sorted = all.clone();
+        Arrays.parallelSort(sorted);
+        if (!hasDuplicateIds(all)) {
+            return VehicleCollection.fromSorted(sorted);
+        }
+        // Редкий случай: повторяются id.
+        // Вставляем в порядке файла, чтобы пропуски совпали с последовательной загрузкой
+        VehicleCollection vehicles = new VehicleCollection();
+        for (int i = 0; i < all.length; i++) {
+            if (!vehicles.add(all[i])) {
+                System.out.println("Строка " + lines[i] + ": элемент с id " + all[i].getId() + " пропущен как дубликат");
+            }
+        }
+        return vehicles;
+    }
+
+    private static boolean hasDuplicateIds(Vehicle[] all) {
+        long[] ids = new long[all.length];
+        for (int i = 0; i < all.length; i++) {
+            ids[i] = all[i].getId();
+        }
+        Arrays.parallelSort(ids);
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i - 1] == ids[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Позиция начала строки, следующей за позицией from (или size)
+     */
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(BOUNDARY_PROBE);
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // дочитываем до конца
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Элементы одного куска в порядке файла
+     */
+    private static class Chunk {
+        Vehicle[] vehicles = new Vehicle[1024];
+        int[] lines = new int[1024];
+        int count;
+        int lineCount;
+        List<CsvFormatException> errors = new ArrayList<>();
+
+        void add(Vehicle vehicle, int line) {
+            if (count == vehicles.length) {
+                vehicles = Arrays.copyOf(vehicles, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            vehicles[count] = vehicle;
+            lines[count++] = line;
+        }
+    }
+
+    private static class ChunkTask extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Chunk compute() {
+            Chunk chunk = new Chunk();
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                VehicleCsvReader reader = new VehicleCsvReader(new ByteBufferInputStream(buffer));
+                while (true) {
+                    try {
+                        Vehicle vehicle = reader.next();
+                        if (vehicle == null) {
+                            break;
+                        }
+                        chunk.add(vehicle, (int) reader.getLine());
+                    } catch (CsvFormatException e) {
+                        chunk.errors.add(e);
+                    }
+                }
+                chunk.lineCount = (int) reader.getLine();
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            return chunk;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+/**
+ * Параллельное выполнение просмотров коллекции: диапазон делится на куски, куски обрабатываются
+ * в ForkJoinPool, а частичные результаты объединяются в порядке кусков, поэтому результат не зависит
+ * от количества потоков и совпадает с последовательным. Небольшие диапазоны (меньше порога)
+ * обрабатываются в вызывающем потоке одним куском
+ */
+public final class ParallelScan {
+    static final ParallelScan SEQUENTIAL = new ParallelScan(null, false, Integer.MAX_VALUE);
+    private static final int DEFAULT_THRESHOLD = 100_000;
+    // Кусков больше, чем потоков, чтобы потоки, закончившие раньше, забирали оставшиеся
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final boolean dedicated;
+    private final int threshold;
+
+    /**
+     * @param pool Пул для кусков или null - всегда выполнять последовательно
+     * @param dedicated true, если пул создан для этого объекта и закрывается вместе с ним
+     * @param threshold Наименьший размер диапазона, который обрабатывается параллельно
+     */
+    private ParallelScan(ForkJoinPool pool, boolean dedicated, int threshold) {
+        this.pool = pool;
+        this.dedicated = dedicated;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param threads Количество потоков собственного пула (1 - последовательно)
+     */
+    public static ParallelScan withThreads(int threads, int threshold) {
+        return threads <= 1 ? SEQUENTIAL : new ParallelScan(new ForkJoinPool(threads), true, threshold);
+    }
+
+    /**
+     * Использует общий пул ForkJoinPool.commonPool()
+     */
+    public static ParallelScan common(int threshold) {
+        return new ParallelScan(ForkJoinPool.commonPool(), false, threshold);
+    }
+
+    /**
+     * Настройка из переменных окружения: SCAN_THREADS - количество потоков собственного пула или common
+     * для общего пула (по умолчанию просмотры последовательные), SCAN_THRESHOLD - наименьшее количество
+     * элементов для параллельного просмотра (по умолчанию 100000)
+     */
+    public static ParallelScan fromEnvironment() {
+        int threshold = DEFAULT_THRESHOLD;
+        String value = System.getenv("SCAN_THRESHOLD");
+        if (value != null && !value.isBlank()) {
+            try {
+                threshold = Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Некорректное значение SCAN_THRESHOLD: " + value);
+            }
+        }
+        value = System.getenv("SCAN_THREADS");
+        if (value == null || value.isBlank()) {
+            return SEQUENTIAL;
+        }
+        if (value.trim().equals("common")) {
+            return common(threshold);
+        }
+        try {
+            return withThreads(Integer.parseInt(value.trim()), threshold);
+        } catch (NumberFormatException e) {
+            System.out.println("Некорректное значение SCAN_THREADS: " + value);
+            return SEQUENTIAL;
+        }
+    }
+
+    /**
+     * @return true, если просмотр size элементов будет параллельным
+     */
+    public boolean isParallel(int size) {
+        return pool != null && size >= threshold;
+    }
+
+    /**
+     * @return Количество потоков пула (1 - просмотры последовательные)
+     */
+    public int parallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Обработчик куска [from, to)
+     */
+    interface Chunk<R> {
+        R apply(int from, int to);
+    }
+
+    /**
+     * Делит [from, to) на куски и обрабатывает их параллельно, если size не меньше порога
+     * @param size Количество элементов, которые просматриваются в диапазоне (для сравнения с порогом)
+     * @return Результаты кусков в порядке возрастания их границ
+     */
+    <R> List<R> split(int size, int from, int to, Chunk<R> chunk) {
+        List<R> results = new ArrayList<>();
+        int chunks = Math.min(to - from, parallelism() * CHUNKS_PER_THREAD);
+        if (!isParallel(size) || chunks <= 1) {
+            results.add(chunk.apply(from, to));
+            return results;
+        }
+        List<ForkJoinTask<R>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int chunkFrom = from + (int) ((long) (to - from) * i / chunks);
+            int chunkTo = from + (int) ((long) (to - from) * (i + 1) / chunks);
+            tasks.add(ForkJoinTask.adapt(() -> chunk.apply(chunkFrom, chunkTo)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        for (ForkJoinTask<R> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+
+    /**
+     * @return Элементы elements[from, to), прошедшие filter, в порядке массива
+     */
+    Vehicle[] filter(Vehicle[] elements, int from, int to, Predicate<Vehicle> filter) {
+        return concat(split(to - from, from, to, (chunkFrom, chunkTo) -> {
+            Vehicle[] matches = new Vehicle[16];
+            int count = 0;
+            for (int i = chunkFrom; i < chunkTo; i++) {
+                if (filter.test(elements[i])) {
+                    if (count == matches.length) {
+                        matches = Arrays.copyOf(matches, count * 2);
+                    }
+                    matches[count++] = elements[i];
+                }
+            }
+            return Arrays.copyOf(matches, count);
+        }));
+    }
+
+    /**
+     * @return Массивы parts, записанные подряд
+     */
+    static Vehicle[] concat(List<Vehicle[]> parts) {
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int length = 0;
+        for (Vehicle[] part : parts) {
+            length += part.length;
+        }
+        Vehicle[] result = new Vehicle[length];
+        int position = 0;
+        for (Vehicle[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+
+    /**
+     * Останавливает собственный пул; общий пул не трогает
+     */
+    void shutdown() {
+        if (dedicated) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package src;
+
+/**
+ * Персистентное декартово дерево счётчиков по мощности: ключ узла - значение мощности
+ * (Vehicle.NO_ENGINE_POWER для элементов без мощности), в узле хранится количество элементов с этой мощностью.
+ * Изменение счётчика копирует путь от корня до ключа (O(log d) для d различных мощностей), остальные узлы
+ * общие у старой и новой версии. Приоритет узла вычисляется из ключа, поэтому форма дерева зависит только
+ * от набора ключей. Пустое дерево - null
+ */
+final class PowerCountTreap {
+    private PowerCountTreap() {
+    }
+
+    static final class Node {
+        final long key;
+        final int count;
+        final int priority;
+        // Меняются только при построении в build, до того как дерево станет доступно другим потокам
+        Node left;
+        Node right;
+        // Количество ключей в поддереве
+        int size;
+
+        private Node(long key, int count, int priority, Node left, Node right) {
+            this.key = key;
+            this.count = count;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        private Node withChildren(Node left, Node right) {
+            return new Node(key, count, priority, left, right);
+        }
+    }
+
+    /**
+     * Обработчик счётчиков в порядке возрастания мощности
+     */
+    interface Visitor {
+        void visit(long enginePower, int count);
+    }
+
+    private static int priority(long key) {
+        return LongObjectMap.mix(key);
+    }
+
+    /**
+     * @return Количество различных мощностей
+     */
+    static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Строит дерево за линейное время (построение декартова дерева стеком)
+     * @param sorted Элементы в порядке compareTo (мощности не убывают)
+     */
+    static Node build(Vehicle[] sorted) {
+        Node[] stack = new Node[Math.max(1, sorted.length)];
+        int top = 0;
+        int i = 0;
+        while (i < sorted.length) {
+            long key = sorted[i].getEnginePowerValue();
+            int start = i;
+            while (i < sorted.length && sorted[i].getEnginePowerValue() == key) {
+                i++;
+            }
+            Node node = new Node(key, i - start, priority(key), null, null);
+            Node last = null;
+            while (top > 0 && stack[top - 1].priority < node.priority) {
+                last = stack[--top];
+            }
+            node.left = last;
+            if (top > 0) {
+                stack[top - 1].right = node;
+            }
+            stack[top++] = node;
+        }
+        if (top == 0) {
+            return null;
+        }
+        updateSizes(stack[0]);
+        return stack[0];
+    }
+
+    private static int updateSizes(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        node.size = 1 + updateSizes(node.left) + updateSizes(node.right);
+        return node.size;
+    }
+
+    /**
+     * @return Количество элементов с мощностью key (0, если таких нет)
+     */
+    static int count(Node node, long key) {
+        while (node != null) {
+            if (key == node.key) {
+                return node.count;
+            }
+            node = key < node.key ? node.left : node.right;
+        }
+        return 0;
+    }
+
+    /**
+     * @param delta Изменение счётчика; счётчик не должен стать отрицательным
+     * @return Новая версия дерева, в которой счётчик key изменён на delta
+     */
+    static Node add(Node node, long key, int delta) {
+        return delta == 0 ? node : withCount(node, key, count(node, key) + delta);
+    }
+
+    /**
+     * @return Новая версия дерева, в которой счётчик key равен count (0 - ключ удаляется)
+     */
+    static Node withCount(Node node, long key, int count) {
+        if (count(node, key) == 0) {
+            return count == 0 ? node : insert(node, key, count, priority(key));
+        }
+        return replace(node, key, count);
+    }
+
+    private static Node insert(Node node, long key, int count, int priority) {
+        if (node == null || priority > node.priority) {
+            Node[] parts = split(node, key);
+            return new Node(key, count, priority, parts[0], parts[1]);
+        }
+        if (key < node.key) {
+            return node.withChildren(insert(node.left, key, count, priority), node.right);
+        }
+        return node.withChildren(node.left, insert(node.right, key, count, priority));
+    }
+
+    /**
+     * @param key Ключ, который есть в дереве
+     */
+    private static Node replace(Node node, long key, int count) {
+        if (key == node.key) {
+            return count == 0 ? merge(node.left, node.right) : new Node(key, count, node.priority, node.left, node.right);
+        }
+        if (key < node.key) {
+            return node.withChildren(replace(node.left, key, count), node.right);
+        }
+        return node.withChildren(node.left, replace(node.right, key, count));
+    }
+
+    /**
+     * @return Пара деревьев: ключи меньше key и ключи не меньше key
+     */
+    static Node[] split(Node node, long key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (node.key < key) {
+            Node[] parts = split(node.right, key);
+            parts[0] = node.withChildren(node.left, parts[0]);
+            return parts;
+        }
+        Node[] parts = split(node.left, key);
+        parts[1] = node.withChildren(parts[1], node.right);
+        return parts;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority >= right.priority) {
+            return left.withChildren(left.left, merge(left.right, right));
+        }
+        return right.withChildren(merge(left, right.left), right.right);
+    }
+
+    /**
+     * Передаёт visitor мощности и счётчики по возрастанию мощности: O(d)
+     */
+    static void forEach(Node node, Visitor visitor) {
+        while (node != null) {
+            forEach(node.left, visitor);
+            visitor.visit(node.key, node.count);
+            node = node.right;
+        }
+    }
+
+    /**
+     * @return Мощности по возрастанию
+     */
+    static long[] keys(Node node) {
+        long[] keys = new long[size(node)];
+        int[] filled = new int[1];
+        forEach(node, (key, count) -> keys[filled[0]++] = key);
+        return keys;
+    }
+}
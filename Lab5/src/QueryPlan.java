@@ -0,0 +1,327 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+/**
+ * План выполнения VehicleQuery на версии коллекции: способ доступа с наименьшей оценкой количества
+ * просматриваемых элементов (поиск по id, диапазон в порядке мощности, индекс по количеству колёс,
+ * индекс по координатам, битовые карты типов или полный проход) и остаточный фильтр по условиям, которые индекс не выполняет.
+ * Оценки для индексов точные или верхние и считаются за O(log n) по размерам поддеревьев
+ * (для битовых карт - точное количество, посчитанное по словам карт).
+ * Результат всегда в порядке compareTo: индексы, которые выдают элементы в другом порядке,
+ * сначала собирают подходящие элементы, затем они сортируются. Полный проход, диапазон мощности и битовые карты
+ * на больших версиях выполняются параллельно (ParallelScan), с тем же результатом
+ */
+final class QueryPlan {
+    // Больше полос индекс координат не просматривает ради оценки: такой запрос не избирателен по y
+    private static final int MAX_ESTIMATED_ROWS = 4096;
+
+    private enum Access {
+        EMPTY("empty result (contradictory conditions)", 0, true),
+        ID("id lookup", VehicleQuery.ID, true),
+        POWER("engine power range in collection order", VehicleQuery.POWER, true),
+        WHEELS("number of wheels index", VehicleQuery.WHEELS, true),
+        BOX("coordinates grid index", VehicleQuery.X | VehicleQuery.Y, false),
+        BITMAP("type bitmaps", VehicleQuery.TYPE | VehicleQuery.FUEL_TYPE, false),
+        SCAN("full scan", 0, true);
+
+        private final String title;
+        private final int pushed;
+        private final boolean ordered;
+
+        Access(String title, int pushed, boolean ordered) {
+            this.title = title;
+            this.pushed = pushed;
+            this.ordered = ordered;
+        }
+    }
+
+    private final VehicleQuery query;
+    private final Access access;
+    private final int estimate;
+    private final VehicleQuery residual;
+    private final List<String> candidates;
+    private final int[] wheelKeys;
+    private final BitmapQuery bitmapQuery;
+
+    private QueryPlan(VehicleQuery query, Access access, int estimate, List<String> candidates, int[] wheelKeys,
+                      BitmapQuery bitmapQuery) {
+        this.query = query;
+        this.access = access;
+        this.estimate = estimate;
+        this.residual = query.without(access.pushed);
+        this.candidates = candidates;
+        this.wheelKeys = wheelKeys;
+        this.bitmapQuery = bitmapQuery;
+    }
+
+    /**
+     * Выбирает способ доступа по оценкам для snapshot
+     */
+    static QueryPlan choose(VehicleQuery query, VehicleSnapshot snapshot) {
+        return choose(query, snapshot, null);
+    }
+
+    /**
+     * @return Планы со всеми способами доступа, применимыми к query, независимо от оценок
+     * (все они дают один и тот же результат); для противоречивых условий - один план с пустым результатом
+     */
+    static List<QueryPlan> alternatives(VehicleQuery query, VehicleSnapshot snapshot) {
+        List<QueryPlan> plans = new ArrayList<>();
+        for (Access access : Access.values()) {
+            QueryPlan plan = choose(query, snapshot, access);
+            if (plan.access == access) {
+                plans.add(plan);
+            }
+        }
+        return plans;
+    }
+
+    /**
+     * @param forced Способ доступа, который надо выбрать, если он применим; null - выбор по оценкам
+     */
+    private static QueryPlan choose(VehicleQuery query, VehicleSnapshot snapshot, Access forced) {
+        List<String> candidates = new ArrayList<>();
+        if (query.isEmpty()) {
+            return new QueryPlan(query, Access.EMPTY, 0, candidates, null, null);
+        }
+        Access best = Access.SCAN;
+        long bestCost = snapshot.size();
+        int bestEstimate = snapshot.size();
+        candidates.add(Access.SCAN.title + ": " + snapshot.size());
+
+        if ((query.fields & VehicleQuery.ID) != 0 && query.idFrom == query.idTo && (forced == null || forced == Access.ID)) {
+            candidates.add(Access.ID.title + ": 1");
+            return new QueryPlan(query, Access.ID, 1, candidates, null, null);
+        }
+        if ((query.fields & VehicleQuery.POWER) != 0) {
+            int estimate = snapshot.countWithEnginePowerBetween(query.powerFrom, query.powerTo);
+            candidates.add(Access.POWER.title + ": " + estimate);
+            if (forced == null ? cost(true, estimate) < bestCost : forced == Access.POWER) {
+                best = Access.POWER;
+                bestCost = cost(true, estimate);
+                bestEstimate = estimate;
+            }
+        }
+        int[] wheelKeys = null;
+        if ((query.fields & VehicleQuery.WHEELS) != 0) {
+            wheelKeys = snapshot.wheelKeysBetween(query.wheelsFrom, query.wheelsTo);
+            int estimate = 0;
+            for (int key : wheelKeys) {
+                estimate += snapshot.withNumberOfWheels(key).size();
+            }
+            // Элементы нескольких групп придётся сортировать
+            boolean ordered = wheelKeys.length <= 1;
+            candidates.add(Access.WHEELS.title + ": " + estimate + (ordered ? "" : " (+ sort)"));
+            if (forced == null ? cost(ordered, estimate) < bestCost : forced == Access.WHEELS) {
+                best = Access.WHEELS;
+                bestCost = cost(ordered, estimate);
+                bestEstimate = estimate;
+            }
+        }
+        if ((query.fields & (VehicleQuery.X | VehicleQuery.Y)) != 0) {
+            int estimate = snapshot.countInBox(query.xFrom, query.xTo, query.yFrom, query.yTo, MAX_ESTIMATED_ROWS);
+            candidates.add(Access.BOX.title + ": " + (estimate < 0 ? "too many grid rows" : "at most " + estimate + " (+ sort)"));
+            if (forced == null ? estimate >= 0 && cost(false, estimate) < bestCost : forced == Access.BOX) {
+                best = Access.BOX;
+                bestCost = cost(false, estimate);
+                bestEstimate = estimate;
+            }
+        }
+        BitmapQuery bitmapQuery = null;
+        if ((query.fields & (VehicleQuery.TYPE | VehicleQuery.FUEL_TYPE)) != 0) {
+            bitmapQuery = BitmapQuery.of(query.typeMask, query.fuelTypeMask);
+            int estimate = bitmapQuery.count(snapshot);
+            candidates.add(Access.BITMAP.title + ": " + estimate + " (+ sort)");
+            if (forced == null ? cost(false, estimate) < bestCost : forced == Access.BITMAP) {
+                best = Access.BITMAP;
+                bestCost = cost(false, estimate);
+                bestEstimate = estimate;
+            }
+        }
+        return new QueryPlan(query, best, bestEstimate, candidates, wheelKeys, bitmapQuery);
+    }
+
+    /**
+     * Стоимость - количество просматриваемых элементов; неупорядоченный доступ платит ещё за сортировку
+     */
+    private static long cost(boolean ordered, int estimate) {
+        return ordered ? estimate : 2L * estimate;
+    }
+
+    /**
+     * @return Строки описания плана
+     */
+    List<String> explain(VehicleSnapshot snapshot, ParallelScan scan) {
+        List<String> lines = new ArrayList<>();
+        lines.add("Conditions: " + query);
+        StringBuilder line = new StringBuilder("Access: ").append(access.title);
+        if (access != Access.EMPTY && access != Access.SCAN) {
+            line.append(" (").append(query.without(~access.pushed)).append(')');
+        }
+        lines.add(line.append(", estimated rows: ").append(estimate).toString());
+        lines.add("Residual filter: " + residual);
+        lines.add("Order: " + (access.ordered && (access != Access.WHEELS || wheelKeys.length <= 1)
+                ? "collection order, no sort" : "matches sorted into collection order"));
+        lines.add("Execution: " + (parallel(snapshot, scan) ? "parallel, " + scan.parallelism() + " threads" : "sequential"));
+        if (!candidates.isEmpty()) {
+            lines.add("Candidates: " + String.join("; ", candidates));
+        }
+        return lines;
+    }
+
+    /**
+     * @return true, если способ доступа просматривает достаточно элементов для параллельного выполнения
+     */
+    private boolean parallel(VehicleSnapshot snapshot, ParallelScan scan) {
+        switch (access) {
+            case SCAN:
+                return scan.isParallel(snapshot.size());
+            case POWER:
+            case BITMAP:
+                return scan.isParallel(estimate);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param byId Поиск текущего элемента по id (индекс по id есть только у коллекции, не у версии)
+     * @param scan Выполнение больших просмотров
+     * @return Подходящие элементы snapshot в порядке compareTo
+     */
+    Iterator<Vehicle> execute(VehicleSnapshot snapshot, LongFunction<Vehicle> byId, ParallelScan scan) {
+        if (parallel(snapshot, scan)) {
+            return executeParallel(snapshot, scan);
+        }
+        switch (access) {
+            case EMPTY:
+                return Collections.emptyIterator();
+            case ID: {
+                Vehicle vehicle = byId.apply(query.idFrom);
+                boolean found = vehicle != null && snapshot.contains(vehicle) && residual.matches(vehicle);
+                return found ? Collections.singletonList(vehicle).iterator() : Collections.emptyIterator();
+            }
+            case POWER:
+                return new Filtered(snapshot.withEnginePowerBetween(query.powerFrom, query.powerTo), residual);
+            case WHEELS: {
+                if (wheelKeys.length == 1) {
+                    return new Filtered(snapshot.withNumberOfWheels(wheelKeys[0], 0), residual);
+                }
+                Matches matches = new Matches(residual);
+                for (int key : wheelKeys) {
+                    for (Vehicle vehicle : snapshot.withNumberOfWheels(key)) {
+                        matches.visit(vehicle, 0, 0);
+                    }
+                }
+                return matches.sorted();
+            }
+            case BOX: {
+                Matches matches = new Matches(residual);
+                snapshot.forEachInBox(query.xFrom, query.xTo, query.yFrom, query.yTo, matches);
+                return matches.sorted();
+            }
+            case BITMAP: {
+                Matches matches = new Matches(residual);
+                bitmapQuery.forEach(snapshot, vehicle -> matches.visit(vehicle, 0, 0));
+                return matches.sorted();
+            }
+            default:
+                return new Filtered(snapshot.iterator(), residual);
+        }
+    }
+
+    private Iterator<Vehicle> executeParallel(VehicleSnapshot snapshot, ParallelScan scan) {
+        Vehicle[] found;
+        switch (access) {
+            case POWER: {
+                int from = snapshot.enginePowerRank(query.powerFrom);
+                found = snapshot.select(from, from + estimate, scan, residual::matches);
+                break;
+            }
+            case BITMAP:
+                found = bitmapQuery.select(snapshot, scan, residual::matches);
+                Arrays.sort(found);
+                break;
+            default:
+                found = scan.filter(snapshot.toArray(scan), 0, snapshot.size(), residual::matches);
+        }
+        return Arrays.asList(found).iterator();
+    }
+
+    /**
+     * Элементы источника, прошедшие фильтр; без промежуточных коллекций
+     */
+    private static final class Filtered implements Iterator<Vehicle> {
+        private final Iterator<Vehicle> source;
+        private final VehicleQuery filter;
+        private Vehicle next;
+
+        Filtered(Iterator<Vehicle> source, VehicleQuery filter) {
+            this.source = source;
+            this.filter = filter;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (source.hasNext()) {
+                Vehicle vehicle = source.next();
+                if (filter.matches(vehicle)) {
+                    next = vehicle;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Vehicle next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Vehicle vehicle = next;
+            advance();
+            return vehicle;
+        }
+    }
+
+    /**
+     * Подходящие элементы неупорядоченного индекса
+     */
+    private static final class Matches implements SpatialTreap.Visitor {
+        private final VehicleQuery filter;
+        private Vehicle[] vehicles = new Vehicle[16];
+        private int count;
+
+        Matches(VehicleQuery filter) {
+            this.filter = filter;
+        }
+
+        @Override
+        public void visit(Vehicle vehicle, int x, int y) {
+            if (!filter.matches(vehicle)) {
+                return;
+            }
+            if (count == vehicles.length) {
+                vehicles = Arrays.copyOf(vehicles, count * 2);
+            }
+            vehicles[count++] = vehicle;
+        }
+
+        Iterator<Vehicle> sorted() {
+            Arrays.sort(vehicles, 0, count);
+            return Arrays.asList(vehicles).subList(0, count).iterator();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package src;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Построчная загрузка CSV-дампа в одном потоке
+ */
+public class SequentialCsvLoader implements SnapshotReader {
+    private LocalDateTime initDate;
+    private long sequence;
+
+    @Override
+    public LocalDateTime getInitDate() {
+        return initDate;
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public VehicleCollection load(String fileName) throws IOException {
+        VehicleCollection vehicles = new VehicleCollection();
+        try (VehicleCsvReader reader = new VehicleCsvReader(new FileInputStream(fileName))) {
+            initDate = reader.readHeader();
+            while (true) {
+                try {
+                    Vehicle vehicle = reader.next();
+                    if (vehicle == null) {
+                        break;
+                    }
+                    if (!vehicles.add(vehicle)) {
+                        System.out.println("Строка " + reader.getLine() + ": элемент с id " + vehicle.getId() + " пропущен как дубликат");
+                    }
+                } catch (CsvFormatException e) {
+                    System.out.println("Строка пропущена: " + e.getMessage());
+                }
+            }
+            sequence = reader.getSequence();
+        }
+        return vehicles;
+    }
+}
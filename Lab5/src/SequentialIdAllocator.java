@@ -0,0 +1,127 @@
+package src;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Выдаёт сначала наименьший освободившийся id из битовой карты, иначе следующий после максимального
+ * выданного (high-water mark, без блокировки). Поиск свободного id идёт с курсора - первого слова карты,
+ * в котором могут быть свободные id, поэтому при выдаче подряд каждое слово просматривается один раз
+ * (в среднем O(1) на id). Освобождение id ниже курсора возвращает курсор к нему; после выдачи этого id
+ * следующий поиск снова проходит пустые слова до ближайшего свободного id (по 64 id за шаг)
+ */
+public class SequentialIdAllocator implements IdAllocator {
+    // Свободные id выше этого значения не отслеживаются и не используются повторно
+    private static final long MAX_TRACKED_ID = Integer.MAX_VALUE - 1;
+    // Более длинные пропуски в нумерации не запоминаются, чтобы не раздувать битовую карту
+    private static final long MAX_TRACKED_GAP = 1L << 24;
+
+    private final AtomicLong high = new AtomicLong();
+    // Бит id - свободный id; id 0 не выдаётся
+    private long[] free = new long[0];
+    // В словах free[0 .. lowestWord) свободных id нет
+    private int lowestWord;
+    private volatile int freeCount;
+
+    @Override
+    public long next() {
+        if (freeCount > 0) {
+            synchronized (this) {
+                for (; lowestWord < free.length; lowestWord++) {
+                    long word = free[lowestWord];
+                    if (word != 0) {
+                        free[lowestWord] = word & (word - 1);
+                        freeCount--;
+                        return ((long) lowestWord << 6) + Long.numberOfTrailingZeros(word);
+                    }
+                }
+            }
+        }
+        return high.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void reserve(long id) {
+        if (id <= 0) {
+            return;
+        }
+        long current = high.get();
+        while (id > current) {
+            if (high.compareAndSet(current, id)) {
+                markFree(current + 1, id);
+                return;
+            }
+            current = high.get();
+        }
+        if (isFree(id)) {
+            free[(int) (id >>> 6)] &= ~(1L << id);
+            freeCount--;
+        }
+    }
+
+    @Override
+    public synchronized void release(long id) {
+        if (id > 0 && id <= MAX_TRACKED_ID && id <= high.get() && !isFree(id)) {
+            int word = (int) (id >>> 6);
+            ensureWords(word + 1);
+            free[word] |= 1L << id;
+            lowestWord = Math.min(lowestWord, word);
+            freeCount++;
+        }
+    }
+
+    @Override
+    public synchronized void seed(long[] ids) {
+        free = new long[0];
+        lowestWord = 0;
+        freeCount = 0;
+        long max = 0;
+        for (long id : ids) {
+            max = Math.max(max, id);
+        }
+        high.set(max);
+        markFree(1, max + 1);
+        for (long id : ids) {
+            if (id > 0 && isFree(id)) {
+                free[(int) (id >>> 6)] &= ~(1L << id);
+                freeCount--;
+            }
+        }
+    }
+
+    private boolean isFree(long id) {
+        int word = (int) (id >>> 6);
+        return id <= MAX_TRACKED_ID && word < free.length && (free[word] & (1L << id)) != 0;
+    }
+
+    private void ensureWords(int words) {
+        if (words > free.length) {
+            free = Arrays.copyOf(free, Math.max(words, free.length * 2));
+        }
+    }
+
+    /**
+     * Отмечает свободными id из полуинтервала [from, to); они ещё не отмечены (выше прежнего high)
+     */
+    private void markFree(long from, long to) {
+        long end = Math.min(to, MAX_TRACKED_ID + 1);
+        if (from >= end || end - from > MAX_TRACKED_GAP) {
+            return;
+        }
+        int first = (int) (from >>> 6);
+        int last = (int) ((end - 1) >>> 6);
+        ensureWords(last + 1);
+        // Сдвиги long берут младшие 6 бит: -1L << from - биты от from в слове, -1L >>> -end - биты до end
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -end;
+        if (first == last) {
+            free[first] |= firstMask & lastMask;
+        } else {
+            free[first] |= firstMask;
+            Arrays.fill(free, first + 1, last, -1L);
+            free[last] |= lastMask;
+        }
+        lowestWord = Math.min(lowestWord, first);
+        freeCount += (int) (end - from);
+    }
+}
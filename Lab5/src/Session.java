@@ -0,0 +1,164 @@
+package src;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Сеанс оператора: поток команд, поток ответов и общее хранилище, с которым работают команды.
+ * Консольный сеанс работает с System.in и System.out, сетевой - с сокетом клиента.
+ * Команда exit в сетевом сеансе завершает только этот сеанс
+ */
+public class Session {
+    // Команды короткие, поэтому небольшой буфер ввода, чтобы простаивающий сеанс занимал мало памяти
+    private static final int INPUT_BUFFER_SIZE = 1024;
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final Charset charset;
+    private final VehicleStore store;
+    private final boolean remote;
+    private volatile boolean closed;
+    // Скрипты, которые сейчас выполняются в сеансе (вложенные execute_script)
+    private final Set<Path> scripts = new HashSet<>();
+    // Элементы, выведенные или изменённые командами сеанса (для метрик)
+    private long touched;
+
+    /**
+     * @param in Поток команд и данных элементов
+     * @param out Поток ответов. Буферизованный вывод сбрасывается перед каждым чтением из in,
+     *            поэтому подсказки без перевода строки доходят до клиента до того, как сеанс начнёт ждать ввода
+     * @param charset Кодировка текста в out
+     * @param store Хранилище коллекции, общее для всех сеансов
+     * @param remote true для сеанса клиента сервера
+     */
+    public Session(Reader in, PrintStream out, Charset charset, VehicleStore store, boolean remote) {
+        this(new BufferedReader(in, INPUT_BUFFER_SIZE) {
+            @Override
+            public String readLine() throws IOException {
+                out.flush();
+                return super.readLine();
+            }
+
+            @Override
+            public void close() throws IOException {
+                // У сокета закрытие потока ввода закрывает и соединение
+                out.flush();
+                super.close();
+            }
+        }, out, charset, store, remote);
+    }
+
+    /**
+     * Сеанс клиента сервера. Вывод сбрасывается перед чтением из in, когда прочитанные строки закончились.
+     * Строки читают BufferedReader и InputStreamReader без подклассов: на Java 21+ они ждут ввода под внутренней
+     * блокировкой, а не synchronized, поэтому виртуальный поток сеанса, ждущий ввода, освобождает поток-носитель
+     * @param in Поток команд и данных элементов в кодировке charset
+     * @see #Session(Reader, PrintStream, Charset, VehicleStore, boolean)
+     */
+    public Session(InputStream in, PrintStream out, Charset charset, VehicleStore store, boolean remote) {
+        this(new BufferedReader(new InputStreamReader(new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                out.flush();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                out.flush();
+                return super.read(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                // У сокета закрытие потока ввода закрывает и соединение
+                out.flush();
+                super.close();
+            }
+        }, charset), INPUT_BUFFER_SIZE), out, charset, store, remote);
+    }
+
+    private Session(BufferedReader in, PrintStream out, Charset charset, VehicleStore store, boolean remote) {
+        this.in = in;
+        this.out = out;
+        this.charset = charset;
+        this.store = store;
+        this.remote = remote;
+    }
+
+    public BufferedReader getIn() {
+        return in;
+    }
+
+    public PrintStream getOut() {
+        return out;
+    }
+
+    /**
+     * @return Новый буферизованный вывод в поток сеанса для одной команды (закрывается по её окончании).
+     *         Выведенные элементы учитываются в getTouched
+     */
+    public OutputSink newSink() {
+        return new OutputSink(out, charset) {
+            @Override
+            public void close() {
+                super.close();
+                touched += getElements();
+            }
+        };
+    }
+
+    /**
+     * Учитывает элементы, изменённые командой
+     */
+    public void touch(long elements) {
+        touched += elements;
+    }
+
+    /**
+     * @return Элементы, выведенные или изменённые командами сеанса с его начала
+     */
+    public long getTouched() {
+        return touched;
+    }
+
+    public VehicleStore getStore() {
+        return store;
+    }
+
+    public boolean isRemote() {
+        return remote;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Отмечает сеанс завершённым: цикл команд выйдет после текущей команды
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Отмечает начало выполнения скрипта
+     * @return false, если скрипт уже выполняется в этом сеансе (рекурсивный вызов)
+     */
+    public boolean enterScript(Path script) {
+        return scripts.add(script);
+    }
+
+    public void exitScript(Path script) {
+        scripts.remove(script);
+    }
+}
@@ -0,0 +1,34 @@
+package src;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Исполнитель сеансов сервера команд для Java 17: платформенные потоки с уменьшенным стеком.
+ * В многоверсионном jar (сборка на JDK 21+, профиль java21) на Java 21+ вместо этого класса загружается
+ * версия из ../java21, которая запускает каждый сеанс в виртуальном потоке
+ */
+final class SessionExecutors {
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private SessionExecutors() {
+    }
+
+    /**
+     * @return Исполнитель, запускающий каждый сеанс в новом потоке
+     */
+    static ExecutorService newExecutor() {
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(null, task, "session", PLATFORM_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return true, если сеансы выполняются в виртуальных потоках
+     */
+    static boolean isVirtual() {
+        return false;
+    }
+}
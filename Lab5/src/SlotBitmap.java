@@ -0,0 +1,125 @@
+package src;
+
+/**
+ * Неизменяемая битовая карта над номерами слотов элементов: листы по 64 слова long (4096 слотов)
+ * в персистентном дереве SlotTrie. Установка или сброс бита копирует один лист и путь к нему,
+ * количество установленных битов хранится, а не считается
+ */
+final class SlotBitmap {
+    static final int LEAF_WORDS = 64;
+    static final int LEAF_SHIFT = 12;
+    static final SlotBitmap EMPTY = new SlotBitmap(SlotTrie.EMPTY, 0);
+
+    private final SlotTrie leaves;
+    private final int cardinality;
+
+    private SlotBitmap(SlotTrie leaves, int cardinality) {
+        this.leaves = leaves;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * @param words Слова карты: бит slot - бит (slot & 63) слова slot >>> 6
+     */
+    static SlotBitmap of(long[] words) {
+        Object[] leafArray = new Object[(words.length + LEAF_WORDS - 1) / LEAF_WORDS];
+        int cardinality = 0;
+        for (int i = 0; i < leafArray.length; i++) {
+            long[] leaf = new long[LEAF_WORDS];
+            System.arraycopy(words, i * LEAF_WORDS, leaf, 0, Math.min(LEAF_WORDS, words.length - i * LEAF_WORDS));
+            for (long word : leaf) {
+                cardinality += Long.bitCount(word);
+            }
+            leafArray[i] = leaf;
+        }
+        return new SlotBitmap(SlotTrie.of(leafArray), cardinality);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @return Количество листов, которое помещается в дерево (листы с большими номерами отсутствуют)
+     */
+    int leafCapacity() {
+        return leaves.capacity();
+    }
+
+    /**
+     * @return Слова листа index (только для чтения) или null, если в нём нет установленных битов
+     */
+    long[] leaf(int index) {
+        return (long[]) leaves.leaf(index);
+    }
+
+    boolean contains(int slot) {
+        long[] leaf = leaf(slot >>> LEAF_SHIFT);
+        return leaf != null && (leaf[(slot >>> 6) & (LEAF_WORDS - 1)] & 1L << slot) != 0;
+    }
+
+    SlotBitmap with(int slot) {
+        return change(slot, true);
+    }
+
+    SlotBitmap without(int slot) {
+        return change(slot, false);
+    }
+
+    /**
+     * Установка многих битов: каждый затронутый лист копируется один раз
+     * @param slots Номера слотов по возрастанию
+     */
+    SlotBitmap with(int[] slots) {
+        return change(slots, true);
+    }
+
+    /**
+     * Сброс многих битов: каждый затронутый лист копируется один раз
+     * @param slots Номера слотов по возрастанию
+     */
+    SlotBitmap without(int[] slots) {
+        return change(slots, false);
+    }
+
+    private SlotBitmap change(int[] slots, boolean set) {
+        SlotTrie newLeaves = leaves;
+        int newCardinality = cardinality;
+        int i = 0;
+        while (i < slots.length) {
+            int index = slots[i] >>> LEAF_SHIFT;
+            long[] leaf = leaf(index);
+            long[] copy = null;
+            for (; i < slots.length && slots[i] >>> LEAF_SHIFT == index; i++) {
+                int word = (slots[i] >>> 6) & (LEAF_WORDS - 1);
+                long bit = 1L << slots[i];
+                boolean present = leaf != null && (leaf[word] & bit) != 0;
+                if (present != set) {
+                    if (copy == null) {
+                        copy = leaf == null ? new long[LEAF_WORDS] : leaf.clone();
+                    }
+                    copy[word] ^= bit;
+                    newCardinality += set ? 1 : -1;
+                }
+            }
+            if (copy != null) {
+                newLeaves = newLeaves.withLeaf(index, copy);
+            }
+        }
+        return newLeaves == leaves ? this : new SlotBitmap(newLeaves, newCardinality);
+    }
+
+    private SlotBitmap change(int slot, boolean set) {
+        int index = slot >>> LEAF_SHIFT;
+        long[] leaf = leaf(index);
+        int word = (slot >>> 6) & (LEAF_WORDS - 1);
+        long bit = 1L << slot;
+        boolean present = leaf != null && (leaf[word] & bit) != 0;
+        if (present == set) {
+            return this;
+        }
+        long[] copy = leaf == null ? new long[LEAF_WORDS] : leaf.clone();
+        copy[word] ^= bit;
+        return new SlotBitmap(leaves.withLeaf(index, copy), cardinality + (set ? 1 : -1));
+    }
+}
@@ -0,0 +1,92 @@
+package src;
+
+/**
+ * Персистентный массив листов по номеру (префиксное дерево с 64 потомками у узла).
+ * Замена листа копирует путь от корня - height массивов по 64 ссылки, остальные узлы общие
+ * со старой версией. Листы - массивы (слова битовой карты, ссылки на элементы), их содержимое
+ * после помещения в дерево не меняется. Отсутствующий лист - null
+ */
+final class SlotTrie {
+    private static final int BITS = 6;
+    private static final int FANOUT = 1 << BITS;
+    static final SlotTrie EMPTY = new SlotTrie(null, 0);
+
+    private final Object root;
+    // Высота 0 - корень сам является листом 0
+    private final int height;
+
+    private SlotTrie(Object root, int height) {
+        this.root = root;
+        this.height = height;
+    }
+
+    /**
+     * Собирает дерево из листов за один проход снизу вверх
+     */
+    static SlotTrie of(Object[] leaves) {
+        if (leaves.length == 0) {
+            return EMPTY;
+        }
+        Object[] level = leaves;
+        int height = 0;
+        while (level.length > 1) {
+            Object[] parents = new Object[(level.length + FANOUT - 1) / FANOUT];
+            for (int i = 0; i < parents.length; i++) {
+                Object[] node = new Object[FANOUT];
+                System.arraycopy(level, i * FANOUT, node, 0, Math.min(FANOUT, level.length - i * FANOUT));
+                parents[i] = node;
+            }
+            level = parents;
+            height++;
+        }
+        return new SlotTrie(level[0], height);
+    }
+
+    /**
+     * @return Количество листов, которое помещается в дерево текущей высоты
+     */
+    int capacity() {
+        return 1 << (BITS * height);
+    }
+
+    /**
+     * @return Лист с номером index или null
+     */
+    Object leaf(int index) {
+        if (index >= capacity()) {
+            return null;
+        }
+        Object node = root;
+        for (int shift = BITS * (height - 1); shift >= 0 && node != null; shift -= BITS) {
+            node = ((Object[]) node)[(index >>> shift) & (FANOUT - 1)];
+        }
+        return node;
+    }
+
+    /**
+     * @return Новая версия с листом leaf под номером index (дерево растёт в высоту, если нужно)
+     */
+    SlotTrie withLeaf(int index, Object leaf) {
+        Object newRoot = root;
+        int newHeight = height;
+        while (index >= 1 << (BITS * newHeight)) {
+            if (newRoot != null) {
+                Object[] parent = new Object[FANOUT];
+                parent[0] = newRoot;
+                newRoot = parent;
+            }
+            newHeight++;
+        }
+        return new SlotTrie(withLeaf(newRoot, BITS * (newHeight - 1), index, leaf), newHeight);
+    }
+
+    private static Object withLeaf(Object node, int shift, int index, Object leaf) {
+        if (shift < 0) {
+            return leaf;
+        }
+        Object[] copy = node == null ? new Object[FANOUT] : ((Object[]) node).clone();
+        int child = (index >>> shift) & (FANOUT - 1);
+        copy[child] = withLeaf(copy[child], shift - BITS, index, leaf);
+        return copy;
+    }
+}
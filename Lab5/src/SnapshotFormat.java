@@ -0,0 +1,115 @@
+package src;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Форматы полного дампа коллекции в файле данных
+ */
+public enum SnapshotFormat {
+    /**
+     * Текстовый CSV: заголовок "дата,номер записи журнала", далее строки Vehicle.toCSV.
+     * Номер - последняя запись журнала, вошедшая в дамп; по нему при загрузке пропускаются уже учтённые записи.
+     * Файлы прежнего формата с одной датой в заголовке читаются как дамп с номером 0 (весь журнал применяется);
+     * внешние программы, которые читают заголовок как дату, должны отбрасывать всё после запятой
+     */
+    CSV {
+        @Override
+        public void write(Path file, LocalDateTime initDate, long sequence, List<Vehicle> vehicles) throws IOException {
+            try (FileOutputStream stream = new FileOutputStream(file.toFile());
+                 BufferedWriter printer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+                printer.write(initDate.format(Vehicle.DATE_FORMAT) + "," + sequence + '\n');
+                for (Vehicle vehicle : vehicles) {
+                    printer.write(vehicle.toCSV() + '\n');
+                }
+                printer.flush();
+                stream.getChannel().force(true);
+            }
+        }
+
+        @Override
+        public SnapshotReader reader(int threads) {
+            return threads > 1 ? new ParallelCsvLoader(threads) : new SequentialCsvLoader();
+        }
+    },
+    /**
+     * Двоичный формат BinarySnapshot
+     */
+    BINARY {
+        @Override
+        public void write(Path file, LocalDateTime initDate, long sequence, List<Vehicle> vehicles) throws IOException {
+            BinarySnapshot.write(file, initDate, sequence, vehicles);
+        }
+
+        @Override
+        public SnapshotReader reader(int threads) {
+            return new BinarySnapshot();
+        }
+    },
+    /**
+     * Поколоночный формат ColumnStore, отображаемый в память при загрузке: поля не разбираются,
+     * но индексы коллекции строятся в куче
+     */
+    COLUMNS {
+        @Override
+        public void write(Path file, LocalDateTime initDate, long sequence, List<Vehicle> vehicles) throws IOException {
+            ColumnStore.write(file, initDate, sequence, vehicles);
+        }
+
+        @Override
+        public SnapshotReader reader(int threads) {
+            return new ColumnStore();
+        }
+    };
+
+    /**
+     * Пишет дамп и сбрасывает его на диск
+     * @param vehicles Элементы в порядке compareTo
+     */
+    public abstract void write(Path file, LocalDateTime initDate, long sequence, List<Vehicle> vehicles) throws IOException;
+
+    /**
+     * @param threads Количество потоков загрузки (используется там, где формат допускает параллельный разбор)
+     */
+    public abstract SnapshotReader reader(int threads);
+
+    /**
+     * Определяет формат файла данных по сигнатуре в начале файла
+     */
+    public static SnapshotFormat detect(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // дочитываем сигнатуру
+            }
+            if (!magic.hasRemaining()) {
+                switch (magic.getInt(0)) {
+                    case BinarySnapshot.MAGIC:
+                        return BINARY;
+                    case ColumnStore.MAGIC:
+                        return COLUMNS;
+                    default:
+                        break;
+                }
+            }
+            return CSV;
+        }
+    }
+
+    /**
+     * @param name Название формата (csv, binary или columns)
+     * @throws IllegalArgumentException если формат неизвестен
+     */
+    public static SnapshotFormat of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,25 @@
+package src;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Загрузчик полного дампа коллекции из файла данных
+ */
+public interface SnapshotReader {
+    /**
+     * @param fileName Имя файла данных
+     * @return Коллекция, загруженная из файла
+     */
+    VehicleCollection load(String fileName) throws IOException;
+
+    /**
+     * @return Дата инициализации из последнего загруженного файла или null, если она не указана
+     */
+    LocalDateTime getInitDate();
+
+    /**
+     * @return Номер последней записи журнала, вошедшей в загруженный дамп
+     */
+    long getSequence();
+}
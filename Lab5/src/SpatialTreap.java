@@ -0,0 +1,331 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Персистентное декартово дерево (treap) для поиска по координатам - равномерная сетка из горизонтальных
+ * полос высотой ROW_HEIGHT. Ключ узла - номер полосы и x, поэтому элементы одной полосы идут подряд
+ * в порядке x, и часть полосы между двумя x - непрерывный диапазон ключей. Запрос по прямоугольнику
+ * обходит только непустые полосы, пересекающие его, с переходом к следующей непустой полосе за O(log n).
+ * Как и VehicleTreap, изменения копируют путь от корня (O(log n)), приоритет вычисляется из id,
+ * узел хранит размер поддерева для подсчёта элементов в диапазоне ключей.
+ * Пустое дерево - null
+ */
+final class SpatialTreap {
+    static final int ROW_HEIGHT = 8;
+
+    private SpatialTreap() {
+    }
+
+    static final class Node {
+        final Vehicle value;
+        final long key;
+        final int y;
+        final int priority;
+        // Меняются только при построении в build, до того как дерево станет доступно другим потокам
+        Node left;
+        Node right;
+        int size;
+
+        private Node(Vehicle value, long key, int y, int priority) {
+            this.value = value;
+            this.key = key;
+            this.y = y;
+            this.priority = priority;
+            this.size = 1;
+        }
+
+        private Node(Node node, Node left, Node right) {
+            this(node.value, node.key, node.y, node.priority);
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        int x() {
+            return (int) key ^ Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Обработчик элементов, найденных запросом
+     */
+    interface Visitor {
+        void visit(Vehicle vehicle, int x, int y);
+    }
+
+    private static final Comparator<Node> ORDER = (a, b) -> compare(a.key, a.value.getIdValue(), b);
+
+    /**
+     * Ключ: номер полосы в старших 32 битах (со знаком), x со смещённым знаком в младших,
+     * так что порядок ключей - порядок полос, а внутри полосы - порядок x
+     */
+    static long key(int row, int x) {
+        return (long) row << 32 | (x ^ Integer.MIN_VALUE) & 0xffffffffL;
+    }
+
+    static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    static int row(int y) {
+        return Math.floorDiv(y, ROW_HEIGHT);
+    }
+
+    private static Node node(Vehicle vehicle) {
+        int y = vehicle.getY();
+        return new Node(vehicle, key(row(y), vehicle.getX()), y, LongObjectMap.mix(vehicle.getIdValue()));
+    }
+
+    private static int compare(long key, long id, Node node) {
+        int result = Long.compare(key, node.key);
+        return result != 0 ? result : Long.compare(id, node.value.getIdValue());
+    }
+
+    /**
+     * Строит дерево за O(n log n): сортировка по ключу и построение декартова дерева стеком
+     * @param vehicles Элементы с различными id в любом порядке
+     */
+    static Node build(Vehicle[] vehicles) {
+        Node[] nodes = new Node[vehicles.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = node(vehicles[i]);
+        }
+        Arrays.sort(nodes, ORDER);
+        Node[] stack = new Node[Math.max(1, nodes.length)];
+        int top = 0;
+        for (Node node : nodes) {
+            Node last = null;
+            while (top > 0 && stack[top - 1].priority < node.priority) {
+                last = stack[--top];
+            }
+            node.left = last;
+            if (top > 0) {
+                stack[top - 1].right = node;
+            }
+            stack[top++] = node;
+        }
+        if (top == 0) {
+            return null;
+        }
+        updateSizes(stack[0]);
+        return stack[0];
+    }
+
+    private static int updateSizes(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        node.size = 1 + updateSizes(node.left) + updateSizes(node.right);
+        return node.size;
+    }
+
+    /**
+     * @param vehicle Элемент, которого нет в дереве
+     * @return Новая версия дерева с элементом
+     */
+    static Node insert(Node root, Vehicle vehicle) {
+        return insert(root, node(vehicle));
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (inserted.priority > node.priority) {
+            Node[] parts = split(node, inserted.key, inserted.value.getIdValue());
+            return new Node(inserted, parts[0], parts[1]);
+        }
+        if (compare(inserted.key, inserted.value.getIdValue(), node) < 0) {
+            return new Node(node, insert(node.left, inserted), node.right);
+        }
+        return new Node(node, node.left, insert(node.right, inserted));
+    }
+
+    /**
+     * @return Новая версия дерева без элемента (или то же дерево, если его нет)
+     */
+    static Node remove(Node root, Vehicle vehicle) {
+        int y = vehicle.getY();
+        return remove(root, key(row(y), vehicle.getX()), vehicle.getIdValue());
+    }
+
+    private static Node remove(Node node, long key, long id) {
+        if (node == null) {
+            return null;
+        }
+        int result = compare(key, id, node);
+        if (result == 0) {
+            return merge(node.left, node.right);
+        }
+        if (result < 0) {
+            Node left = remove(node.left, key, id);
+            return left == node.left ? node : new Node(node, left, node.right);
+        }
+        Node right = remove(node.right, key, id);
+        return right == node.right ? node : new Node(node, node.left, right);
+    }
+
+    /**
+     * @return Пара деревьев: узлы меньше (key, id) и остальные
+     */
+    private static Node[] split(Node node, long key, long id) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(key, id, node) > 0) {
+            Node[] parts = split(node.right, key, id);
+            parts[0] = new Node(node, node.left, parts[0]);
+            return parts;
+        }
+        Node[] parts = split(node.left, key, id);
+        parts[1] = new Node(node, parts[1], node.right);
+        return parts;
+    }
+
+    /**
+     * Объединяет деревья без общих элементов (как VehicleTreap.union)
+     */
+    static Node union(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority < b.priority) {
+            Node swap = a;
+            a = b;
+            b = swap;
+        }
+        Node[] parts = split(b, a.key, a.value.getIdValue());
+        return new Node(a, union(a.left, parts[0]), union(a.right, parts[1]));
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority >= right.priority) {
+            return new Node(left, left.left, merge(left.right, right));
+        }
+        return new Node(right, merge(left, right.left), right.right);
+    }
+
+    /**
+     * @return Первый узел с ключом не меньше key или null
+     */
+    private static Node ceiling(Node node, long key) {
+        Node found = null;
+        while (node != null) {
+            if (node.key >= key) {
+                found = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return Количество узлов с ключом меньше key
+     */
+    private static int countBelow(Node node, long key) {
+        int count = 0;
+        while (node != null) {
+            if (node.key < key) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Количество элементов полос, пересекающих прямоугольник, с x в [xFrom, xTo]: верхняя оценка
+     * количества элементов прямоугольника (по y проверяются только полосы целиком), O(log n) на полосу
+     * @param maxRows Наибольшее количество непустых полос, которое можно просмотреть
+     * @return Оценка или -1, если полос больше maxRows
+     */
+    static int countInBox(Node root, int xFrom, int xTo, int yFrom, int yTo, int maxRows) {
+        if (xFrom > xTo || yFrom > yTo) {
+            return 0;
+        }
+        int lastRow = row(yTo);
+        long key = key(row(yFrom), xFrom);
+        int count = 0;
+        for (int rows = 0; ; rows++) {
+            Node next = ceiling(root, key);
+            if (next == null || (int) (next.key >> 32) > lastRow) {
+                return count;
+            }
+            if (rows == maxRows) {
+                return -1;
+            }
+            int row = (int) (next.key >> 32);
+            long from = key(row, xFrom);
+            long to = key(row, xTo);
+            count += (to == Long.MAX_VALUE ? size(root) : countBelow(root, to + 1)) - countBelow(root, from);
+            if (row == Integer.MAX_VALUE) {
+                return count;
+            }
+            key = key(row + 1, xFrom);
+        }
+    }
+
+    /**
+     * Передаёт visitor все элементы прямоугольника [xFrom, xTo] x [yFrom, yTo] (порядок - по полосам и x)
+     */
+    static void forEachInBox(Node root, int xFrom, int xTo, int yFrom, int yTo, Visitor visitor) {
+        if (xFrom > xTo || yFrom > yTo) {
+            return;
+        }
+        int lastRow = row(yTo);
+        long key = key(row(yFrom), xFrom);
+        while (true) {
+            Node next = ceiling(root, key);
+            if (next == null) {
+                return;
+            }
+            int row = (int) (next.key >> 32);
+            if (row > lastRow) {
+                return;
+            }
+            if (next.x() < xFrom) {
+                // Следующая непустая полоса оказалась дальше: начало диапазона в ней
+                key = key(row, xFrom);
+                continue;
+            }
+            if (next.x() <= xTo) {
+                visitRange(root, key(row, xFrom), key(row, xTo), yFrom, yTo, visitor);
+            }
+            if (row == Integer.MAX_VALUE) {
+                return;
+            }
+            key = key(row + 1, xFrom);
+        }
+    }
+
+    private static void visitRange(Node node, long from, long to, int yFrom, int yTo, Visitor visitor) {
+        while (node != null) {
+            if (node.key < from) {
+                node = node.right;
+            } else if (node.key > to) {
+                node = node.left;
+            } else {
+                visitRange(node.left, from, to, yFrom, yTo, visitor);
+                if (node.y >= yFrom && node.y <= yTo) {
+                    visitor.visit(node.value, node.x(), node.y);
+                }
+                node = node.right;
+            }
+        }
+    }
+}
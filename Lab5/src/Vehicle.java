@@ -1,59 +1,109 @@
 package src;
 
 import java.awt.event.WindowFocusListener;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.Buffer;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
-import java.util.Set;
+import java.io.PrintStream;
+import java.io.OutputStream;
 
 
 /**
  * Класс, экземпляры которого хранятся в коллекции
  */
 public class Vehicle implements Comparable<Vehicle> {
-    private Long id; //Поле не может быть null, Значение поля должно быть больше 0, Значение этого поля должно быть уникальным, Значение этого поля должно генерироваться автоматически
+    // Поля хранятся примитивами, объекты Coordinates и LocalDateTime создаются только в геттерах
+    private long id; //Значение поля должно быть больше 0, Значение этого поля должно быть уникальным, Значение этого поля должно генерироваться автоматически
     private String name; //Поле не может быть null, Строка не может быть пустой
-    private Coordinates coordinates; //Поле не может быть null
-    private LocalDateTime creationDate; //Поле не может быть null, Значение этого поля должно генерироваться автоматически
-    private Long enginePower; //Поле может быть null, Значение поля должно быть больше 0
+    private int x; //Координаты, x <= 970
+    private int y; //y > -988
+    private long creationEpochSecond; //Дата создания в секундах эпохи (UTC), Значение этого поля должно генерироваться автоматически
+    private int creationNano; //Наносекунды даты создания
+    private long creationKey; //Дата создания в наносекундах эпохи для compareTo (см. creationKey)
+    private long enginePower; //NO_ENGINE_POWER вместо null, Значение поля должно быть больше 0
     private int numberOfWheels; //Значение поля должно быть больше 0
     private VehicleType type; //Поле может быть null
     private FuelType fuelType; //Поле может быть null
 
+    /**
+     * Значение поля enginePower, означающее его отсутствие (null)
+     */
+    public static final long NO_ENGINE_POWER = Long.MIN_VALUE;
+
+    // Секунды эпохи, при которых дата создания помещается в long наносекунд (годы 1678 - 2261)
+    private static final long MIN_KEY_SECOND = Long.MIN_VALUE / 1_000_000_000L + 1;
+    private static final long MAX_KEY_SECOND = Long.MAX_VALUE / 1_000_000_000L - 1;
+
 
-    private static Set<Long> usedIds = new HashSet<Long>(); // хранилище уже использованных id
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"); // формат дат в CSV
+
+    private static IdAllocator idAllocator = new SequentialIdAllocator(); // источник новых id
 
     /**
-     * @param id id, которое нужно добавить в множество использованных
-     *           Добавляет id в список использованных
+     * @param allocator Источник id для новых элементов
      */
-    public static void updateId(Long id){
-        usedIds.add(id);
+    public static void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
+    }
+
+    public static IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    /**
+     * @param ids id всех загруженных элементов
+     *            Отмечает id занятыми, вызывается один раз после загрузки коллекции
+     */
+    public static void seedIds(long[] ids) {
+        idAllocator.seed(ids);
+    }
+
+    /**
+     * @param id id удалённого элемента
+     *           Возвращает id для повторного использования
+     */
+    public static void releaseId(long id) {
+        idAllocator.release(id);
     }
 
     // Конструктор с параметрами
     public Vehicle(String name, Coordinates coordinates, Long enginePower, int numberOfWheels, VehicleType type, FuelType fuelType) {
         this.name = name;
-        this.coordinates = coordinates;
-        this.enginePower = enginePower;
+        this.x = coordinates.getX();
+        this.y = coordinates.getY();
+        this.enginePower = enginePower == null ? NO_ENGINE_POWER : enginePower;
         this.numberOfWheels = numberOfWheels;
         this.type = type;
         this.fuelType = fuelType;
 
         // Установка id и даты создания
         this.id = generateId();
-        this.creationDate = LocalDateTime.now();
+        setCreationDate(LocalDateTime.now());
     }
 
     public Vehicle(Long id, String name, Coordinates coordinates, LocalDateTime creationDate, Long enginePower, int numberOfWheels, VehicleType type, FuelType fuelType) {
+        this(id, name, coordinates.getX(), coordinates.getY(), creationDate.toEpochSecond(ZoneOffset.UTC), creationDate.getNano(),
+                enginePower == null ? NO_ENGINE_POWER : enginePower, numberOfWheels, type, fuelType);
+    }
+
+    /**
+     * Конструктор из примитивных значений полей, используется при чтении дампов
+     * @param enginePower Мощность или NO_ENGINE_POWER
+     */
+    public Vehicle(long id, String name, int x, int y, long creationEpochSecond, int creationNano, long enginePower, int numberOfWheels, VehicleType type, FuelType fuelType) {
         this.id = id;
         this.name = name;
-        this.coordinates = coordinates;
-        this.creationDate = creationDate;
+        this.x = x;
+        this.y = y;
+        this.creationEpochSecond = creationEpochSecond;
+        this.creationNano = creationNano;
+        this.creationKey = creationKey(creationEpochSecond, creationNano);
         this.enginePower = enginePower;
         this.numberOfWheels = numberOfWheels;
         this.type = type;
@@ -61,28 +111,22 @@ public class Vehicle implements Comparable<Vehicle> {
     }
 
     public Vehicle() {
-
+        this.enginePower = NO_ENGINE_POWER;
     }
 
     /**
      * Генератор новых уникальных id
      */
-    // Метод для генерации уникального id
     private Long generateId() {
-//        Long newId = null;
-//        do {
-//            newId = (long) (Math.random() * Long.MAX_VALUE);
-//        } while (newId <= 0 || usedIds.contains(newId));
-        Long newId = 0L;
-        while (usedIds.contains(newId)){
-            newId += 1L;
-        }
-        usedIds.add(newId);
-        return newId;
+        return idAllocator.next();
     }
 
     // Геттеры и сеттеры
     public Long getId() {
+        return getIdValue();
+    }
+
+    public long getIdValue() {
         return id;
     }
     public void setId(Long id){
@@ -102,25 +146,79 @@ public class Vehicle implements Comparable<Vehicle> {
         this.name = name;
     }
 
+    /**
+     * @return Новый объект Coordinates; изменение его полей не влияет на элемент
+     */
     public Coordinates getCoordinates() {
-        return coordinates;
+        return new Coordinates(getX(), getY());
     }
 
     public void setCoordinates(Coordinates coordinates) {
         if (coordinates == null) {
             throw new IllegalArgumentException("Coordinates cannot be null");
         }
-        this.coordinates = coordinates;
+        this.x = coordinates.getX();
+        this.y = coordinates.getY();
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
     }
 
     public LocalDateTime getCreationDate() {
-        return creationDate;
+        return LocalDateTime.ofEpochSecond(getCreationEpochSecond(), getCreationNano(), ZoneOffset.UTC);
     }
     public void setCreationDate(LocalDateTime creationDate) {
-        this.creationDate = creationDate;
+        if (creationDate == null) {
+            throw new IllegalArgumentException("Creation date cannot be null");
+        }
+        this.creationEpochSecond = creationDate.toEpochSecond(ZoneOffset.UTC);
+        this.creationNano = creationDate.getNano();
+        this.creationKey = creationKey(creationEpochSecond, creationNano);
+    }
+
+    /**
+     * @return Дата создания в наносекундах эпохи; даты вне 1678 - 2261 годов сводятся к крайним значениям,
+     *         и при равных ключах compareTo сравнивает секунды и наносекунды
+     */
+    static long creationKey(long epochSecond, int nano) {
+        if (epochSecond < MIN_KEY_SECOND) {
+            return Long.MIN_VALUE;
+        }
+        if (epochSecond > MAX_KEY_SECOND) {
+            return Long.MAX_VALUE;
+        }
+        return epochSecond * 1_000_000_000L + nano;
+    }
+
+    public long getCreationEpochSecond() {
+        return creationEpochSecond;
+    }
+
+    public int getCreationNano() {
+        return creationNano;
+    }
+
+    /**
+     * @return Дата создания в наносекундах эпохи - ключ сортировки compareTo (см. creationKey)
+     */
+    long getCreationKey() {
+        return creationKey;
     }
 
     public Long getEnginePower() {
+        long enginePower = getEnginePowerValue();
+        return enginePower == NO_ENGINE_POWER ? null : enginePower;
+    }
+
+    /**
+     * @return Мощность или NO_ENGINE_POWER, если она не задана
+     */
+    public long getEnginePowerValue() {
         return enginePower;
     }
 
@@ -128,7 +226,7 @@ public class Vehicle implements Comparable<Vehicle> {
         if (enginePower != null && enginePower <= 0) {
             throw new IllegalArgumentException("Engine power must be greater than 0");
         }
-        this.enginePower = enginePower;
+        this.enginePower = enginePower == null ? NO_ENGINE_POWER : enginePower;
     }
 
     public int getNumberOfWheels() {
@@ -161,15 +259,33 @@ public class Vehicle implements Comparable<Vehicle> {
 
     /**
      * Реализует сравнение элементов для возможности сортировки
-     * Сравнение происходит по полю enginePower, при его совпадении - по дате создания
+     * Сравнение происходит по полю enginePower, при его совпадении - по дате создания, затем по id,
+     * поэтому равны только элементы с одним id. Элементы без мощности идут первыми.
+     * Сравниваются примитивные поля и заранее вычисленный ключ даты: обычно одно-два сравнения long
      */
     @Override
     public int compareTo(Vehicle o) {
-        int result = this.getEnginePower().compareTo(o.getEnginePower());
-        if (result == 0){
-            result = this.getCreationDate().compareTo(o.getCreationDate());
+        // Поля читаются через геттеры: MappedVehicle хранит значения в колонках, а не в полях
+        long power = getEnginePowerValue();
+        long otherPower = o.getEnginePowerValue();
+        if (power != otherPower) {
+            return power < otherPower ? -1 : 1;
         }
-        return result;
+        long key = getCreationKey();
+        long otherKey = o.getCreationKey();
+        if (key != otherKey) {
+            return key < otherKey ? -1 : 1;
+        }
+        if (key == Long.MIN_VALUE || key == Long.MAX_VALUE) {
+            int result = Long.compare(getCreationEpochSecond(), o.getCreationEpochSecond());
+            if (result == 0) {
+                result = Integer.compare(getCreationNano(), o.getCreationNano());
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Long.compare(getIdValue(), o.getIdValue());
     }
 
     /**
@@ -177,39 +293,122 @@ public class Vehicle implements Comparable<Vehicle> {
      */
     @Override
     public String toString() {
-        return "Vehicle{" +
-                "id=" + id +
-                ", name='" + name + '\'' +
-                ", coordinates=" + coordinates +
-                ", creationDate=" + creationDate +
-                ", enginePower=" + enginePower +
-                ", numberOfWheels=" + numberOfWheels +
-                ", type=" + type +
-                ", fuelType=" + fuelType +
-                '}';
+        return appendTo(new StringBuilder(160)).toString();
+    }
+
+    /**
+     * Дописывает строковое представление (то же, что toString) прямо из полей,
+     * без промежуточных строк и объектов Coordinates, LocalDateTime и Long
+     * @param text Буфер, в который дописывается представление
+     * @return text
+     */
+    public StringBuilder appendTo(StringBuilder text) {
+        text.append("Vehicle{id=").append(getIdValue())
+                .append(", name='").append(getName())
+                .append("', coordinates=Coordinates{x=").append(getX())
+                .append(", y=").append(getY())
+                .append("}, creationDate=");
+        appendDate(text, getCreationEpochSecond(), getCreationNano());
+        text.append(", enginePower=");
+        long enginePower = getEnginePowerValue();
+        if (enginePower == NO_ENGINE_POWER) {
+            text.append("null");
+        } else {
+            text.append(enginePower);
+        }
+        return text.append(", numberOfWheels=").append(getNumberOfWheels())
+                .append(", type=").append(getType())
+                .append(", fuelType=").append(getFuelType())
+                .append('}');
+    }
+
+    /**
+     * Дата в формате LocalDateTime.toString: uuuu-MM-ddTHH:mm, секунды и доли секунды - только если не нулевые
+     */
+    private static void appendDate(StringBuilder text, long epochSecond, int nano) {
+        long epochDay = Math.floorDiv(epochSecond, 86400);
+        int secondOfDay = Math.floorMod(epochSecond, 86400);
+        // Перевод номера дня в год, месяц и день (григорианский календарь, год начинается с марта)
+        long shifted = epochDay + 719468;
+        long era = Math.floorDiv(shifted, 146097);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * monthIndex + 2) / 5 + 1);
+        int month = (int) (monthIndex < 10 ? monthIndex + 3 : monthIndex - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (Math.abs(year) < 1000) {
+            if (year < 0) {
+                text.append('-');
+            }
+            appendPadded(text, Math.abs(year), 4);
+        } else {
+            if (year > 9999) {
+                text.append('+');
+            }
+            text.append(year);
+        }
+        text.append('-');
+        appendPadded(text, month, 2);
+        text.append('-');
+        appendPadded(text, day, 2);
+        text.append('T');
+        appendPadded(text, secondOfDay / 3600, 2);
+        text.append(':');
+        appendPadded(text, secondOfDay / 60 % 60, 2);
+        int second = secondOfDay % 60;
+        if (second > 0 || nano > 0) {
+            text.append(':');
+            appendPadded(text, second, 2);
+            if (nano > 0) {
+                text.append('.');
+                if (nano % 1_000_000 == 0) {
+                    appendPadded(text, nano / 1_000_000, 3);
+                } else if (nano % 1000 == 0) {
+                    appendPadded(text, nano / 1000, 6);
+                } else {
+                    appendPadded(text, nano, 9);
+                }
+            }
+        }
+    }
+
+    private static void appendPadded(StringBuilder text, long value, int width) {
+        for (long limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                for (int i = 1; i < width; i++) {
+                    text.append('0');
+                }
+                break;
+            }
+        }
+        text.append(value);
     }
 
     /**
      * Конвертирует поля класса в строку в формате CSV
      */
     public String toCSV() {
-        return id + "," + name + "," + coordinates.getX() + "," + coordinates.getY() + "," +
-                creationDate.format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss")) + "," +
-                enginePower + "," + numberOfWheels + "," +
-                (type == null ? "" : type) + "," +
-                (fuelType == null ? "" : fuelType);
+        return getIdValue() + "," + getName() + "," + getX() + "," + getY() + "," +
+                getCreationDate().format(DATE_FORMAT) + "," +
+                getEnginePower() + "," + getNumberOfWheels() + "," +
+                (getType() == null ? "" : getType()) + "," +
+                (getFuelType() == null ? "" : getFuelType());
     }
 
     /**
-     * Преобразует строку в формате CSV в экземпляр класса
+     * Преобразует строку в формате CSV (как в toCSV) в экземпляр класса.
+     * Пустые поля в конце строки сохраняются, мощность null читается как отсутствующая
      */
     public static Vehicle fromCSV(String csv) {
-        String[] values = csv.split(",");
+        String[] values = csv.split(",", -1);
         Long id = Long.parseLong(values[0]);
         String name = values[1];
         Coordinates coordinates = new Coordinates(Integer.parseInt(values[2]), Integer.parseInt(values[3]));
-        LocalDateTime creationDate = LocalDateTime.parse(values[4], DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"));
-        Long enginePower = Long.parseLong(values[5]);
+        LocalDateTime creationDate = LocalDateTime.parse(values[4], DATE_FORMAT);
+        Long enginePower = values[5].isEmpty() || values[5].equals("null") ? null : Long.parseLong(values[5]);
         int numberOfWheels = Integer.parseInt(values[6]);
         VehicleType type = values[7].equals("") ? null : VehicleType.valueOf(values[7]);
         FuelType fuelType = values[8].equals("") ? null : FuelType.valueOf(values[8]);
@@ -221,130 +420,142 @@ public class Vehicle implements Comparable<Vehicle> {
      * Изменяет значения полей класса, сохраняя генерируемые автоматически
      */
     public static Vehicle modifyFromUser(Vehicle vehicle, BufferedReader scanner){
+        return modifyFromUser(vehicle, scanner, System.out);
+    }
+
+    /**
+     * Изменяет значения полей класса, сохраняя генерируемые автоматически
+     * @param out Поток для вывода подсказок (консоль или сеанс клиента)
+     */
+    public static Vehicle modifyFromUser(Vehicle vehicle, BufferedReader scanner, PrintStream out){
         try {
-            System.out.print("Введите имя: ");
-            String name = scanner.readLine().trim();
+            out.print("Введите имя: ");
+            String name = readLine(scanner).trim();
             while (name == "") {
-                System.out.println("Введите корректное значение. Поле не может быть пустым.");
-                name = scanner.readLine().trim();
+                out.println("Введите корректное значение. Поле не может быть пустым.");
+                name = readLine(scanner).trim();
             }
 
 
             Integer coordX = null;
-            System.out.print("Введите координату X, X <= 970: ");
+            out.print("Введите координату X, X <= 970: ");
             try {
-                coordX = Integer.parseInt(scanner.readLine());
+                coordX = Integer.parseInt(readLine(scanner));
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (coordX == null || coordX > 970) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите координату X, X <= 970: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите координату X, X <= 970: ");
                 try {
-                    coordX = Integer.parseInt(scanner.readLine());
+                    coordX = Integer.parseInt(readLine(scanner));
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
             }
 
 
             Integer coordY = null;
-            System.out.print("Введите координату Y, Y > -988: ");
+            out.print("Введите координату Y, Y > -988: ");
             try {
-                coordY = Integer.parseInt(scanner.readLine());
+                coordY = Integer.parseInt(readLine(scanner));
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (coordY == null || coordY <= -988) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите координату Y, Y > -988: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите координату Y, Y > -988: ");
                 try {
-                    coordY = Integer.parseInt(scanner.readLine());
+                    coordY = Integer.parseInt(readLine(scanner));
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
             }
 
             Coordinates coordinates = new Coordinates(coordX, coordY);
 
             Long enginePower = null;
-            System.out.print("Введите мощность двигателя: ");
+            out.print("Введите мощность двигателя: ");
             try {
-                String input = scanner.readLine();
+                String input = readLine(scanner);
                 enginePower = Long.parseLong(input);
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (enginePower <= 0 || enginePower == null) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите мощность двигателя: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите мощность двигателя: ");
                 try {
-                    String input = scanner.readLine();
+                    String input = readLine(scanner);
                     if (input == "") break;
                     enginePower = Long.parseLong(input);
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
             }
 
             Integer numberOfWheels = null;
-            System.out.print("Введите количество колёс: ");
+            out.print("Введите количество колёс: ");
             try {
-                numberOfWheels = Integer.parseInt(scanner.readLine());
+                numberOfWheels = Integer.parseInt(readLine(scanner));
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (numberOfWheels == null || numberOfWheels <= 0) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите количество колёс: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите количество колёс: ");
                 try {
-                    numberOfWheels = Integer.parseInt(scanner.readLine());
+                    numberOfWheels = Integer.parseInt(readLine(scanner));
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
 
             }
 
             VehicleType vehicleType = null;
             while (true) {
-                System.out.println("Возможные виды транспорта:");
+                out.println("Возможные виды транспорта:");
                 for (VehicleType VT : VehicleType.values()){
-                    System.out.print(VT.name() + " ");
+                    out.print(VT.name() + " ");
                 }
-                System.out.println();
-                System.out.print("Введите вид транспорта: ");
+                out.println();
+                out.print("Введите вид транспорта: ");
                 try {
-                    String input = scanner.readLine();
+                    String input = readLine(scanner);
                     if (input == "") break;
                     vehicleType = VehicleType.valueOf(input.toUpperCase());
                     break;
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Ошибка! Попробуйте еще раз.");
+                    out.println("Ошибка! Попробуйте еще раз.");
                 }
             }
 
             FuelType fuelType = null;
             while (true) {
-                System.out.println("Возможные варианты топлива:");
+                out.println("Возможные варианты топлива:");
                 for (FuelType FT : FuelType.values()){
-                    System.out.print(FT.name() + " ");
+                    out.print(FT.name() + " ");
                 }
-                System.out.println();
-                System.out.print("Введите тип топлива: ");
+                out.println();
+                out.print("Введите тип топлива: ");
                 try {
-                    String input = scanner.readLine();
+                    String input = readLine(scanner);
                     if (input == "") break;
                     fuelType = FuelType.valueOf(input.toUpperCase());
                     break;
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Ошибка! Попробуйте еще раз.");
+                    out.println("Ошибка! Попробуйте еще раз.");
                 }
             }
 
             return new Vehicle(vehicle.getId(), name, coordinates, vehicle.getCreationDate(), enginePower, numberOfWheels, vehicleType, fuelType);
         }
+        catch (EOFException e) {
+            // Ввод закончился посреди элемента: команда завершается с ошибкой, повторный запрос не нужен
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
         catch (IOException e){
-            System.out.println("Произошла ошибка: " + e.getMessage());
+            out.println("Произошла ошибка: " + e.getMessage());
         }
         return new Vehicle();
     }
@@ -353,130 +564,169 @@ public class Vehicle implements Comparable<Vehicle> {
      * Создаёт новый экземпляр класса на основе введённых данных
      */
     public static Vehicle fromUser(BufferedReader scanner){
+        return fromUser(scanner, System.out);
+    }
+
+    /**
+     * Создаёт новый экземпляр класса на основе введённых данных
+     * @param out Поток для вывода подсказок (консоль или сеанс клиента)
+     */
+    public static Vehicle fromUser(BufferedReader scanner, PrintStream out){
+        return fromUser(scanner, out, true);
+    }
+
+    /**
+     * Пропускает строки полей элемента так же, как их читают fromUser и modifyFromUser
+     * (вместе с повторным вводом после некорректного значения), не создавая элемент и не занимая id
+     */
+    static void skipUser(BufferedReader scanner) {
+        fromUser(scanner, new PrintStream(OutputStream.nullOutputStream()), false);
+    }
+
+    /**
+     * @return Следующая строка ввода полей элемента
+     * @throws EOFException Ввод закончился (клиент отключился, конец скрипта или файла)
+     */
+    private static String readLine(BufferedReader scanner) throws IOException {
+        String line = scanner.readLine();
+        if (line == null) {
+            throw new EOFException("ввод закончился до конца данных элемента");
+        }
+        return line;
+    }
+
+    /**
+     * @param create false - только прочитать поля и вернуть null
+     */
+    private static Vehicle fromUser(BufferedReader scanner, PrintStream out, boolean create){
         try {
-            System.out.print("Введите имя: ");
-            String name = scanner.readLine().trim();
+            out.print("Введите имя: ");
+            String name = readLine(scanner).trim();
             while (name == "") {
-                System.out.println("Введите корректное значение. Поле не может быть пустым.");
-                name = scanner.readLine().trim();
+                out.println("Введите корректное значение. Поле не может быть пустым.");
+                name = readLine(scanner).trim();
             }
 
 
             Integer coordX = null;
-            System.out.print("Введите координату X, X <= 970: ");
+            out.print("Введите координату X, X <= 970: ");
             try {
-                coordX = Integer.parseInt(scanner.readLine());
+                coordX = Integer.parseInt(readLine(scanner));
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (coordX == null || coordX > 970) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите координату X, X <= 970: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите координату X, X <= 970: ");
                 try {
-                    coordX = Integer.parseInt(scanner.readLine());
+                    coordX = Integer.parseInt(readLine(scanner));
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
             }
 
 
             Integer coordY = null;
-            System.out.print("Введите координату Y, Y > -988: ");
+            out.print("Введите координату Y, Y > -988: ");
             try {
-                coordY = Integer.parseInt(scanner.readLine());
+                coordY = Integer.parseInt(readLine(scanner));
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (coordY == null || coordY <= -988) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите координату Y, Y > -988: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите координату Y, Y > -988: ");
                 try {
-                    coordY = Integer.parseInt(scanner.readLine());
+                    coordY = Integer.parseInt(readLine(scanner));
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
             }
 
             Coordinates coordinates = new Coordinates(coordX, coordY);
 
             Long enginePower = null;
-            System.out.print("Введите мощность двигателя: ");
+            out.print("Введите мощность двигателя: ");
             try {
-                String input = scanner.readLine();
+                String input = readLine(scanner);
                 enginePower = Long.parseLong(input);
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (enginePower <= 0) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите мощность двигателя: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите мощность двигателя: ");
                 try {
-                    String input = scanner.readLine();
+                    String input = readLine(scanner);
                     if (input == "") break;
                     enginePower = Long.parseLong(input);
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
             }
 
             Integer numberOfWheels = null;
-            System.out.print("Введите количество колёс: ");
+            out.print("Введите количество колёс: ");
             try {
-                numberOfWheels = Integer.parseInt(scanner.readLine());
+                numberOfWheels = Integer.parseInt(readLine(scanner));
             } catch (NumberFormatException e) {
-                System.out.println("Неправильный ввод: " + e.getMessage());
+                out.println("Неправильный ввод: " + e.getMessage());
             }
             while (numberOfWheels == null || numberOfWheels <= 0) {
-                System.out.println("Ошибка! Попробуйте еще раз.");
-                System.out.print("Введите количество колёс: ");
+                out.println("Ошибка! Попробуйте еще раз.");
+                out.print("Введите количество колёс: ");
                 try {
-                    numberOfWheels = Integer.parseInt(scanner.readLine());
+                    numberOfWheels = Integer.parseInt(readLine(scanner));
                 } catch (NumberFormatException e) {
-                    System.out.println("Неправильный ввод: " + e.getMessage());
+                    out.println("Неправильный ввод: " + e.getMessage());
                 }
 
             }
 
             VehicleType vehicleType = null;
             while (true) {
-                System.out.println("Возможные виды транспорта:");
+                out.println("Возможные виды транспорта:");
                 for (VehicleType VT : VehicleType.values()){
-                    System.out.print(VT.name() + " ");
+                    out.print(VT.name() + " ");
                 }
-                System.out.println();
-                System.out.print("Введите вид транспорта: ");
+                out.println();
+                out.print("Введите вид транспорта: ");
                 try {
-                    String input = scanner.readLine();
+                    String input = readLine(scanner);
                     if (input == "") break;
                     vehicleType = VehicleType.valueOf(input.toUpperCase());
                     break;
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Ошибка! Попробуйте еще раз.");
+                    out.println("Ошибка! Попробуйте еще раз.");
                 }
             }
 
             FuelType fuelType = null;
             while (true) {
-                System.out.println("Возможные варианты топлива:");
+                out.println("Возможные варианты топлива:");
                 for (FuelType FT : FuelType.values()){
-                    System.out.print(FT.name() + " ");
+                    out.print(FT.name() + " ");
                 }
-                System.out.println();
-                System.out.print("Введите тип топлива: ");
+                out.println();
+                out.print("Введите тип топлива: ");
                 try {
-                    String input = scanner.readLine();
+                    String input = readLine(scanner);
                     if (input == "") break;
                     fuelType = FuelType.valueOf(input.toUpperCase());
                     break;
                 } catch (IllegalArgumentException e) {
-                    System.out.println("Ошибка! Попробуйте еще раз.");
+                    out.println("Ошибка! Попробуйте еще раз.");
                 }
             }
 
-            return new Vehicle(name, coordinates, enginePower, numberOfWheels, vehicleType, fuelType);
+            return create ? new Vehicle(name, coordinates, enginePower, numberOfWheels, vehicleType, fuelType) : null;
+        }
+        catch (EOFException e) {
+            // Ввод закончился посреди элемента: команда завершается с ошибкой, повторный запрос не нужен
+            throw new UncheckedIOException(e.getMessage(), e);
         }
         catch (IOException e){
-            System.out.println("Произошла ошибка: " + e.getMessage());
+            out.println("Произошла ошибка: " + e.getMessage());
         }
         return new Vehicle();
     }
@@ -0,0 +1,79 @@
+package src;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Компактная двоичная запись элемента: поля фиксированной длины, дата в секундах эпохи,
+ * порядковые номера перечислений и имя в UTF-8 с префиксом длины
+ */
+public class VehicleCodec {
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+    private static final byte HAS_ENGINE_POWER = 1;
+
+    /**
+     * Размер записи без имени
+     */
+    public static final int FIXED_SIZE = 8 + 4 + 4 + 8 + 4 + 1 + 8 + 4 + 1 + 1 + 4;
+
+    /**
+     * @return Максимальный размер записи элемента в байтах
+     */
+    public static int maxSize(Vehicle vehicle) {
+        return FIXED_SIZE + vehicle.getName().length() * 3;
+    }
+
+    public static void write(ByteBuffer buffer, Vehicle vehicle) {
+        long enginePower = vehicle.getEnginePowerValue();
+        boolean hasEnginePower = enginePower != Vehicle.NO_ENGINE_POWER;
+        buffer.putLong(vehicle.getIdValue());
+        buffer.putInt(vehicle.getX());
+        buffer.putInt(vehicle.getY());
+        buffer.putLong(vehicle.getCreationEpochSecond());
+        buffer.putInt(vehicle.getCreationNano());
+        buffer.put(hasEnginePower ? HAS_ENGINE_POWER : 0);
+        buffer.putLong(hasEnginePower ? enginePower : 0);
+        buffer.putInt(vehicle.getNumberOfWheels());
+        buffer.put(ordinal(vehicle.getType()));
+        buffer.put(ordinal(vehicle.getFuelType()));
+        byte[] name = vehicle.getName().getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(name.length);
+        buffer.put(name);
+    }
+
+    /**
+     * @throws IllegalArgumentException если запись повреждена
+     */
+    public static Vehicle read(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        int x = buffer.getInt();
+        int y = buffer.getInt();
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        byte flags = buffer.get();
+        long enginePower = buffer.getLong();
+        int numberOfWheels = buffer.getInt();
+        byte type = buffer.get();
+        byte fuelType = buffer.get();
+        int nameLength = buffer.getInt();
+        if (nameLength < 0 || nameLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid name length: " + nameLength);
+        }
+        if (type >= VEHICLE_TYPES.length || fuelType >= FUEL_TYPES.length) {
+            throw new IllegalArgumentException("Invalid enum ordinal");
+        }
+        byte[] name = new byte[nameLength];
+        buffer.get(name);
+        if (!Coordinates.checkCoordinates(x, y)) {
+            throw new IllegalArgumentException("Invalid coordinates: (" + x + "," + y + ")");
+        }
+        return new Vehicle(id, new String(name, StandardCharsets.UTF_8), x, y, epochSecond, nano,
+                (flags & HAS_ENGINE_POWER) != 0 ? enginePower : Vehicle.NO_ENGINE_POWER, numberOfWheels,
+                type < 0 ? null : VEHICLE_TYPES[type], fuelType < 0 ? null : FUEL_TYPES[fuelType]);
+    }
+
+    private static byte ordinal(Enum<?> value) {
+        return value == null ? -1 : (byte) value.ordinal();
+    }
+}
@@ -0,0 +1,266 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Коллекция элементов Vehicle: текущая неизменяемая версия VehicleSnapshot (элементы в порядке compareTo,
+ * индексы по количеству колёс, по координатам и битовые карты типов), опубликованная через атомарную ссылку, и индекс по id.
+ * Каждому элементу назначается слот - номер бита в картах версии; освобождённые слоты используются повторно,
+ * поэтому номера остаются плотными.
+ * Изменять коллекцию может одновременно только один поток (в Main - под блокировкой записи хранилища);
+ * каждое изменение строит новую версию и публикует её. Читать версии можно из любых потоков без блокировок,
+ * индекс по id - только из изменяющего потока или под той же блокировкой
+ */
+public class VehicleCollection implements Iterable<Vehicle> {
+    private final AtomicReference<VehicleSnapshot> current;
+    private final LongObjectMap<Vehicle> byId;
+    private final LongIntMap slotById;
+    // Стек освобождённых слотов и первый ни разу не занятый слот
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int nextSlot;
+
+    public VehicleCollection() {
+        current = new AtomicReference<>(VehicleSnapshot.EMPTY);
+        byId = new LongObjectMap<>();
+        slotById = new LongIntMap();
+    }
+
+    private VehicleCollection(Vehicle[] sorted) {
+        byId = new LongObjectMap<>(sorted.length);
+        slotById = new LongIntMap(sorted.length);
+        for (Vehicle vehicle : sorted) {
+            // getIdValue без упаковки в Long: у представлений ColumnStore id читается из колонки
+            long id = vehicle.getIdValue();
+            byId.put(id, vehicle);
+            slotById.put(id, nextSlot++);
+        }
+        current = new AtomicReference<>(VehicleSnapshot.build(sorted));
+    }
+
+    private int allocateSlot() {
+        return freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+    }
+
+    private void releaseSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * Собирает коллекцию из массива без поэлементных вставок
+     * @param sorted Элементы, упорядоченные по compareTo, без повторов id и равных элементов
+     */
+    public static VehicleCollection fromSorted(Vehicle[] sorted) {
+        return new VehicleCollection(sorted);
+    }
+
+    /**
+     * @return Текущая версия коллекции; не меняется при последующих изменениях коллекции
+     */
+    public VehicleSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Добавляет элемент в коллекцию
+     * @return false, если элемент с таким id уже есть (compareTo различает элементы с разными id,
+     *         поэтому проверки индекса по id достаточно)
+     */
+    public boolean add(Vehicle vehicle) {
+        long id = vehicle.getId();
+        VehicleSnapshot snapshot = current.get();
+        if (byId.containsKey(id)) {
+            return false;
+        }
+        int slot = allocateSlot();
+        byId.put(id, vehicle);
+        slotById.put(id, slot);
+        current.set(snapshot.with(vehicle, slot));
+        return true;
+    }
+
+    /**
+     * Добавляет все элементы, пропуская дубликаты
+     * @return Количество добавленных элементов
+     */
+    public int addAll(Collection<Vehicle> vehicles) {
+        int added = 0;
+        for (Vehicle vehicle : vehicles) {
+            if (add(vehicle)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Добавляет пачку элементов одной новой версией (VehicleSnapshot.withAll)
+     * @return Добавленные элементы в порядке пачки; пропускаются элементы с id, занятым в коллекции
+     *         или более ранним элементом пачки
+     */
+    public List<Vehicle> addBatch(List<Vehicle> batch) {
+        VehicleSnapshot snapshot = current.get();
+        List<Vehicle> added = new ArrayList<>(batch.size());
+        LongObjectMap<Vehicle> batchIds = new LongObjectMap<>(batch.size());
+        for (Vehicle vehicle : batch) {
+            long id = vehicle.getId();
+            if (!byId.containsKey(id) && batchIds.get(id) == null) {
+                batchIds.put(id, vehicle);
+                added.add(vehicle);
+            }
+        }
+        if (added.isEmpty()) {
+            return added;
+        }
+        Vehicle[] sorted = added.toArray(new Vehicle[0]);
+        Arrays.sort(sorted);
+        int[] slots = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            slots[i] = allocateSlot();
+            byId.put(sorted[i].getId(), sorted[i]);
+            slotById.put(sorted[i].getId(), slots[i]);
+        }
+        current.set(snapshot.withAll(sorted, slots));
+        return added;
+    }
+
+    /**
+     * @return Элемент с заданным id или null
+     */
+    public Vehicle getById(long id) {
+        return byId.get(id);
+    }
+
+    public boolean containsId(long id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Заменяет элемент с тем же id, что и у replacement
+     * @return false, если элемента с таким id нет
+     */
+    public boolean update(Vehicle replacement) {
+        long id = replacement.getId();
+        Vehicle old = byId.get(id);
+        if (old == null) {
+            return false;
+        }
+        int slot = slotById.get(id);
+        VehicleSnapshot without = current.get().without(old, slot);
+        byId.put(id, replacement);
+        current.set(without.with(replacement, slot));
+        return true;
+    }
+
+    /**
+     * @return Удалённый элемент или null, если элемента с таким id нет
+     */
+    public Vehicle removeById(long id) {
+        Vehicle vehicle = byId.remove(id);
+        if (vehicle != null) {
+            int slot = slotById.remove(id);
+            current.set(current.get().without(vehicle, slot));
+            releaseSlot(slot);
+        }
+        return vehicle;
+    }
+
+    /**
+     * Удаляет все элементы, меньшие заданного
+     * @return Удалённые элементы
+     */
+    public List<Vehicle> removeLower(Vehicle vehicle) {
+        VehicleSnapshot snapshot = current.get();
+        List<Vehicle> removed = snapshot.lowerThan(vehicle);
+        if (!removed.isEmpty()) {
+            int[] slots = new int[removed.size()];
+            for (int i = 0; i < slots.length; i++) {
+                long id = removed.get(i).getId();
+                byId.remove(id);
+                slots[i] = slotById.remove(id);
+            }
+            Arrays.sort(slots);
+            current.set(snapshot.withoutLower(vehicle, removed, slots));
+            // Меньшие номера освобождаются последними и займутся первыми
+            for (int i = slots.length - 1; i >= 0; i--) {
+                releaseSlot(slots[i]);
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        byId.clear();
+        slotById.clear();
+        freeCount = 0;
+        nextSlot = 0;
+        current.set(current.get().cleared());
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    public boolean isEmpty() {
+        return current.get().isEmpty();
+    }
+
+    public Vehicle first() {
+        return current.get().first();
+    }
+
+    public Vehicle last() {
+        return current.get().last();
+    }
+
+    /**
+     * @return Элементы с заданным количеством колёс в порядке compareTo (только для чтения)
+     */
+    public Collection<Vehicle> withNumberOfWheels(int numberOfWheels) {
+        return current.get().withNumberOfWheels(numberOfWheels);
+    }
+
+    /**
+     * @return Количество элементов для каждого встречающегося количества колёс, по возрастанию ключа
+     */
+    public SortedMap<Integer, Integer> countsByNumberOfWheels() {
+        return current.get().countsByNumberOfWheels();
+    }
+
+    /**
+     * @return Встречающиеся значения мощности по возрастанию; Vehicle.NO_ENGINE_POWER (мощность не задана) идёт первым
+     */
+    public long[] enginePowers() {
+        return current.get().enginePowers();
+    }
+
+    /**
+     * @param enginePower Мощность или Vehicle.NO_ENGINE_POWER
+     * @return Количество элементов с такой мощностью
+     */
+    public long countByEnginePower(long enginePower) {
+        return current.get().countByEnginePower(enginePower);
+    }
+
+    /**
+     * Обходит текущую версию коллекции; изменения во время обхода на него не влияют
+     */
+    @Override
+    public Iterator<Vehicle> iterator() {
+        return current.get().iterator();
+    }
+
+    public Stream<Vehicle> stream() {
+        return current.get().stream();
+    }
+}
@@ -0,0 +1,252 @@
+package src;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneOffset;
+
+/**
+ * Разбирает строки CSV-дампа прямо из массива байт, без split и промежуточных подстрок.
+ * Формат строки совпадает с Vehicle.toCSV. Экземпляр не потокобезопасен
+ */
+public class VehicleCsvParser {
+    private static final VehicleType[] VEHICLE_TYPE_VALUES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPE_VALUES = FuelType.values();
+    private static final byte[][] VEHICLE_TYPES = names(VEHICLE_TYPE_VALUES);
+    private static final byte[][] FUEL_TYPES = names(FUEL_TYPE_VALUES);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final int DATE_LENGTH = "dd.MM.yyyy HH:mm:ss".length();
+
+    private byte[] buf;
+    private int start;
+    private int pos;
+    private int end;
+    private long line;
+    private long headerSequence;
+
+    private static byte[][] names(Enum<?>[] constants) {
+        byte[][] names = new byte[constants.length][];
+        for (int i = 0; i < constants.length; i++) {
+            names[i] = constants[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+
+    /**
+     * @param buf Буфер с данными
+     * @param from Начало строки
+     * @param to Конец строки (без символа перевода строки)
+     * @param line Номер строки в файле для сообщений об ошибках
+     * @return Элемент, записанный в строке
+     */
+    public Vehicle parse(byte[] buf, int from, int to, long line) {
+        reset(buf, from, to, line);
+        long id = parseLong(nextField());
+        int nameEnd = nextField();
+        if (nameEnd == start) {
+            throw error("пустое имя");
+        }
+        String name = new String(buf, start, nameEnd - start, StandardCharsets.UTF_8);
+        int x = parseInt(nextField());
+        int y = parseInt(nextField());
+        if (!Coordinates.checkCoordinates(x, y)) {
+            throw error("Invalid coordinates: (" + x + "," + y + ")");
+        }
+        long creationEpochSecond = parseEpochSecond(nextField());
+        int powerEnd = nextField();
+        long enginePower = isNull(start, powerEnd) ? Vehicle.NO_ENGINE_POWER : parseLong(powerEnd);
+        int numberOfWheels = parseInt(nextField());
+        int typeIndex = parseEnum(nextField(), VEHICLE_TYPES);
+        int fuelIndex = parseEnum(lastField(), FUEL_TYPES);
+        return new Vehicle(id, name, x, y, creationEpochSecond, 0, enginePower, numberOfWheels,
+                typeIndex < 0 ? null : VEHICLE_TYPE_VALUES[typeIndex],
+                fuelIndex < 0 ? null : FUEL_TYPE_VALUES[fuelIndex]);
+    }
+
+    /**
+     * Разбирает строку заголовка с датой инициализации коллекции.
+     * После даты через запятую может идти номер последней записи журнала, вошедшей в дамп
+     */
+    public LocalDateTime parseHeader(byte[] buf, int from, int to, long line) {
+        reset(buf, from, to, line);
+        headerSequence = 0;
+        for (int i = from; i < end; i++) {
+            if (buf[i] == ',') {
+                long date = parseEpochSecond(nextField());
+                headerSequence = parseLong(lastField());
+                return LocalDateTime.ofEpochSecond(date, 0, ZoneOffset.UTC);
+            }
+        }
+        return LocalDateTime.ofEpochSecond(parseEpochSecond(lastField()), 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * @return Номер записи журнала из последнего разобранного заголовка (0, если его нет)
+     */
+    public long getHeaderSequence() {
+        return headerSequence;
+    }
+
+    private void reset(byte[] buf, int from, int to, long line) {
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        this.buf = buf;
+        this.pos = from;
+        this.end = to;
+        this.line = line;
+    }
+
+    /**
+     * Сдвигает курсор за следующую запятую, начало поля сохраняется в start
+     * @return Конец текущего поля
+     */
+    private int nextField() {
+        start = pos;
+        for (int i = pos; i < end; i++) {
+            if (buf[i] == ',') {
+                pos = i + 1;
+                return i;
+            }
+        }
+        throw error("недостаточно полей");
+    }
+
+    private int lastField() {
+        start = pos;
+        for (int i = pos; i < end; i++) {
+            if (buf[i] == ',') {
+                throw error("лишние поля");
+            }
+        }
+        int fieldEnd = end;
+        pos = end;
+        return fieldEnd;
+    }
+
+    private long parseLong(int fieldEnd) {
+        return parseLong(start, fieldEnd);
+    }
+
+    private int parseInt(int fieldEnd) {
+        long value = parseLong(fieldEnd);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("число вне диапазона int");
+        }
+        return (int) value;
+    }
+
+    private long parseLong(int from, int to) {
+        if (from == to) {
+            throw error("пустое числовое поле");
+        }
+        boolean negative = buf[from] == '-';
+        int i = negative ? from + 1 : from;
+        if (i == to) {
+            throw error("некорректное число");
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("некорректное число");
+            }
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw error("число вне диапазона long");
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw error("число вне диапазона long");
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * Разбирает дату dd.MM.yyyy HH:mm:ss в секунды эпохи (UTC) без создания объектов
+     */
+    private long parseEpochSecond(int to) {
+        int from = start;
+        if (to - from != DATE_LENGTH || buf[from + 2] != '.' || buf[from + 5] != '.'
+                || buf[from + 10] != ' ' || buf[from + 13] != ':' || buf[from + 16] != ':') {
+            throw error("дата должна быть в формате dd.MM.yyyy HH:mm:ss");
+        }
+        int year = digits(from + 6, 4);
+        int month = digits(from + 3, 2);
+        int day = digits(from, 2);
+        int hour = digits(from + 11, 2);
+        int minute = digits(from + 14, 2);
+        int second = digits(from + 17, 2);
+        if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+                || hour > 23 || minute > 59 || second > 59) {
+            throw error("некорректная дата");
+        }
+        return epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Номер дня от 01.01.1970 по пролептическому григорианскому календарю
+     */
+    private static long epochDay(long year, int month, int day) {
+        if (month <= 2) {
+            year--;
+        }
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private int digits(int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("некорректная дата");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @return Порядковый номер константы или -1 для пустого поля
+     */
+    private int parseEnum(int to, byte[][] names) {
+        int from = start;
+        if (from == to) {
+            return -1;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (matches(from, to, names[i])) {
+                return i;
+            }
+        }
+        throw error("неизвестное значение '" + new String(buf, from, to - from, StandardCharsets.UTF_8) + "'");
+    }
+
+    private boolean isNull(int from, int to) {
+        return from == to || matches(from, to, NULL);
+    }
+
+    private boolean matches(int from, int to, byte[] name) {
+        if (to - from != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (buf[from + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CsvFormatException error(String message) {
+        return new CsvFormatException(line, message);
+    }
+}
@@ -0,0 +1,120 @@
+package src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+
+/**
+ * Потоково читает CSV-дамп коллекции блоками в переиспользуемый буфер
+ * и разбирает строки через VehicleCsvParser
+ */
+public class VehicleCsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final InputStream in;
+    private final VehicleCsvParser parser = new VehicleCsvParser();
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private long line;
+
+    // Границы последней прочитанной строки
+    private int lineStart;
+    private int lineEnd;
+
+    public VehicleCsvReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return Номер последней прочитанной строки
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * Читает первую строку файла с датой инициализации коллекции
+     * @return Дата или null, если файл пуст
+     */
+    public LocalDateTime readHeader() throws IOException {
+        if (!nextLine()) {
+            return null;
+        }
+        return parser.parseHeader(buf, lineStart, lineEnd, line);
+    }
+
+    /**
+     * @return Номер последней записи журнала, вошедшей в дамп (0, если не указан)
+     */
+    public long getSequence() {
+        return parser.getHeaderSequence();
+    }
+
+    /**
+     * Читает следующий элемент, пропуская пустые строки
+     * @return Элемент или null в конце файла
+     * @throws CsvFormatException если строка некорректна; после этого чтение можно продолжить со следующей строки
+     */
+    public Vehicle next() throws IOException {
+        while (nextLine()) {
+            if (lineEnd > lineStart && !(lineEnd - lineStart == 1 && buf[lineStart] == '\r')) {
+                return parser.parse(buf, lineStart, lineEnd, line);
+            }
+        }
+        return null;
+    }
+
+    private boolean nextLine() throws IOException {
+        int scanFrom = pos;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    return takeLine(i, i + 1);
+                }
+            }
+            if (eof) {
+                return pos < limit && takeLine(limit, limit);
+            }
+            scanFrom = limit - pos;
+            fill();
+        }
+    }
+
+    private boolean takeLine(int end, int next) {
+        lineStart = pos;
+        lineEnd = end;
+        pos = next;
+        line++;
+        return true;
+    }
+
+    /**
+     * Переносит непрочитанный хвост в начало буфера и дочитывает данные
+     */
+    private void fill() throws IOException {
+        int remaining = limit - pos;
+        if (remaining == buf.length) {
+            byte[] grown = new byte[buf.length * 2];
+            System.arraycopy(buf, pos, grown, 0, remaining);
+            buf = grown;
+        } else {
+            System.arraycopy(buf, pos, buf, 0, remaining);
+        }
+        pos = 0;
+        limit = remaining;
+        int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,379 @@
+package src;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Фильтр по нескольким полям: условия, соединённые and, например
+ * {@code power >= 100 and power < 500 and wheels = 4 and type = BOAT and name ^= "truck" and x >= 0 and x <= 100}.
+ * Поля: id, power, wheels, x, y (сравнения =, <, <=, >, >=), type и fuelType (= значение или null),
+ * name (= строка или ^= префикс; строку с пробелами можно взять в кавычки). Для power сравнения
+ * не выбирают элементы без мощности, их выбирает только power = null.
+ * Условия сводятся к границам для каждого поля, поэтому проверка элемента - один проход по полям
+ * без промежуточных объектов и цепочек лямбд
+ */
+public final class VehicleQuery {
+    static final int ID = 1;
+    static final int POWER = 1 << 1;
+    static final int WHEELS = 1 << 2;
+    static final int X = 1 << 3;
+    static final int Y = 1 << 4;
+    static final int TYPE = 1 << 5;
+    static final int FUEL_TYPE = 1 << 6;
+    static final int NAME = 1 << 7;
+
+    private static final VehicleType[] VEHICLE_TYPES = VehicleType.values();
+    private static final FuelType[] FUEL_TYPES = FuelType.values();
+
+    // Поля, на которые есть условия
+    int fields;
+    long idFrom = Long.MIN_VALUE;
+    long idTo = Long.MAX_VALUE;
+    long powerFrom = Long.MIN_VALUE;
+    long powerTo = Long.MAX_VALUE;
+    int wheelsFrom = Integer.MIN_VALUE;
+    int wheelsTo = Integer.MAX_VALUE;
+    int xFrom = Integer.MIN_VALUE;
+    int xTo = Integer.MAX_VALUE;
+    int yFrom = Integer.MIN_VALUE;
+    int yTo = Integer.MAX_VALUE;
+    // Допустимые значения перечислений: бит ordinal + 1, бит 0 - null
+    long typeMask = -1;
+    long fuelTypeMask = -1;
+    String name;
+    String namePrefix;
+
+    private VehicleQuery() {
+    }
+
+    private VehicleQuery(VehicleQuery query) {
+        fields = query.fields;
+        idFrom = query.idFrom;
+        idTo = query.idTo;
+        powerFrom = query.powerFrom;
+        powerTo = query.powerTo;
+        wheelsFrom = query.wheelsFrom;
+        wheelsTo = query.wheelsTo;
+        xFrom = query.xFrom;
+        xTo = query.xTo;
+        yFrom = query.yFrom;
+        yTo = query.yTo;
+        typeMask = query.typeMask;
+        fuelTypeMask = query.fuelTypeMask;
+        name = query.name;
+        namePrefix = query.namePrefix;
+    }
+
+    /**
+     * @param text Условия, соединённые and; пустая строка - все элементы
+     * @throws IllegalArgumentException Если выражение некорректно
+     */
+    public static VehicleQuery parse(String text) {
+        VehicleQuery query = new VehicleQuery();
+        List<String> tokens = tokenize(text);
+        int i = 0;
+        while (i < tokens.size()) {
+            if (i + 3 > tokens.size()) {
+                throw new IllegalArgumentException("незаконченное условие: " + String.join(" ", tokens.subList(i, tokens.size())));
+            }
+            query.condition(tokens.get(i), tokens.get(i + 1), tokens.get(i + 2));
+            i += 3;
+            if (i < tokens.size()) {
+                if (!tokens.get(i).equalsIgnoreCase("and")) {
+                    throw new IllegalArgumentException("ожидалось and, получено " + tokens.get(i));
+                }
+                i++;
+                if (i == tokens.size()) {
+                    throw new IllegalArgumentException("после and нет условия");
+                }
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Слова, операторы и строки в кавычках (без кавычек)
+     */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = text.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("нет закрывающей кавычки");
+                }
+                tokens.add(text.substring(i + 1, end));
+                i = end + 1;
+            } else if (c == '<' || c == '>' || c == '=' || c == '^') {
+                int end = i + 1;
+                if (end < text.length() && text.charAt(end) == '=') {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else {
+                int end = i;
+                while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && "<>=^\"".indexOf(text.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+        }
+        return tokens;
+    }
+
+    private void condition(String field, String operator, String value) {
+        switch (field) {
+            case "id": {
+                long[] range = range(operator, Long.parseLong(value), idFrom, idTo);
+                idFrom = range[0];
+                idTo = range[1];
+                fields |= ID;
+                break;
+            }
+            case "power":
+            case "enginePower": {
+                if (value.equals("null")) {
+                    requireEquals(field, operator);
+                    powerFrom = Math.max(powerFrom, Vehicle.NO_ENGINE_POWER);
+                    powerTo = Math.min(powerTo, Vehicle.NO_ENGINE_POWER);
+                } else {
+                    long[] range = range(operator, Long.parseLong(value), Math.max(powerFrom, Vehicle.NO_ENGINE_POWER + 1), powerTo);
+                    powerFrom = range[0];
+                    powerTo = range[1];
+                }
+                fields |= POWER;
+                break;
+            }
+            case "wheels":
+            case "numberOfWheels": {
+                int[] range = intRange(range(operator, Integer.parseInt(value), wheelsFrom, wheelsTo));
+                wheelsFrom = range[0];
+                wheelsTo = range[1];
+                fields |= WHEELS;
+                break;
+            }
+            case "x": {
+                int[] range = intRange(range(operator, Integer.parseInt(value), xFrom, xTo));
+                xFrom = range[0];
+                xTo = range[1];
+                fields |= X;
+                break;
+            }
+            case "y": {
+                int[] range = intRange(range(operator, Integer.parseInt(value), yFrom, yTo));
+                yFrom = range[0];
+                yTo = range[1];
+                fields |= Y;
+                break;
+            }
+            case "type":
+                requireEquals(field, operator);
+                typeMask &= value.equals("null") ? 1 : 1L << (VehicleType.valueOf(value).ordinal() + 1);
+                fields |= TYPE;
+                break;
+            case "fuelType":
+                requireEquals(field, operator);
+                fuelTypeMask &= value.equals("null") ? 1 : 1L << (FuelType.valueOf(value).ordinal() + 1);
+                fields |= FUEL_TYPE;
+                break;
+            case "name":
+                if (operator.equals("^=")) {
+                    if (namePrefix != null && !value.startsWith(namePrefix) && !namePrefix.startsWith(value)) {
+                        // Несовместимые префиксы: ни одно имя не подходит
+                        name = "";
+                    }
+                    namePrefix = namePrefix == null || value.length() > namePrefix.length() ? value : namePrefix;
+                } else {
+                    requireEquals(field, operator);
+                    name = name == null || name.equals(value) ? value : "";
+                }
+                fields |= NAME;
+                break;
+            default:
+                throw new IllegalArgumentException("неизвестное поле " + field);
+        }
+    }
+
+    private static void requireEquals(String field, String operator) {
+        if (!operator.equals("=")) {
+            throw new IllegalArgumentException("для " + field + " допустимо только сравнение =");
+        }
+    }
+
+    /**
+     * @return Пересечение [from, to] с условием "поле operator value"
+     */
+    private static long[] range(String operator, long value, long from, long to) {
+        switch (operator) {
+            case "=":
+                return new long[]{Math.max(from, value), Math.min(to, value)};
+            case "<":
+                return value == Long.MIN_VALUE ? new long[]{1, 0} : new long[]{from, Math.min(to, value - 1)};
+            case "<=":
+                return new long[]{from, Math.min(to, value)};
+            case ">":
+                return value == Long.MAX_VALUE ? new long[]{1, 0} : new long[]{Math.max(from, value + 1), to};
+            case ">=":
+                return new long[]{Math.max(from, value), to};
+            default:
+                throw new IllegalArgumentException("неизвестное сравнение " + operator);
+        }
+    }
+
+    private static int[] intRange(long[] range) {
+        if (range[0] > range[1] || range[0] > Integer.MAX_VALUE || range[1] < Integer.MIN_VALUE) {
+            return new int[]{1, 0};
+        }
+        return new int[]{(int) range[0], (int) range[1]};
+    }
+
+    /**
+     * @return true, если ни один элемент не может подойти (противоречивые условия)
+     */
+    boolean isEmpty() {
+        return idFrom > idTo || powerFrom > powerTo || wheelsFrom > wheelsTo || xFrom > xTo || yFrom > yTo
+                || typeMask == 0 || fuelTypeMask == 0 || "".equals(name)
+                || name != null && namePrefix != null && !name.startsWith(namePrefix);
+    }
+
+    /**
+     * @param pushed Поля, условия на которые уже выполнены способом доступа (индексом)
+     * @return Фильтр только по остальным полям
+     */
+    VehicleQuery without(int pushed) {
+        VehicleQuery residual = new VehicleQuery(this);
+        residual.fields &= ~pushed;
+        return residual;
+    }
+
+    /**
+     * Проверяет элемент по всем полям с условиями; поля без условий не читаются
+     */
+    public boolean matches(Vehicle vehicle) {
+        int fields = this.fields;
+        if (fields == 0) {
+            return true;
+        }
+        if ((fields & POWER) != 0) {
+            long power = vehicle.getEnginePowerValue();
+            if (power < powerFrom || power > powerTo) {
+                return false;
+            }
+        }
+        if ((fields & WHEELS) != 0) {
+            int wheels = vehicle.getNumberOfWheels();
+            if (wheels < wheelsFrom || wheels > wheelsTo) {
+                return false;
+            }
+        }
+        if ((fields & TYPE) != 0 && (typeMask & 1L << ordinal(vehicle.getType())) == 0) {
+            return false;
+        }
+        if ((fields & FUEL_TYPE) != 0 && (fuelTypeMask & 1L << ordinal(vehicle.getFuelType())) == 0) {
+            return false;
+        }
+        if ((fields & X) != 0) {
+            int x = vehicle.getX();
+            if (x < xFrom || x > xTo) {
+                return false;
+            }
+        }
+        if ((fields & Y) != 0) {
+            int y = vehicle.getY();
+            if (y < yFrom || y > yTo) {
+                return false;
+            }
+        }
+        if ((fields & ID) != 0) {
+            long id = vehicle.getIdValue();
+            if (id < idFrom || id > idTo) {
+                return false;
+            }
+        }
+        if ((fields & NAME) != 0) {
+            String vehicleName = vehicle.getName();
+            if (name != null && !name.equals(vehicleName) || namePrefix != null && !vehicleName.startsWith(namePrefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int ordinal(Enum<?> value) {
+        return value == null ? 0 : value.ordinal() + 1;
+    }
+
+    /**
+     * Условия в каноническом виде (границы полей), для вывода explain
+     */
+    @Override
+    public String toString() {
+        List<String> conditions = new ArrayList<>();
+        if ((fields & ID) != 0) {
+            conditions.add(bounds("id", idFrom, idTo, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+        if ((fields & POWER) != 0) {
+            conditions.add(powerFrom == Vehicle.NO_ENGINE_POWER && powerTo == Vehicle.NO_ENGINE_POWER ? "power = null"
+                    : bounds("power", powerFrom, powerTo, Vehicle.NO_ENGINE_POWER + 1, Long.MAX_VALUE));
+        }
+        if ((fields & WHEELS) != 0) {
+            conditions.add(bounds("wheels", wheelsFrom, wheelsTo, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        }
+        if ((fields & X) != 0) {
+            conditions.add(bounds("x", xFrom, xTo, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        }
+        if ((fields & Y) != 0) {
+            conditions.add(bounds("y", yFrom, yTo, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        }
+        if ((fields & TYPE) != 0) {
+            conditions.add(values("type", typeMask, VEHICLE_TYPES));
+        }
+        if ((fields & FUEL_TYPE) != 0) {
+            conditions.add(values("fuelType", fuelTypeMask, FUEL_TYPES));
+        }
+        if ((fields & NAME) != 0) {
+            if (name != null) {
+                conditions.add("name = \"" + name + "\"");
+            }
+            if (namePrefix != null) {
+                conditions.add("name ^= \"" + namePrefix + "\"");
+            }
+        }
+        return conditions.isEmpty() ? "none" : String.join(" and ", conditions);
+    }
+
+    private static String bounds(String field, long from, long to, long min, long max) {
+        if (from > to) {
+            return field + " in empty range";
+        }
+        if (from == to) {
+            return field + " = " + from;
+        }
+        if (from == min) {
+            return field + " <= " + to;
+        }
+        if (to == max) {
+            return field + " >= " + from;
+        }
+        return from + " <= " + field + " <= " + to;
+    }
+
+    private static String values(String field, long mask, Enum<?>[] constants) {
+        List<String> names = new ArrayList<>();
+        if ((mask & 1) != 0) {
+            names.add("null");
+        }
+        for (Enum<?> constant : constants) {
+            if ((mask & 1L << (constant.ordinal() + 1)) != 0) {
+                names.add(constant.name());
+            }
+        }
+        return names.size() == 1 ? field + " = " + names.get(0) : field + " in " + names;
+    }
+}
@@ -0,0 +1,691 @@
+package src;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Неизменяемая версия коллекции: дерево элементов в порядке compareTo, счётчики по мощности (PowerCountTreap), индекс по количеству колёс
+ * (для каждого количества - своё дерево тех же элементов), индекс по координатам (SpatialTreap) и битовые карты
+ * значений VehicleType и FuelType над номерами слотов (слот элемента назначает VehicleCollection). Версии разделяют общие узлы, поэтому
+ * новая версия после изменения строится за O(log n) (плюс копирование небольшого массива ключей индекса).
+ * Команды чтения работают с версией, полученной в начале команды, без блокировок
+ */
+public final class VehicleSnapshot implements Iterable<Vehicle> {
+    static final VehicleSnapshot EMPTY = new VehicleSnapshot(0, null, null, new int[0], new VehicleTreap.Node[0], null,
+            emptyBitmaps(), SlotTrie.EMPTY);
+    // Таблица слотов: листы SlotTrie - массивы по SLOT_LEAF_SIZE элементов
+    private static final int SLOT_LEAF_SHIFT = 6;
+    private static final int SLOT_LEAF_SIZE = 1 << SLOT_LEAF_SHIFT;
+
+    private final long version;
+    private final VehicleTreap.Node root;
+    private final PowerCountTreap.Node powerCounts;
+    // Количества колёс по возрастанию и деревья элементов с этими количествами
+    private final int[] wheelKeys;
+    private final VehicleTreap.Node[] wheelRoots;
+    private final SpatialTreap.Node spatialRoot;
+    // Карты с номерами BitmapQuery.bitmapIndex и элементы по номерам слотов
+    private final SlotBitmap[] bitmaps;
+    private final SlotTrie slots;
+    // Элементы в порядке compareTo для параллельных просмотров; строится при первом запросе
+    private volatile Vehicle[] array;
+
+    private VehicleSnapshot(long version, VehicleTreap.Node root, PowerCountTreap.Node powerCounts, int[] wheelKeys,
+                            VehicleTreap.Node[] wheelRoots, SpatialTreap.Node spatialRoot, SlotBitmap[] bitmaps, SlotTrie slots) {
+        this.version = version;
+        this.root = root;
+        this.powerCounts = powerCounts;
+        this.wheelKeys = wheelKeys;
+        this.wheelRoots = wheelRoots;
+        this.spatialRoot = spatialRoot;
+        this.bitmaps = bitmaps;
+        this.slots = slots;
+    }
+
+    private static SlotBitmap[] emptyBitmaps() {
+        SlotBitmap[] bitmaps = new SlotBitmap[BitmapQuery.BITMAPS];
+        Arrays.fill(bitmaps, SlotBitmap.EMPTY);
+        return bitmaps;
+    }
+
+    /**
+     * @param sorted Элементы в порядке compareTo без равных; элемент sorted[i] получает слот i
+     */
+    static VehicleSnapshot build(Vehicle[] sorted) {
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        for (Vehicle vehicle : sorted) {
+            counts.merge(vehicle.getNumberOfWheels(), 1, Integer::sum);
+        }
+        int[] keys = new int[counts.size()];
+        Vehicle[][] groups = new Vehicle[counts.size()][];
+        int k = 0;
+        for (var entry : counts.entrySet()) {
+            keys[k] = entry.getKey();
+            groups[k++] = new Vehicle[entry.getValue()];
+        }
+        int[] filled = new int[keys.length];
+        for (Vehicle vehicle : sorted) {
+            int group = Arrays.binarySearch(keys, vehicle.getNumberOfWheels());
+            groups[group][filled[group]++] = vehicle;
+        }
+        VehicleTreap.Node[] roots = new VehicleTreap.Node[keys.length];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = VehicleTreap.build(groups[i]);
+        }
+        long[][] words = new long[BitmapQuery.BITMAPS][(sorted.length + 63) >>> 6];
+        Object[] leaves = new Object[(sorted.length + SLOT_LEAF_SIZE - 1) >>> SLOT_LEAF_SHIFT];
+        for (int slot = 0; slot < sorted.length; slot++) {
+            Vehicle vehicle = sorted[slot];
+            words[BitmapQuery.bitmapIndex(vehicle.getType())][slot >>> 6] |= 1L << slot;
+            words[BitmapQuery.bitmapIndex(vehicle.getFuelType())][slot >>> 6] |= 1L << slot;
+        }
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = Arrays.copyOfRange(sorted, i * SLOT_LEAF_SIZE, Math.min(sorted.length, (i + 1) * SLOT_LEAF_SIZE));
+        }
+        SlotBitmap[] bitmaps = new SlotBitmap[BitmapQuery.BITMAPS];
+        for (int i = 0; i < bitmaps.length; i++) {
+            bitmaps[i] = SlotBitmap.of(words[i]);
+        }
+        return new VehicleSnapshot(0, VehicleTreap.build(sorted), PowerCountTreap.build(sorted), keys, roots, SpatialTreap.build(sorted),
+                bitmaps, SlotTrie.of(leaves));
+    }
+
+    /**
+     * @return Номер версии: увеличивается с каждым изменением коллекции
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return VehicleTreap.size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * @return Наименьший элемент; NoSuchElementException, если версия пуста
+     */
+    public Vehicle first() {
+        return VehicleTreap.first(root);
+    }
+
+    /**
+     * @return Наибольший элемент; NoSuchElementException, если версия пуста
+     */
+    public Vehicle last() {
+        return VehicleTreap.last(root);
+    }
+
+    /**
+     * @return true, если есть элемент, равный vehicle по compareTo
+     */
+    public boolean contains(Vehicle vehicle) {
+        return VehicleTreap.contains(root, vehicle);
+    }
+
+    @Override
+    public Iterator<Vehicle> iterator() {
+        return new VehicleTreap.InOrder(root);
+    }
+
+    /**
+     * @param offset Количество пропускаемых первых элементов (пропуск за O(log n))
+     * @return Элементы в порядке compareTo, начиная с номера offset
+     */
+    public Iterator<Vehicle> iterator(int offset) {
+        return new VehicleTreap.InOrder(root, offset);
+    }
+
+    /**
+     * Массив строится один раз на версию: куски заполняются независимо, каждый - обходом дерева с его начала
+     * @return Элементы в порядке compareTo (только для чтения)
+     */
+    Vehicle[] toArray(ParallelScan scan) {
+        Vehicle[] result = array;
+        if (result == null) {
+            Vehicle[] elements = new Vehicle[size()];
+            scan.split(elements.length, 0, elements.length, (from, to) -> {
+                Iterator<Vehicle> iterator = new VehicleTreap.InOrder(root, from, to - from);
+                for (int i = from; i < to; i++) {
+                    elements[i] = iterator.next();
+                }
+                return null;
+            });
+            array = result = elements;
+        }
+        return result;
+    }
+
+    /**
+     * Куски диапазона обходятся независимо, каждый - от своего начала (спуск по размерам поддеревьев)
+     * @return Элементы с номерами [from, to) в порядке compareTo, прошедшие filter
+     */
+    Vehicle[] select(int from, int to, ParallelScan scan, Predicate<Vehicle> filter) {
+        return ParallelScan.concat(scan.split(to - from, from, to, (chunkFrom, chunkTo) -> {
+            Vehicle[] matches = new Vehicle[16];
+            int count = 0;
+            for (Iterator<Vehicle> iterator = new VehicleTreap.InOrder(root, chunkFrom, chunkTo - chunkFrom); iterator.hasNext(); ) {
+                Vehicle vehicle = iterator.next();
+                if (filter.test(vehicle)) {
+                    if (count == matches.length) {
+                        matches = Arrays.copyOf(matches, count * 2);
+                    }
+                    matches[count++] = vehicle;
+                }
+            }
+            return Arrays.copyOf(matches, count);
+        }));
+    }
+
+    public Stream<Vehicle> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(iterator(), size(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * @return Элементы с заданным количеством колёс в порядке compareTo
+     */
+    public Collection<Vehicle> withNumberOfWheels(int numberOfWheels) {
+        int group = Arrays.binarySearch(wheelKeys, numberOfWheels);
+        VehicleTreap.Node groupRoot = group < 0 ? null : wheelRoots[group];
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Vehicle> iterator() {
+                return new VehicleTreap.InOrder(groupRoot);
+            }
+
+            @Override
+            public int size() {
+                return VehicleTreap.size(groupRoot);
+            }
+        };
+    }
+
+    /**
+     * @param offset Количество пропускаемых первых элементов группы (пропуск за O(log n))
+     * @return Элементы с заданным количеством колёс в порядке compareTo, начиная с номера offset в группе
+     */
+    public Iterator<Vehicle> withNumberOfWheels(int numberOfWheels, int offset) {
+        int group = Arrays.binarySearch(wheelKeys, numberOfWheels);
+        return new VehicleTreap.InOrder(group < 0 ? null : wheelRoots[group], offset);
+    }
+
+    /**
+     * @return Количество элементов для каждого встречающегося количества колёс, по возрастанию ключа
+     */
+    public SortedMap<Integer, Integer> countsByNumberOfWheels() {
+        SortedMap<Integer, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < wheelKeys.length; i++) {
+            counts.put(wheelKeys[i], wheelRoots[i].size);
+        }
+        return counts;
+    }
+
+    /**
+     * @return Встречающиеся значения мощности по возрастанию, O(d) для d различных значений;
+     *         Vehicle.NO_ENGINE_POWER (мощность не задана) идёт первым
+     */
+    public long[] enginePowers() {
+        return PowerCountTreap.keys(powerCounts);
+    }
+
+    /**
+     * @param enginePower Мощность или Vehicle.NO_ENGINE_POWER
+     * @return Количество элементов с такой мощностью, O(log d)
+     */
+    public long countByEnginePower(long enginePower) {
+        return PowerCountTreap.count(powerCounts, enginePower);
+    }
+
+    /**
+     * Передаёт visitor каждую встречающуюся мощность с количеством элементов по возрастанию мощности
+     * (Vehicle.NO_ENGINE_POWER первым): O(d) для d различных значений
+     */
+    public void forEachEnginePowerCount(PowerCountTreap.Visitor visitor) {
+        PowerCountTreap.forEach(powerCounts, visitor);
+    }
+
+    /**
+     * Элементы упорядочены прежде всего по мощности, поэтому элементы диапазона идут подряд,
+     * а границы находятся спуском по дереву: O(log n)
+     * @return Количество элементов с мощностью в [from, to); элементы без мощности в диапазон не входят
+     */
+    public int countByEnginePowerRange(long from, long to) {
+        return Math.max(0, rankOfEnginePower(to) - rankOfEnginePower(from));
+    }
+
+    /**
+     * @param offset Количество пропускаемых первых элементов диапазона
+     * @return Элементы с мощностью в [from, to) в порядке compareTo, начиная с номера offset в диапазоне;
+     *         обход стоит O(log n + k) для k выданных элементов
+     */
+    public Iterator<Vehicle> withEnginePowerRange(long from, long to, int offset) {
+        int start = rankOfEnginePower(from);
+        int count = rankOfEnginePower(to) - start;
+        if (count <= offset) {
+            return new VehicleTreap.InOrder(null);
+        }
+        return new VehicleTreap.InOrder(root, start + offset, count - offset);
+    }
+
+    /**
+     * @return Не больше k элементов с наибольшей мощностью в порядке убывания compareTo
+     *         (элементы без мощности не входят)
+     */
+    public List<Vehicle> mostPowerful(int k) {
+        int start = Math.max(rankOfEnginePower(Vehicle.NO_ENGINE_POWER + 1), size() - k);
+        List<Vehicle> top = new ArrayList<>(size() - start);
+        new VehicleTreap.InOrder(root, start).forEachRemaining(top::add);
+        Collections.reverse(top);
+        return top;
+    }
+
+    /**
+     * @return Количество элементов с мощностью в [from, to] (from = NO_ENGINE_POWER включает элементы без мощности)
+     */
+    int countWithEnginePowerBetween(long from, long to) {
+        if (from > to) {
+            return 0;
+        }
+        int end = to == Long.MAX_VALUE ? size() : VehicleTreap.countPowerBelow(root, to + 1);
+        return end - VehicleTreap.countPowerBelow(root, from);
+    }
+
+    /**
+     * @return Номер первого элемента с мощностью не меньше from
+     */
+    int enginePowerRank(long from) {
+        return VehicleTreap.countPowerBelow(root, from);
+    }
+
+    /**
+     * @return Элементы с мощностью в [from, to] в порядке compareTo
+     */
+    Iterator<Vehicle> withEnginePowerBetween(long from, long to) {
+        int count = countWithEnginePowerBetween(from, to);
+        return new VehicleTreap.InOrder(count == 0 ? null : root, VehicleTreap.countPowerBelow(root, from), count);
+    }
+
+    /**
+     * @return Встречающиеся количества колёс в [from, to] по возрастанию
+     */
+    int[] wheelKeysBetween(int from, int to) {
+        int start = Arrays.binarySearch(wheelKeys, from);
+        start = start < 0 ? -start - 1 : start;
+        int end = to == Integer.MAX_VALUE ? wheelKeys.length : Arrays.binarySearch(wheelKeys, to + 1);
+        end = end < 0 ? -end - 1 : end;
+        return Arrays.copyOfRange(wheelKeys, start, Math.max(start, end));
+    }
+
+    /**
+     * @see SpatialTreap#countInBox
+     */
+    int countInBox(int xFrom, int xTo, int yFrom, int yTo, int maxRows) {
+        return SpatialTreap.countInBox(spatialRoot, xFrom, xTo, yFrom, yTo, maxRows);
+    }
+
+    /**
+     * Передаёт visitor элементы прямоугольника [xFrom, xTo] x [yFrom, yTo] (не в порядке compareTo)
+     */
+    void forEachInBox(int xFrom, int xTo, int yFrom, int yTo, SpatialTreap.Visitor visitor) {
+        SpatialTreap.forEachInBox(spatialRoot, xFrom, xTo, yFrom, yTo, visitor);
+    }
+
+    /**
+     * @return Битовые карты с номерами BitmapQuery.bitmapIndex (только для чтения)
+     */
+    SlotBitmap[] bitmaps() {
+        return bitmaps;
+    }
+
+    /**
+     * @return Элемент в слоте slot или null, если слот свободен
+     */
+    Vehicle vehicleAt(int slot) {
+        Vehicle[] leaf = (Vehicle[]) slots.leaf(slot >>> SLOT_LEAF_SHIFT);
+        int index = slot & (SLOT_LEAF_SIZE - 1);
+        return leaf == null || index >= leaf.length ? null : leaf[index];
+    }
+
+    /**
+     * @return Номер первого элемента с мощностью не меньше enginePower (элементы без мощности всегда раньше)
+     */
+    private int rankOfEnginePower(long enginePower) {
+        return VehicleTreap.countPowerBelow(root, Math.max(enginePower, Vehicle.NO_ENGINE_POWER + 1));
+    }
+
+    /**
+     * @return Элементы на расстоянии не больше radius от точки (x, y) по возрастанию расстояния (при равенстве - по id)
+     */
+    public List<Vehicle> withinDistance(int x, int y, double radius) {
+        return neighbors(x, y, radius).nearest(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Радиус поиска удваивается, пока в круг не попадёт хотя бы k элементов: тогда k ближайших
+     * в круге - k ближайших вообще, так как все остальные элементы дальше радиуса
+     * @return Не больше k элементов, ближайших к точке (x, y), по возрастанию расстояния (при равенстве - по id)
+     */
+    public List<Vehicle> nearest(int x, int y, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        double radius = k >= size() ? Double.POSITIVE_INFINITY : SpatialTreap.ROW_HEIGHT;
+        while (true) {
+            Neighbors neighbors = neighbors(x, y, radius);
+            if (neighbors.count >= k || radius == Double.POSITIVE_INFINITY) {
+                return neighbors.nearest(k);
+            }
+            // За пределами диапазона int круг накрывает все возможные координаты
+            radius = radius > 1L << 33 ? Double.POSITIVE_INFINITY : radius * 2;
+        }
+    }
+
+    private Neighbors neighbors(int x, int y, double radius) {
+        Neighbors neighbors = new Neighbors(x, y, radius);
+        SpatialTreap.forEachInBox(spatialRoot,
+                (int) Math.max(Integer.MIN_VALUE, Math.ceil(x - radius)), (int) Math.min(Integer.MAX_VALUE, Math.floor(x + radius)),
+                (int) Math.max(Integer.MIN_VALUE, Math.ceil(y - radius)), (int) Math.min(Integer.MAX_VALUE, Math.floor(y + radius)),
+                neighbors);
+        return neighbors;
+    }
+
+    /**
+     * Элементы квадрата, попавшие в круг, с квадратами расстояний до центра
+     */
+    private static final class Neighbors implements SpatialTreap.Visitor {
+        private final int x;
+        private final int y;
+        private final double radiusSquared;
+        private Vehicle[] vehicles = new Vehicle[16];
+        private double[] distances = new double[16];
+        private int count;
+
+        Neighbors(int x, int y, double radius) {
+            this.x = x;
+            this.y = y;
+            this.radiusSquared = radius * radius;
+        }
+
+        @Override
+        public void visit(Vehicle vehicle, int vehicleX, int vehicleY) {
+            double dx = (double) vehicleX - x;
+            double dy = (double) vehicleY - y;
+            double distance = dx * dx + dy * dy;
+            if (distance > radiusSquared) {
+                return;
+            }
+            if (count == vehicles.length) {
+                vehicles = Arrays.copyOf(vehicles, count * 2);
+                distances = Arrays.copyOf(distances, count * 2);
+            }
+            vehicles[count] = vehicle;
+            distances[count++] = distance;
+        }
+
+        List<Vehicle> nearest(int k) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int result = Double.compare(distances[a], distances[b]);
+                return result != 0 ? result : Long.compare(vehicles[a].getIdValue(), vehicles[b].getIdValue());
+            });
+            List<Vehicle> nearest = new ArrayList<>(Math.min(k, count));
+            for (int i = 0; i < count && i < k; i++) {
+                nearest.add(vehicles[order[i]]);
+            }
+            return nearest;
+        }
+    }
+
+    /**
+     * @return Элементы, меньшие vehicle, в порядке compareTo
+     */
+    List<Vehicle> lowerThan(Vehicle vehicle) {
+        List<Vehicle> lower = new ArrayList<>();
+        for (Vehicle v : this) {
+            if (v.compareTo(vehicle) >= 0) {
+                break;
+            }
+            lower.add(v);
+        }
+        return lower;
+    }
+
+    /**
+     * @param vehicle Элемент, которого нет в версии
+     * @param slot Свободный слот для него
+     */
+    VehicleSnapshot with(Vehicle vehicle, int slot) {
+        int group = Arrays.binarySearch(wheelKeys, vehicle.getNumberOfWheels());
+        VehicleTreap.Node groupRoot = group < 0 ? null : wheelRoots[group];
+        SlotBitmap[] newBitmaps = bitmaps.clone();
+        int type = BitmapQuery.bitmapIndex(vehicle.getType());
+        int fuelType = BitmapQuery.bitmapIndex(vehicle.getFuelType());
+        newBitmaps[type] = newBitmaps[type].with(slot);
+        newBitmaps[fuelType] = newBitmaps[fuelType].with(slot);
+        return withWheelGroup(VehicleTreap.insert(root, vehicle),
+                PowerCountTreap.add(powerCounts, vehicle.getEnginePowerValue(), 1), vehicle.getNumberOfWheels(),
+                VehicleTreap.insert(groupRoot, vehicle), SpatialTreap.insert(spatialRoot, vehicle),
+                newBitmaps, withSlot(slot, vehicle));
+    }
+
+    /**
+     * @param vehicle Элемент, который есть в версии
+     * @param slot Его слот
+     */
+    VehicleSnapshot without(Vehicle vehicle, int slot) {
+        int group = Arrays.binarySearch(wheelKeys, vehicle.getNumberOfWheels());
+        SlotBitmap[] newBitmaps = bitmaps.clone();
+        int type = BitmapQuery.bitmapIndex(vehicle.getType());
+        int fuelType = BitmapQuery.bitmapIndex(vehicle.getFuelType());
+        newBitmaps[type] = newBitmaps[type].without(slot);
+        newBitmaps[fuelType] = newBitmaps[fuelType].without(slot);
+        return withWheelGroup(VehicleTreap.remove(root, vehicle),
+                PowerCountTreap.add(powerCounts, vehicle.getEnginePowerValue(), -1), vehicle.getNumberOfWheels(),
+                VehicleTreap.remove(wheelRoots[group], vehicle), SpatialTreap.remove(spatialRoot, vehicle),
+                newBitmaps, withSlot(slot, null));
+    }
+
+    private SlotTrie withSlot(int slot, Vehicle vehicle) {
+        Vehicle[] leaf = (Vehicle[]) slots.leaf(slot >>> SLOT_LEAF_SHIFT);
+        Vehicle[] copy = leaf == null ? new Vehicle[SLOT_LEAF_SIZE] : Arrays.copyOf(leaf, SLOT_LEAF_SIZE);
+        copy[slot & (SLOT_LEAF_SIZE - 1)] = vehicle;
+        return slots.withLeaf(slot >>> SLOT_LEAF_SHIFT, copy);
+    }
+
+    /**
+     * @param lower Элементы, меньшие vehicle (lowerThan)
+     * @param lowerSlots Их слоты по возрастанию
+     * @return Версия без элементов, меньших vehicle
+     */
+    VehicleSnapshot withoutLower(Vehicle vehicle, List<Vehicle> lower, int[] lowerSlots) {
+        VehicleTreap.Node newRoot = VehicleTreap.split(root, vehicle)[1];
+        // Удалены все мощности меньше мощности vehicle и часть элементов с ней самой
+        long power = vehicle.getEnginePowerValue();
+        PowerCountTreap.Node newPowerCounts = PowerCountTreap.withCount(PowerCountTreap.split(powerCounts, power)[1], power,
+                VehicleTreap.countPowerAtMost(newRoot, power));
+        SpatialTreap.Node newSpatialRoot;
+        if (lower.size() > size() / 4) {
+            // Удаление большой части дешевле заменить построением индекса по оставшимся элементам
+            Vehicle[] kept = new Vehicle[VehicleTreap.size(newRoot)];
+            int i = 0;
+            for (Iterator<Vehicle> iterator = new VehicleTreap.InOrder(newRoot); iterator.hasNext(); ) {
+                kept[i++] = iterator.next();
+            }
+            newSpatialRoot = SpatialTreap.build(kept);
+        } else {
+            newSpatialRoot = spatialRoot;
+            for (Vehicle removed : lower) {
+                newSpatialRoot = SpatialTreap.remove(newSpatialRoot, removed);
+            }
+        }
+        int kept = 0;
+        VehicleTreap.Node[] roots = new VehicleTreap.Node[wheelRoots.length];
+        for (int i = 0; i < wheelRoots.length; i++) {
+            roots[i] = VehicleTreap.split(wheelRoots[i], vehicle)[1];
+            if (roots[i] != null) {
+                kept++;
+            }
+        }
+        int[] keys = new int[kept];
+        VehicleTreap.Node[] keptRoots = new VehicleTreap.Node[kept];
+        kept = 0;
+        for (int i = 0; i < roots.length; i++) {
+            if (roots[i] != null) {
+                keys[kept] = wheelKeys[i];
+                keptRoots[kept++] = roots[i];
+            }
+        }
+        SlotBitmap[] newBitmaps = new SlotBitmap[bitmaps.length];
+        for (int i = 0; i < bitmaps.length; i++) {
+            newBitmaps[i] = bitmaps[i].without(lowerSlots);
+        }
+        return new VehicleSnapshot(version + 1, newRoot, newPowerCounts, keys, keptRoots, newSpatialRoot, newBitmaps,
+                withSlots(lowerSlots, new Vehicle[lowerSlots.length]));
+    }
+
+    /**
+     * Добавляет пачку элементов одной новой версией: из пачки строятся деревья (основное, по группам колёс,
+     * по координатам), которые объединяются с деревьями версии, а листы карт и таблицы слотов копируются
+     * по одному разу на лист. Это дешевле, чем вставлять элементы по одному через промежуточные версии
+     * @param sorted Элементы, которых нет в версии, в порядке compareTo без равных
+     * @param newSlots Свободные слоты для них: newSlots[i] - слот sorted[i]
+     */
+    VehicleSnapshot withAll(Vehicle[] sorted, int[] newSlots) {
+        PowerCountTreap.Node newPowerCounts = powerCounts;
+        for (int i = 0, start = 0; i < sorted.length; start = i) {
+            long power = sorted[i].getEnginePowerValue();
+            while (i < sorted.length && sorted[i].getEnginePowerValue() == power) {
+                i++;
+            }
+            newPowerCounts = PowerCountTreap.add(newPowerCounts, power, i - start);
+        }
+        TreeMap<Integer, VehicleTreap.Node> groups = new TreeMap<>();
+        for (int i = 0; i < wheelKeys.length; i++) {
+            groups.put(wheelKeys[i], wheelRoots[i]);
+        }
+        TreeMap<Integer, List<Vehicle>> added = new TreeMap<>();
+        for (Vehicle vehicle : sorted) {
+            added.computeIfAbsent(vehicle.getNumberOfWheels(), key -> new ArrayList<>()).add(vehicle);
+        }
+        for (var entry : added.entrySet()) {
+            groups.merge(entry.getKey(), VehicleTreap.build(entry.getValue().toArray(new Vehicle[0])), VehicleTreap::union);
+        }
+        int[] keys = new int[groups.size()];
+        VehicleTreap.Node[] roots = new VehicleTreap.Node[groups.size()];
+        int k = 0;
+        for (var entry : groups.entrySet()) {
+            keys[k] = entry.getKey();
+            roots[k++] = entry.getValue();
+        }
+
+        // Слоты по возрастанию вместе с номерами элементов в sorted
+        long[] order = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            order[i] = (long) newSlots[i] << 32 | i;
+        }
+        Arrays.sort(order);
+        int[] orderedSlots = new int[sorted.length];
+        Vehicle[] ordered = new Vehicle[sorted.length];
+        int[] counts = new int[bitmaps.length];
+        for (int i = 0; i < order.length; i++) {
+            orderedSlots[i] = (int) (order[i] >>> 32);
+            ordered[i] = sorted[(int) order[i]];
+            counts[BitmapQuery.bitmapIndex(ordered[i].getType())]++;
+            counts[BitmapQuery.bitmapIndex(ordered[i].getFuelType())]++;
+        }
+        int[][] bitmapSlots = new int[bitmaps.length][];
+        for (int i = 0; i < bitmaps.length; i++) {
+            bitmapSlots[i] = new int[counts[i]];
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < ordered.length; i++) {
+            int type = BitmapQuery.bitmapIndex(ordered[i].getType());
+            int fuelType = BitmapQuery.bitmapIndex(ordered[i].getFuelType());
+            bitmapSlots[type][counts[type]++] = orderedSlots[i];
+            bitmapSlots[fuelType][counts[fuelType]++] = orderedSlots[i];
+        }
+        SlotBitmap[] newBitmaps = new SlotBitmap[bitmaps.length];
+        for (int i = 0; i < bitmaps.length; i++) {
+            newBitmaps[i] = bitmaps[i].with(bitmapSlots[i]);
+        }
+        return new VehicleSnapshot(version + 1, VehicleTreap.union(root, VehicleTreap.build(sorted)), newPowerCounts, keys, roots,
+                SpatialTreap.union(spatialRoot, SpatialTreap.build(sorted)), newBitmaps, withSlots(orderedSlots, ordered));
+    }
+
+    /**
+     * Записывает элементы в таблицу слотов, копируя каждый затронутый лист один раз
+     * @param sortedSlots Слоты по возрастанию
+     * @param vehicles Элементы для них (null - освободить слот)
+     */
+    private SlotTrie withSlots(int[] sortedSlots, Vehicle[] vehicles) {
+        SlotTrie newSlots = slots;
+        int i = 0;
+        while (i < sortedSlots.length) {
+            int index = sortedSlots[i] >>> SLOT_LEAF_SHIFT;
+            Vehicle[] leaf = (Vehicle[]) slots.leaf(index);
+            leaf = leaf == null ? new Vehicle[SLOT_LEAF_SIZE] : Arrays.copyOf(leaf, SLOT_LEAF_SIZE);
+            for (; i < sortedSlots.length && sortedSlots[i] >>> SLOT_LEAF_SHIFT == index; i++) {
+                leaf[sortedSlots[i] & (SLOT_LEAF_SIZE - 1)] = vehicles[i];
+            }
+            newSlots = newSlots.withLeaf(index, leaf);
+        }
+        return newSlots;
+    }
+
+    VehicleSnapshot cleared() {
+        return new VehicleSnapshot(version + 1, null, null, EMPTY.wheelKeys, EMPTY.wheelRoots, null, EMPTY.bitmaps, SlotTrie.EMPTY);
+    }
+
+    /**
+     * @return Следующая версия с заданными корнями, счётчиками, картами и таблицей слотов и заменённым деревом группы numberOfWheels (null - удалить группу)
+     */
+    private VehicleSnapshot withWheelGroup(VehicleTreap.Node newRoot, PowerCountTreap.Node newPowerCounts,
+                                           int numberOfWheels, VehicleTreap.Node groupRoot,
+                                           SpatialTreap.Node newSpatialRoot, SlotBitmap[] newBitmaps, SlotTrie newSlots) {
+        int group = Arrays.binarySearch(wheelKeys, numberOfWheels);
+        int[] keys;
+        VehicleTreap.Node[] roots;
+        if (group >= 0 && groupRoot != null) {
+            keys = wheelKeys;
+            roots = wheelRoots.clone();
+            roots[group] = groupRoot;
+        } else if (group >= 0) {
+            keys = new int[wheelKeys.length - 1];
+            roots = new VehicleTreap.Node[wheelRoots.length - 1];
+            System.arraycopy(wheelKeys, 0, keys, 0, group);
+            System.arraycopy(wheelKeys, group + 1, keys, group, keys.length - group);
+            System.arraycopy(wheelRoots, 0, roots, 0, group);
+            System.arraycopy(wheelRoots, group + 1, roots, group, roots.length - group);
+        } else {
+            int insertAt = -group - 1;
+            keys = new int[wheelKeys.length + 1];
+            roots = new VehicleTreap.Node[wheelRoots.length + 1];
+            System.arraycopy(wheelKeys, 0, keys, 0, insertAt);
+            System.arraycopy(wheelKeys, insertAt, keys, insertAt + 1, wheelKeys.length - insertAt);
+            System.arraycopy(wheelRoots, 0, roots, 0, insertAt);
+            System.arraycopy(wheelRoots, insertAt, roots, insertAt + 1, wheelRoots.length - insertAt);
+            keys[insertAt] = numberOfWheels;
+            roots[insertAt] = groupRoot;
+        }
+        return new VehicleSnapshot(version + 1, newRoot, newPowerCounts, keys, roots, newSpatialRoot, newBitmaps, newSlots);
+    }
+}
@@ -0,0 +1,61 @@
+package src;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Общее для всех сеансов состояние: коллекция, дата её инициализации, журнал файла данных,
+ * блокировка, под которой команды читают и изменяют коллекцию, и пул для параллельных просмотров
+ */
+public class VehicleStore implements Closeable {
+    private final VehicleCollection vehicles;
+    private final LocalDateTime initDate;
+    private final Journal journal;
+    // Изменения коллекции и сохранение выполняются по одному под блокировкой записи. Команды вывода читают
+    // неизменяемые версии коллекции без блокировки, блокировка чтения нужна только для поиска по id
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ParallelScan scan;
+
+    public VehicleStore(VehicleCollection vehicles, LocalDateTime initDate, Journal journal) {
+        this(vehicles, initDate, journal, ParallelScan.SEQUENTIAL);
+    }
+
+    public VehicleStore(VehicleCollection vehicles, LocalDateTime initDate, Journal journal, ParallelScan scan) {
+        this.vehicles = vehicles;
+        this.initDate = initDate;
+        this.journal = journal;
+        this.scan = scan;
+    }
+
+    public VehicleCollection getVehicles() {
+        return vehicles;
+    }
+
+    public LocalDateTime getInitDate() {
+        return initDate;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    public ParallelScan getScan() {
+        return scan;
+    }
+
+    /**
+     * Дожидается фонового сжатия, закрывает журнал и останавливает пул просмотров
+     */
+    @Override
+    public void close() throws IOException {
+        scan.shutdown();
+        journal.close();
+    }
+}
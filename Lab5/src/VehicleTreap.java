@@ -0,0 +1,320 @@
+package src;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Персистентное декартово дерево (treap) элементов в порядке compareTo.
+ * Изменения не трогают существующие узлы, а копируют путь от корня до места изменения (O(log n)),
+ * остальные узлы общие у старой и новой версии дерева. Приоритет узла вычисляется из id элемента,
+ * поэтому форма дерева зависит только от набора элементов. Узел хранит размер поддерева,
+ * что даёт выборку по номеру и подсчёт элементов в диапазоне за O(log n).
+ * Пустое дерево - null
+ */
+final class VehicleTreap {
+    private VehicleTreap() {
+    }
+
+    static final class Node {
+        final Vehicle value;
+        final int priority;
+        // Меняются только при построении в build, до того как дерево станет доступно другим потокам
+        Node left;
+        Node right;
+        int size;
+
+        private Node(Vehicle value, int priority) {
+            this.value = value;
+            this.priority = priority;
+            this.size = 1;
+        }
+
+        private Node(Vehicle value, int priority, Node left, Node right) {
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+
+        private Node withChildren(Node left, Node right) {
+            return new Node(value, priority, left, right);
+        }
+    }
+
+    private static int priority(Vehicle vehicle) {
+        return LongObjectMap.mix(vehicle.getIdValue());
+    }
+
+    static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Строит дерево из упорядоченного массива за линейное время (построение декартова дерева стеком)
+     * @param sorted Элементы в порядке compareTo без равных
+     */
+    static Node build(Vehicle[] sorted) {
+        Node[] stack = new Node[Math.max(1, sorted.length)];
+        int top = 0;
+        for (Vehicle vehicle : sorted) {
+            Node node = new Node(vehicle, priority(vehicle));
+            Node last = null;
+            while (top > 0 && stack[top - 1].priority < node.priority) {
+                last = stack[--top];
+            }
+            node.left = last;
+            if (top > 0) {
+                stack[top - 1].right = node;
+            }
+            stack[top++] = node;
+        }
+        if (top == 0) {
+            return null;
+        }
+        updateSizes(stack[0]);
+        return stack[0];
+    }
+
+    private static int updateSizes(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        node.size = 1 + updateSizes(node.left) + updateSizes(node.right);
+        return node.size;
+    }
+
+    /**
+     * @return true, если в дереве есть элемент, равный vehicle по compareTo
+     */
+    static boolean contains(Node node, Vehicle vehicle) {
+        while (node != null) {
+            int result = vehicle.compareTo(node.value);
+            if (result == 0) {
+                return true;
+            }
+            node = result < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * @param vehicle Элемент, которого нет в дереве
+     * @return Новая версия дерева с элементом
+     */
+    static Node insert(Node node, Vehicle vehicle) {
+        return insert(node, vehicle, priority(vehicle));
+    }
+
+    private static Node insert(Node node, Vehicle vehicle, int priority) {
+        if (node == null) {
+            return new Node(vehicle, priority);
+        }
+        if (priority > node.priority) {
+            Node[] parts = split(node, vehicle);
+            return new Node(vehicle, priority, parts[0], parts[1]);
+        }
+        if (vehicle.compareTo(node.value) < 0) {
+            return node.withChildren(insert(node.left, vehicle, priority), node.right);
+        }
+        return node.withChildren(node.left, insert(node.right, vehicle, priority));
+    }
+
+    /**
+     * @return Новая версия дерева без элемента, равного vehicle по compareTo (или то же дерево, если его нет)
+     */
+    static Node remove(Node node, Vehicle vehicle) {
+        if (node == null) {
+            return null;
+        }
+        int result = vehicle.compareTo(node.value);
+        if (result == 0) {
+            return merge(node.left, node.right);
+        }
+        if (result < 0) {
+            Node left = remove(node.left, vehicle);
+            return left == node.left ? node : node.withChildren(left, node.right);
+        }
+        Node right = remove(node.right, vehicle);
+        return right == node.right ? node : node.withChildren(node.left, right);
+    }
+
+    /**
+     * @return Пара деревьев: элементы меньше key и элементы не меньше key
+     */
+    static Node[] split(Node node, Vehicle key) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (node.value.compareTo(key) < 0) {
+            Node[] parts = split(node.right, key);
+            parts[0] = node.withChildren(node.left, parts[0]);
+            return parts;
+        }
+        Node[] parts = split(node.left, key);
+        parts[1] = node.withChildren(parts[1], node.right);
+        return parts;
+    }
+
+    /**
+     * @param left Дерево, все элементы которого меньше элементов right
+     */
+    static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority >= right.priority) {
+            return left.withChildren(left.left, merge(left.right, right));
+        }
+        return right.withChildren(merge(left, right.left), right.right);
+    }
+
+    /**
+     * Объединяет деревья без равных элементов: корень с большим приоритетом остаётся корнем,
+     * другое дерево разрезается по нему. Для деревьев из n и m элементов (m <= n) - O(m log(n / m + 1))
+     * новых узлов; узлы исходных деревьев не меняются
+     */
+    static Node union(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority < b.priority) {
+            Node swap = a;
+            a = b;
+            b = swap;
+        }
+        Node[] parts = split(b, a.value);
+        return a.withChildren(union(a.left, parts[0]), union(a.right, parts[1]));
+    }
+
+    static Vehicle first(Node node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.value;
+    }
+
+    static Vehicle last(Node node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.value;
+    }
+
+    /**
+     * @return Количество элементов с мощностью меньше enginePower (NO_ENGINE_POWER меньше любой мощности)
+     */
+    static int countPowerBelow(Node node, long enginePower) {
+        int count = 0;
+        while (node != null) {
+            if (node.value.getEnginePowerValue() < enginePower) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Количество элементов с мощностью не больше enginePower
+     */
+    static int countPowerAtMost(Node node, long enginePower) {
+        int count = 0;
+        while (node != null) {
+            if (node.value.getEnginePowerValue() <= enginePower) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Обход в порядке compareTo с явным стеком
+     */
+    static final class InOrder implements Iterator<Vehicle> {
+        private Node[] stack = new Node[64];
+        private int top;
+        private int remaining = Integer.MAX_VALUE;
+
+        InOrder(Node root) {
+            pushLeft(root);
+        }
+
+        /**
+         * Обход, начиная с элемента с номером offset: спуск по размерам поддеревьев за O(log n),
+         * пропущенные элементы не перебираются
+         */
+        InOrder(Node root, int offset) {
+            Node node = root;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (offset < leftSize) {
+                    push(node);
+                    node = node.left;
+                } else if (offset == leftSize) {
+                    push(node);
+                    break;
+                } else {
+                    offset -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        /**
+         * Обход не больше count элементов, начиная с номера offset
+         */
+        InOrder(Node root, int offset, int count) {
+            this(root, offset);
+            remaining = count;
+        }
+
+        private void push(Node node) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = node;
+        }
+
+        private void pushLeft(Node node) {
+            while (node != null) {
+                push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0 && remaining > 0;
+        }
+
+        @Override
+        public Vehicle next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            Node node = stack[--top];
+            pushLeft(node.right);
+            return node.value;
+        }
+    }
+}